@@ -0,0 +1,226 @@
+package org.xero1425.base ;
+
+import org.xero1425.misc.MessageLogger ;
+import org.xero1425.misc.MessageType ;
+import org.xero1425.misc.TimingHistogram ;
+
+/// \file
+
+/// \brief This class detects robot loops that take longer than the robot loop period.
+///
+/// The wall clock time of each robot loop is compared to the loop budget, which is the robot loop
+/// period.  The difference between the time between loops and the period is kept in a jitter histogram,
+/// and the amount by which each overrun exceeds the budget is kept in an overrun histogram.  When a loop
+/// overruns, the slowest timers recorded by the LoopProfiler for that loop are reported as the likely
+/// cause, along with the action that was running.  Warnings are limited to one every WarningInterval
+/// seconds so a robot that is consistently slow does not flood the log.  When a loop is within budget,
+/// the only cost is reading the clock and recording the jitter.
+public class LoopOverrunMonitor
+{
+    /// \brief the name of this class in the message logger
+    public static final String LoggerName = "overrun" ;
+
+    //
+    // The shortest time between overrun warnings, in nanoseconds
+    //
+    private static final long WarningInterval = 1000000000L ;
+
+    //
+    // The message logger for warnings
+    //
+    private MessageLogger logger_ ;
+
+    //
+    // The message logger ID for warnings
+    //
+    private int logger_id_ ;
+
+    //
+    // The profiler that knows the slowest timers in each loop
+    //
+    private LoopProfiler profiler_ ;
+
+    //
+    // The loop budget in nanoseconds
+    //
+    private long budget_ ;
+
+    //
+    // The loop period in nanoseconds
+    //
+    private long period_ ;
+
+    //
+    // The time the current loop started
+    //
+    private long start_ ;
+
+    //
+    // The time the previous loop started, or zero if there is no previous loop
+    //
+    private long last_start_ ;
+
+    //
+    // The difference between the time between loops and the loop period
+    //
+    private TimingHistogram jitter_ ;
+
+    //
+    // The amount by which each overrun exceeded the budget
+    //
+    private TimingHistogram overrun_ ;
+
+    //
+    // The number of loops measured
+    //
+    private long loops_ ;
+
+    //
+    // The number of loops that exceeded the budget
+    //
+    private long overruns_ ;
+
+    //
+    // The number of overruns since the last warning that were not reported
+    //
+    private int suppressed_ ;
+
+    //
+    // The time of the last warning
+    //
+    private long last_warning_ ;
+
+    /// \brief create a new loop overrun monitor
+    /// \param logger the message logger for warnings
+    /// \param profiler the loop profiler used to find the cause of an overrun
+    /// \param period the robot loop period in seconds
+    public LoopOverrunMonitor(MessageLogger logger, LoopProfiler profiler, double period) {
+        logger_ = logger ;
+        logger_id_ = logger.registerSubsystem(LoggerName) ;
+        profiler_ = profiler ;
+        period_ = (long)(period * 1.0e9) ;
+        budget_ = period_ ;
+
+        jitter_ = new TimingHistogram("jitter") ;
+        overrun_ = new TimingHistogram("overrun") ;
+        reset() ;
+    }
+
+    /// \brief set the loop budget, a loop that takes longer than this is an overrun
+    /// \param budget the loop budget in seconds
+    public void setBudget(double budget) {
+        budget_ = (long)(budget * 1.0e9) ;
+    }
+
+    /// \brief returns the loop budget
+    /// \returns the loop budget in seconds
+    public double getBudget() {
+        return budget_ / 1.0e9 ;
+    }
+
+    /// \brief returns the number of loops measured since the last reset
+    /// \returns the number of loops measured since the last reset
+    public long getLoopCount() {
+        return loops_ ;
+    }
+
+    /// \brief returns the number of loops that exceeded the budget since the last reset
+    /// \returns the number of loops that exceeded the budget since the last reset
+    public long getOverrunCount() {
+        return overruns_ ;
+    }
+
+    /// \brief returns the histogram of the difference between the time between loops and the loop period
+    /// \returns the jitter histogram, in nanoseconds
+    public TimingHistogram getJitter() {
+        return jitter_ ;
+    }
+
+    /// \brief returns the histogram of the amount by which each overrun exceeded the budget
+    /// \returns the overrun histogram, in nanoseconds
+    public TimingHistogram getOverruns() {
+        return overrun_ ;
+    }
+
+    /// \brief called at the start of each robot loop
+    public void startLoop() {
+        start_ = System.nanoTime() ;
+
+        if (last_start_ != 0)
+            jitter_.record(Math.abs(start_ - last_start_ - period_)) ;
+
+        last_start_ = start_ ;
+    }
+
+    /// \brief called at the end of each robot loop, before LoopProfiler.endLoop()
+    public void endLoop() {
+        long elapsed = System.nanoTime() - start_ ;
+        loops_++ ;
+
+        if (elapsed <= budget_)
+            return ;
+
+        overruns_++ ;
+        overrun_.record(elapsed - budget_) ;
+
+        long now = start_ + elapsed ;
+        if (last_warning_ != 0 && now - last_warning_ < WarningInterval) {
+            suppressed_++ ;
+            return ;
+        }
+
+        logger_.startMessage(MessageType.Warning, logger_id_) ;
+        logger_.add("robot loop overrun") ;
+        logger_.add("elapsed", elapsed / 1.0e6) ;
+        logger_.add("budget", budget_ / 1.0e6) ;
+        if (suppressed_ > 0)
+            logger_.add("suppressed", suppressed_) ;
+
+        if (profiler_.getSlowestCount() == 0) {
+            logger_.add(", enable system:profiling to find the cause") ;
+        }
+        else {
+            for(int i = 0 ; i < profiler_.getSlowestCount() ; i++) {
+                logger_.add(", ").addQuoted(profiler_.getSlowest(i).getName()) ;
+                logger_.add(" ").add(profiler_.getSlowestTime(i) / 1.0e6).add(" ms") ;
+
+                Object detail = profiler_.getSlowestDetail(i) ;
+                if (detail != null)
+                    logger_.add(" ").addQuoted(detail.toString()) ;
+            }
+        }
+        logger_.endMessage() ;
+
+        last_warning_ = now ;
+        suppressed_ = 0 ;
+    }
+
+    /// \brief write a summary of the overruns and jitter to the message logger
+    public void report() {
+        if (loops_ == 0)
+            return ;
+
+        logger_.startMessage(overruns_ > 0 ? MessageType.Warning : MessageType.Info, logger_id_) ;
+        logger_.add("loop timing summary") ;
+        logger_.add("loops", (int)loops_) ;
+        logger_.add("overruns", (int)overruns_) ;
+        logger_.add("jitter_p99", jitter_.getPercentile(99.0) / 1.0e6) ;
+        logger_.add("jitter_max", jitter_.getMax() / 1.0e6) ;
+        if (overruns_ > 0) {
+            logger_.add("overrun_p99", overrun_.getPercentile(99.0) / 1.0e6) ;
+            logger_.add("overrun_max", overrun_.getMax() / 1.0e6) ;
+        }
+        logger_.endMessage() ;
+    }
+
+    /// \brief clear the measurements collected so far
+    public void reset() {
+        jitter_.reset() ;
+        overrun_.reset() ;
+        loops_ = 0 ;
+        overruns_ = 0 ;
+        suppressed_ = 0 ;
+        last_start_ = 0 ;
+        last_warning_ = 0 ;
+    }
+}
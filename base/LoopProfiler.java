@@ -0,0 +1,269 @@
+package org.xero1425.base ;
+
+import java.util.ArrayList ;
+import java.util.List ;
+
+import org.xero1425.misc.MessageLogger ;
+import org.xero1425.misc.MessageType ;
+import org.xero1425.misc.TimingHistogram ;
+
+import edu.wpi.first.networktables.NetworkTable ;
+import edu.wpi.first.networktables.NetworkTableInstance ;
+
+/// \file
+
+/// \brief This class measures where the time goes in each robot loop.
+///
+/// Each subsystem registers a timer for its computeMyState() work and for the work done by its action in
+/// run().  The robot registers timers for the simulation engine, the current controller, and the whole
+/// loop.  Each timer keeps a TimingHistogram so the minimum, mean, 99th percentile, and maximum times are
+/// available with a fixed amount of memory.  Timer names are paths through the subsystem hierarchy
+/// (e.g. robot/tankdrive:compute), so a sorted report shows children under their parents.  Every
+/// ReportInterval robot loops, the statistics are written to the message logger and to the network table.
+/// When profiling is disabled, start() and stop() only test a flag.
+public class LoopProfiler
+{
+    /// \brief the name of this class in the message logger
+    public static final String LoggerName = "profiler" ;
+
+    //
+    // The number of robot loops between reports, about ten seconds
+    //
+    private static final int ReportInterval = 500 ;
+
+    /// \brief the number of slowest timers tracked for each robot loop
+    public static final int SlowestCount = 3 ;
+
+    //
+    // The message logger for reports
+    //
+    private MessageLogger logger_ ;
+
+    //
+    // The message logger ID for reports
+    //
+    private int logger_id_ ;
+
+    //
+    // The network table key for reports
+    //
+    private String table_ ;
+
+    //
+    // The timers, in the order they were registered
+    //
+    private List<TimingHistogram> timers_ ;
+
+    //
+    // If true, timing information is being collected
+    //
+    private boolean enabled_ ;
+
+    //
+    // The number of robot loops since the last report
+    //
+    private int loops_ ;
+
+    //
+    // The slowest timers in the current robot loop, slowest first
+    //
+    private TimingHistogram[] slowest_ ;
+
+    //
+    // The time for each of the slowest timers in the current robot loop
+    //
+    private long[] slowest_time_ ;
+
+    //
+    // The action or other object being run for each of the slowest timers, or null
+    //
+    private Object[] slowest_detail_ ;
+
+    //
+    // The number of entries in the slowest timers for the current robot loop
+    //
+    private int slowest_count_ ;
+
+    /// \brief create a new loop profiler
+    /// \param logger the message logger for reports
+    /// \param key the name of the key in the network table to hold the reports
+    public LoopProfiler(MessageLogger logger, String key) {
+        logger_ = logger ;
+        logger_id_ = logger.registerSubsystem(LoggerName) ;
+        table_ = key ;
+        timers_ = new ArrayList<TimingHistogram>() ;
+        enabled_ = false ;
+        loops_ = 0 ;
+
+        slowest_ = new TimingHistogram[SlowestCount] ;
+        slowest_time_ = new long[SlowestCount] ;
+        slowest_detail_ = new Object[SlowestCount] ;
+        slowest_count_ = 0 ;
+    }
+
+    /// \brief enable or disable the collection of timing information
+    /// \param b if true, enable profiling, otherwise disable
+    public void enable(boolean b) {
+        enabled_ = b ;
+    }
+
+    /// \brief returns true if timing information is being collected
+    /// \returns true if timing information is being collected
+    public boolean isEnabled() {
+        return enabled_ ;
+    }
+
+    /// \brief create a new timer
+    /// \param name the name of the timer, used in reports
+    /// \returns the new timer
+    public TimingHistogram register(String name) {
+        TimingHistogram timer = new TimingHistogram(name) ;
+        timers_.add(timer) ;
+        return timer ;
+    }
+
+    /// \brief returns all of the timers
+    /// \returns all of the timers
+    public List<TimingHistogram> getTimers() {
+        return timers_ ;
+    }
+
+    /// \brief start timing a section of code
+    /// \returns the start time to pass to stop(), or zero if profiling is disabled
+    public long start() {
+        return enabled_ ? System.nanoTime() : 0 ;
+    }
+
+    /// \brief stop timing a section of code and record the time
+    /// \param timer the timer for the section of code
+    /// \param start the value returned by start()
+    public void stop(TimingHistogram timer, long start) {
+        stop(timer, start, null) ;
+    }
+
+    /// \brief stop timing a section of code and record the time
+    /// \param timer the timer for the section of code
+    /// \param start the value returned by start()
+    /// \param detail the action or other object that was run, reported if this is one of the slowest timers in the loop
+    public void stop(TimingHistogram timer, long start, Object detail) {
+        if (!enabled_)
+            return ;
+
+        long elapsed = System.nanoTime() - start ;
+        timer.record(elapsed) ;
+
+        if (slowest_count_ < SlowestCount || elapsed > slowest_time_[slowest_count_ - 1]) {
+            //
+            // Insert this timer in the slowest list, which is sorted slowest first
+            //
+            int i = Math.min(slowest_count_, SlowestCount - 1) ;
+            while (i > 0 && slowest_time_[i - 1] < elapsed) {
+                slowest_[i] = slowest_[i - 1] ;
+                slowest_time_[i] = slowest_time_[i - 1] ;
+                slowest_detail_[i] = slowest_detail_[i - 1] ;
+                i-- ;
+            }
+
+            slowest_[i] = timer ;
+            slowest_time_[i] = elapsed ;
+            slowest_detail_[i] = detail ;
+
+            if (slowest_count_ < SlowestCount)
+                slowest_count_++ ;
+        }
+    }
+
+    /// \brief stop timing a section of code that contains other timed sections, such as the whole
+    /// robot loop.  The time is recorded but is not considered for the slowest timers in the loop.
+    /// \param timer the timer for the section of code
+    /// \param start the value returned by start()
+    public void stopTotal(TimingHistogram timer, long start) {
+        if (enabled_)
+            timer.record(System.nanoTime() - start) ;
+    }
+
+    /// \brief returns the number of slowest timers recorded for the current robot loop
+    /// \returns the number of slowest timers recorded for the current robot loop
+    public int getSlowestCount() {
+        return slowest_count_ ;
+    }
+
+    /// \brief returns one of the slowest timers for the current robot loop
+    /// \param i the index, zero is the slowest
+    /// \returns one of the slowest timers for the current robot loop
+    public TimingHistogram getSlowest(int i) {
+        return slowest_[i] ;
+    }
+
+    /// \brief returns the time for one of the slowest timers in the current robot loop
+    /// \param i the index, zero is the slowest
+    /// \returns the time in nanoseconds
+    public long getSlowestTime(int i) {
+        return slowest_time_[i] ;
+    }
+
+    /// \brief returns the action or other object run for one of the slowest timers in the current robot loop
+    /// \param i the index, zero is the slowest
+    /// \returns the object run, or null
+    public Object getSlowestDetail(int i) {
+        return slowest_detail_[i] ;
+    }
+
+    /// \brief called at the end of each robot loop, reports the timing information periodically
+    public void endLoop() {
+        if (!enabled_)
+            return ;
+
+        for(int i = 0 ; i < slowest_count_ ; i++)
+            slowest_detail_[i] = null ;
+        slowest_count_ = 0 ;
+
+        loops_++ ;
+        if (loops_ >= ReportInterval) {
+            report() ;
+            loops_ = 0 ;
+        }
+    }
+
+    /// \brief write the timing information to the message logger and network table
+    public void report() {
+        List<TimingHistogram> sorted = new ArrayList<TimingHistogram>(timers_) ;
+        sorted.sort((a, b) -> a.getName().compareTo(b.getName())) ;
+
+        NetworkTable table = NetworkTableInstance.getDefault().getTable(table_) ;
+
+        for(TimingHistogram timer : sorted) {
+            if (timer.getCount() == 0)
+                continue ;
+
+            double min = timer.getMin() / 1.0e6 ;
+            double mean = timer.getMean() / 1.0e6 ;
+            double p99 = timer.getPercentile(99.0) / 1.0e6 ;
+            double max = timer.getMax() / 1.0e6 ;
+
+            logger_.startMessage(MessageType.Debug, logger_id_) ;
+            logger_.add("timer ").addQuoted(timer.getName()) ;
+            logger_.add("count", (int)timer.getCount()) ;
+            logger_.add("min", min) ;
+            logger_.add("mean", mean) ;
+            logger_.add("p99", p99) ;
+            logger_.add("max", max) ;
+            logger_.endMessage();
+
+            NetworkTable sub = table.getSubTable(timer.getName()) ;
+            sub.getEntry("count").setNumber(timer.getCount()) ;
+            sub.getEntry("min").setNumber(min) ;
+            sub.getEntry("mean").setNumber(mean) ;
+            sub.getEntry("p99").setNumber(p99) ;
+            sub.getEntry("max").setNumber(max) ;
+        }
+    }
+
+    /// \brief clear the timing information collected so far
+    public void reset() {
+        for(TimingHistogram timer : timers_)
+            timer.reset() ;
+
+        loops_ = 0 ;
+    }
+}
@@ -0,0 +1,174 @@
+package org.xero1425.base ;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.HashMap;
+import java.util.Map;
+
+/// \file
+
+/// \brief This class converts a plot file written by PlotFileWriter into CSV files.
+///
+/// Each run of a plot in the file becomes its own CSV file in the output directory, named after
+/// the plot with a number added so repeated runs of the same plot do not overwrite each other.  The
+/// first row of each CSV file holds the column names.
+///
+/// usage: PlotFileDecoder plotfile [outdir]
+public class PlotFileDecoder
+{
+    //
+    // The input stream for the plot file
+    //
+    private DataInputStream in_ ;
+
+    //
+    // The directory for the CSV files
+    //
+    private File outdir_ ;
+
+    //
+    // The CSV files for the plots that have started but not ended
+    //
+    private Map<Integer, PrintWriter> open_ ;
+
+    //
+    // The number of times each plot name has been seen
+    //
+    private Map<String, Integer> runs_ ;
+
+    /// \brief create a new decoder
+    /// \param in the input stream for the plot file
+    /// \param outdir the directory for the CSV files
+    public PlotFileDecoder(final DataInputStream in, final File outdir) {
+        in_ = in ;
+        outdir_ = outdir ;
+        open_ = new HashMap<Integer, PrintWriter>() ;
+        runs_ = new HashMap<String, Integer>() ;
+    }
+
+    /// \brief decode the complete plot file
+    /// \returns the number of plots decoded
+    public int decode() throws IOException {
+        int count = 0 ;
+
+        if (in_.readInt() != PlotFileWriter.Magic)
+            throw new IOException("input file is not a plot file") ;
+
+        int version = in_.readShort() ;
+        if (version != PlotFileWriter.Version)
+            throw new IOException("unsupported plot file version " + version) ;
+
+        try {
+            while (true) {
+                int tag ;
+
+                try {
+                    tag = in_.readUnsignedByte() ;
+                }
+                catch(EOFException ex) {
+                    break ;
+                }
+
+                try {
+                    int id = in_.readShort() ;
+                    PrintWriter out = open_.get(id) ;
+
+                    switch(tag) {
+                        case PlotFileWriter.TagStart:
+                            String name = in_.readUTF() ;
+                            int cols = in_.readShort() ;
+                            StringBuilder header = new StringBuilder() ;
+                            for(int i = 0 ; i < cols ; i++) {
+                                if (i > 0)
+                                    header.append(',') ;
+                                header.append(in_.readUTF()) ;
+                            }
+
+                            if (out != null)
+                                out.close() ;
+
+                            out = new PrintWriter(new FileWriter(new File(outdir_, fileName(name)))) ;
+                            out.println(header.toString()) ;
+                            open_.put(id, out) ;
+                            count++ ;
+                            break ;
+
+                        case PlotFileWriter.TagData:
+                            int values = in_.readShort() ;
+                            StringBuilder row = new StringBuilder() ;
+                            for(int i = 0 ; i < values ; i++) {
+                                if (i > 0)
+                                    row.append(',') ;
+                                row.append(in_.readDouble()) ;
+                            }
+
+                            if (out != null)
+                                out.println(row.toString()) ;
+                            break ;
+
+                        case PlotFileWriter.TagEnd:
+                            if (out != null) {
+                                out.close() ;
+                                open_.remove(id) ;
+                            }
+                            break ;
+
+                        default:
+                            throw new IOException("invalid record tag " + tag + " in plot file") ;
+                    }
+                }
+                catch(EOFException ex) {
+                    //
+                    // The robot was probably turned off in the middle of writing a record
+                    //
+                    System.err.println("warning: plot file ends with a partial record") ;
+                    break ;
+                }
+            }
+        }
+        finally {
+            for(PrintWriter out : open_.values())
+                out.close() ;
+            open_.clear() ;
+        }
+
+        return count ;
+    }
+
+    /// \brief decode a plot file from the command line
+    /// \param args the command line arguments
+    public static void main(String[] args) {
+        if (args.length < 1 || args.length > 2) {
+            System.err.println("usage: PlotFileDecoder plotfile [outdir]") ;
+            System.exit(1) ;
+        }
+
+        File outdir = new File(args.length == 2 ? args[1] : ".") ;
+        if (!outdir.isDirectory() && !outdir.mkdirs()) {
+            System.err.println("cannot create output directory '" + outdir.getPath() + "'") ;
+            System.exit(1) ;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(args[0]), 65536))) {
+            PlotFileDecoder decoder = new PlotFileDecoder(in, outdir) ;
+            System.out.println(decoder.decode() + " plots decoded") ;
+        }
+        catch(Exception ex) {
+            System.err.println("cannot decode plot file '" + args[0] + "' - " + ex.getMessage()) ;
+            System.exit(1) ;
+        }
+    }
+
+    private String fileName(String name) {
+        String base = name.replaceAll("[^A-Za-z0-9_.-]", "_") ;
+        int run = runs_.getOrDefault(base, 0) + 1 ;
+        runs_.put(base, run) ;
+        return base + "_" + run + ".csv" ;
+    }
+}
@@ -0,0 +1,339 @@
+package org.xero1425.base ;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Date;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/// \file
+
+/// \brief This class writes plot data to a binary file in the log directory.
+///
+/// Unlike the network table plots, the file is written when the FMS is attached, so plots from real
+/// matches can be copied from the robot after the match.  The robot loop copies each point into an entry
+/// taken from a preallocated pool and hands it to a background thread that writes the file, so adding a
+/// point does not allocate memory or touch the file system.  If the writer falls behind and the pool is
+/// empty, points are dropped and counted rather than slowing down the robot loop.  The file can be
+/// turned into one CSV file per plot with the PlotFileDecoder program.
+///
+/// The file starts with the magic number and version, followed by a stream of records.  Each record
+/// starts with a one byte tag.
+/// \li \c TagStart - the plot ID (short), the plot name (UTF), the column count (short), and the column names (UTF)
+/// \li \c TagData - the plot ID (short), the value count (short), and the values (double)
+/// \li \c TagEnd - the plot ID (short)
+public class PlotFileWriter
+{
+    /// \brief the magic number at the start of the file
+    public static final int Magic = 0x58504c54 ;
+
+    /// \brief the version of the file format
+    public static final int Version = 1 ;
+
+    /// \brief the tag for the start of a plot
+    public static final int TagStart = 1 ;
+
+    /// \brief the tag for a point in a plot
+    public static final int TagData = 2 ;
+
+    /// \brief the tag for the end of a plot
+    public static final int TagEnd = 3 ;
+
+    //
+    // The number of entries in the pool
+    //
+    private static final int PoolSize = 1024 ;
+
+    //
+    // The longest time the writer waits before flushing the file, in milliseconds
+    //
+    private static final long FlushInterval = 500 ;
+
+    //
+    // The name of the file
+    //
+    private String filename_ ;
+
+    //
+    // The stream for writing to the file
+    //
+    private DataOutputStream out_ ;
+
+    //
+    // If true, the output stream is valid
+    //
+    private boolean valid_ ;
+
+    //
+    // The entries that are free to be filled by the robot loop
+    //
+    private ArrayBlockingQueue<Entry> free_ ;
+
+    //
+    // The entries waiting to be written to the file
+    //
+    private ArrayBlockingQueue<Entry> full_ ;
+
+    //
+    // The number of points dropped because the pool was empty
+    //
+    private AtomicLong dropped_ ;
+
+    //
+    // The background thread writing the file
+    //
+    private Thread writer_ ;
+
+    /// \brief create a new plot file writer writing to the filename given
+    /// \param filename the name of the output file for plots
+    public PlotFileWriter(final String filename) {
+        init() ;
+        open(filename) ;
+    }
+
+    /// \brief create a new plot file writer writing to the first unused plots_N file in a directory
+    /// \param bdir the base directory for log files (e.g. /u) ;
+    /// \param timeout a timeout for trying to open a file in the base directory given
+    public PlotFileWriter(final String bdir, final long timeout) {
+        int index = 1;
+        final long startms = new Date().getTime();
+
+        init() ;
+
+        while (true) {
+            final long now = new Date().getTime();
+            if (now - startms > timeout) {
+                System.err.println("timeout while opening plot file");
+                valid_ = false;
+                break;
+            }
+
+            final String filename = bdir + "/plots_" + Integer.toString(index++);
+            if (!new File(filename).exists()) {
+                open(filename) ;
+                break ;
+            }
+        }
+    }
+
+    /// \brief returns the name of the file
+    /// \returns the name of the file
+    public String getFileName() {
+        return filename_ ;
+    }
+
+    /// \brief returns the number of points dropped because the writer fell behind
+    /// \returns the number of points dropped
+    public long getDroppedCount() {
+        return dropped_.get() ;
+    }
+
+    /// \brief start the background thread that writes the file
+    public void start() {
+        if (writer_ != null || !valid_)
+            return ;
+
+        writer_ = new Thread(() -> run(), "xero-plot-writer") ;
+        writer_.setDaemon(true) ;
+        writer_.start() ;
+
+        //
+        // Write any points still queued when the robot code exits
+        //
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> close())) ;
+    }
+
+    /// \brief record the start of a plot
+    /// \param id the handle for the plot
+    /// \param name the name of the plot
+    /// \param cols the names of the columns in the plot
+    public void startPlot(final int id, final String name, final String[] cols) {
+        final Entry e = take(true) ;
+        e.tag_ = TagStart ;
+        e.id_ = id ;
+        e.name_ = name ;
+        e.cols_ = cols ;
+        full_.offer(e) ;
+    }
+
+    /// \brief record a point in a plot
+    /// \param id the handle for the plot
+    /// \param data the values for the point
+    public void addPlotData(final int id, final double[] data) {
+        final Entry e = take(false) ;
+        if (e == null)
+            return ;
+
+        e.tag_ = TagData ;
+        e.id_ = id ;
+        e.reserve(data.length) ;
+        System.arraycopy(data, 0, e.data_, 0, data.length) ;
+        full_.offer(e) ;
+    }
+
+    /// \brief record the end of a plot
+    /// \param id the handle for the plot
+    public void endPlot(final int id) {
+        final Entry e = take(true) ;
+        e.tag_ = TagEnd ;
+        e.id_ = id ;
+        full_.offer(e) ;
+    }
+
+    /// \brief write any queued entries and close the file
+    public synchronized void close() {
+        drain() ;
+
+        if (valid_) {
+            try {
+                out_.close() ;
+            }
+            catch(final IOException ex) {
+                System.err.println("cannot close plot file '" + filename_ + "' - " + ex.getMessage()) ;
+            }
+            valid_ = false ;
+        }
+    }
+
+    private void init() {
+        free_ = new ArrayBlockingQueue<Entry>(PoolSize) ;
+        full_ = new ArrayBlockingQueue<Entry>(PoolSize * 2) ;
+        dropped_ = new AtomicLong(0) ;
+
+        for(int i = 0 ; i < PoolSize ; i++)
+            free_.offer(new Entry()) ;
+    }
+
+    private void open(final String filename) {
+        filename_ = filename ;
+
+        try {
+            out_ = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filename), 65536)) ;
+            out_.writeInt(Magic) ;
+            out_.writeShort(Version) ;
+            out_.flush() ;
+            valid_ = true ;
+        }
+        catch(final IOException ex) {
+            valid_ = false ;
+            System.err.println("cannot open plot file '" + filename_ + "' - " + ex.getMessage()) ;
+        }
+    }
+
+    //
+    // Take an entry from the pool.  Points are dropped when the pool is empty, but the start and end of
+    // a plot are always recorded, so a new entry is created for them.
+    //
+    private Entry take(final boolean required) {
+        Entry e = free_.poll() ;
+        if (e == null) {
+            if (required)
+                return new Entry() ;
+
+            dropped_.incrementAndGet() ;
+        }
+
+        return e ;
+    }
+
+    private void run() {
+        while (true) {
+            try {
+                final Entry e = full_.poll(FlushInterval, TimeUnit.MILLISECONDS) ;
+                synchronized(this) {
+                    if (e != null)
+                        write(e) ;
+                    drain() ;
+
+                    if (valid_)
+                        out_.flush() ;
+                }
+            }
+            catch(final InterruptedException ex) {
+                break ;
+            }
+            catch(final IOException ex) {
+                writeFailed(ex) ;
+            }
+        }
+    }
+
+    //
+    // Write all of the queued entries to the file
+    //
+    private void drain() {
+        Entry e ;
+        while ((e = full_.poll()) != null)
+            write(e) ;
+    }
+
+    private void write(final Entry e) {
+        if (valid_) {
+            try {
+                out_.writeByte(e.tag_) ;
+                out_.writeShort(e.id_) ;
+
+                switch(e.tag_) {
+                    case TagStart:
+                        out_.writeUTF(e.name_) ;
+                        out_.writeShort(e.cols_.length) ;
+                        for(String col : e.cols_)
+                            out_.writeUTF(col) ;
+                        break ;
+
+                    case TagData:
+                        out_.writeShort(e.count_) ;
+                        for(int i = 0 ; i < e.count_ ; i++)
+                            out_.writeDouble(e.data_[i]) ;
+                        break ;
+                }
+            }
+            catch(final IOException ex) {
+                writeFailed(ex) ;
+            }
+        }
+
+        //
+        // Return the entry to the pool, if the pool is full this was an extra entry created by take()
+        //
+        e.name_ = null ;
+        e.cols_ = null ;
+        free_.offer(e) ;
+    }
+
+    private void writeFailed(final IOException ex) {
+        valid_ = false ;
+        System.err.println("cannot write to plot file '" + filename_ + "' - " + ex.getMessage()) ;
+    }
+
+    private static class Entry
+    {
+        // The record tag
+        public int tag_ ;
+
+        // The handle for the plot
+        public int id_ ;
+
+        // The name of the plot, for the start of a plot
+        public String name_ ;
+
+        // The column names, for the start of a plot
+        public String[] cols_ ;
+
+        // The values, for a point
+        public double[] data_ = new double[16] ;
+
+        // The number of values, for a point
+        public int count_ ;
+
+        public void reserve(final int count) {
+            if (data_.length < count)
+                data_ = new double[count] ;
+            count_ = count ;
+        }
+    }
+}
@@ -4,29 +4,58 @@ import edu.wpi.first.wpilibj.DriverStation;
 import edu.wpi.first.networktables.NetworkTable;
 import edu.wpi.first.networktables.NetworkTableInstance;
 import edu.wpi.first.networktables.NetworkTableEntry ;
+import java.nio.ByteBuffer ;
 import java.util.Map ;
 import java.util.HashMap ;
 
 /// \file
 
-/// \brief This class manages "plots". 
+/// \brief This class manages "plots".
 ///
 /// Plots are data sets that are stored to the network table.  The data stored there
 /// contains a set of points, per robot loop, for each robot loop that is processed while
 /// the plot is ednabled.  A plot is defined by a name and a set of named columns.  Each named
 /// column has a value for each robot loop.
 /// This data can be processed by the xerotune toon located here <a href="https://www.mewserver.org/xeroprogs/" here </a>
+///
+/// By default each point is stored in its own network table entry, data/N.  In batched mode the points
+/// are buffered in a column store and published in chunks, each chunk a single raw entry chunk/N, when
+/// the chunk is full, when the chunk is older than the batch interval, or when the plot ends.  In batched
+/// mode the format entry is "batched" and the chunks entry holds the number of chunks published.  Each
+/// chunk is big endian and holds the index of its first point (int), the number of points (int), the
+/// number of columns (int), and then the values one column after another, so all values for the first
+/// column come first.
+///
+/// If a PlotFileWriter is attached, every plot is also written to a file in the log directory.  The
+/// file is written even when the FMS is attached and network table plotting is disabled.
 class PlotManager
 {
     static private String CompleteEntry = "complete" ;
     static private String PointsEntry = "points" ;
     static private String ColumnsEntry = "columns" ;
     static private String DataEntry = "data" ;
-    
+    static private String FormatEntry = "format" ;
+    static private String ChunksEntry = "chunks" ;
+    static private String ChunkEntry = "chunk" ;
+
+    static private String FormatRows = "rows" ;
+    static private String FormatBatched = "batched" ;
+
+    //
+    // The size of the header at the start of each chunk in bytes
+    //
+    static private final int ChunkHeaderSize = 12 ;
+
+    /// \brief the default longest time a point is buffered before it is published, in seconds
+    static public final double DefaultBatchInterval = 0.1 ;
+
     int next_plot_id_ ;
     String plot_table_ ;
     Map<Integer, PlotInfo> plots_ ;
     boolean enabled_ ;
+    int batch_rows_ ;
+    long batch_interval_ ;
+    PlotFileWriter file_ ;
 
     /// \brief create a new plot manager
     /// \param key the name of the key in the network table to hold plot data
@@ -36,6 +65,9 @@ class PlotManager
         next_plot_id_ = 0 ;
         plot_table_ = key ;
         enabled_ = false ;
+        batch_rows_ = 0 ;
+        batch_interval_ = (long)(DefaultBatchInterval * 1.0e9) ;
+        file_ = null ;
     }
 
     /// \brief enable or disable the storage of plotting data in the network tables
@@ -44,9 +76,36 @@ class PlotManager
         enabled_ = b ;
     }
 
+    /// \brief set the file writer that receives every plot, even when the FMS is attached
+    /// \param file the plot file writer, or null to stop writing plots to a file
+    public void setFileWriter(PlotFileWriter file) {
+        file_ = file ;
+    }
+
+    /// \brief returns the file writer that receives every plot
+    /// \returns the file writer that receives every plot, or null if there is none
+    public PlotFileWriter getFileWriter() {
+        return file_ ;
+    }
+
+    /// \brief set the number of points published in each chunk.  This applies to plots started after
+    /// this call.
+    /// \param rows the number of points in each chunk, or zero to publish each point in its own entry
+    /// \param interval the longest time a point is buffered before it is published, in seconds
+    public void setBatching(int rows, double interval) {
+        batch_rows_ = Math.max(rows, 0) ;
+        batch_interval_ = (long)(interval * 1.0e9) ;
+    }
+
+    /// \brief returns the number of points published in each chunk
+    /// \returns the number of points published in each chunk, or zero if batching is disabled
+    public int getBatchRows() {
+        return batch_rows_ ;
+    }
+
     public int initPlot(String name)
     {
-        if (!enabled_ || DriverStation.isFMSAttached())
+        if (file_ == null && !isNetworkEnabled())
             return -1 ;
 
         for(int key : plots_.keySet())
@@ -63,54 +122,142 @@ class PlotManager
 
     public void startPlot(int id, String[] cols)
     {
-        if (!enabled_ || DriverStation.isFMSAttached() || !plots_.containsKey(id))
+        if (!plots_.containsKey(id))
             return ;
-        
+
         PlotInfo info = plots_.get(id) ;
         info.cols_ = cols.length ;
-        info.index_ = 0 ;
+
+        if (file_ != null)
+            file_.startPlot(id, info.name_, cols) ;
+
+        info.network_ = isNetworkEnabled() ;
+        if (!info.network_)
+            return ;
+
+        info.points_ = 0 ;
+        info.chunks_ = 0 ;
+        info.buffered_ = 0 ;
+
+        if (batch_rows_ > 0) {
+            //
+            // Reuse the column store from an earlier run of this plot if it is the right size
+            //
+            if (info.store_ == null || info.store_.length != cols.length * batch_rows_) {
+                info.store_ = new double[cols.length * batch_rows_] ;
+                info.chunk_ = new byte[ChunkHeaderSize + cols.length * batch_rows_ * Double.BYTES] ;
+            }
+            info.rows_ = batch_rows_ ;
+        }
+        else {
+            info.store_ = null ;
+            info.chunk_ = null ;
+            info.rows_ = 0 ;
+        }
 
         NetworkTableInstance inst = NetworkTableInstance.getDefault() ;
         NetworkTable table = inst.getTable(getKeyForPlot(id)) ;
         NetworkTableEntry entry ;
-        
+
         entry = table.getEntry(ColumnsEntry) ;
         entry.setStringArray(cols) ;
 
         entry = table.getEntry(PointsEntry) ;
         entry.setNumber(0) ;
 
+        entry = table.getEntry(FormatEntry) ;
+        entry.setString(info.rows_ > 0 ? FormatBatched : FormatRows) ;
+
+        entry = table.getEntry(ChunksEntry) ;
+        entry.setNumber(0) ;
+
         entry = table.getEntry(CompleteEntry) ;
         entry.setBoolean(false) ;
 
         table.delete(DataEntry) ;
+        table.delete(ChunkEntry) ;
 
         inst.flush() ;
     }
 
+    /// \brief add a point to a plot, the values are copied into a buffer kept for the plot
+    /// \param id the handle for the plot
+    /// \param data the values for the point, should be the same size as the columns given to startPlot()
     public void addPlotData(int id, Double[] data)
     {
-        if (!enabled_ || DriverStation.isFMSAttached() || !plots_.containsKey(id))
+        if (!plots_.containsKey(id))
+            return ;
+
+        PlotInfo info = plots_.get(id) ;
+        if (data.length != info.cols_)
+            return ;
+
+        if (info.row_ == null || info.row_.length != data.length)
+            info.row_ = new double[data.length] ;
+
+        for(int i = 0 ; i < data.length ; i++)
+            info.row_[i] = data[i] ;
+
+        addPlotData(id, info.row_) ;
+    }
+
+    /// \brief add a point to a plot without boxing the values
+    /// \param id the handle for the plot
+    /// \param data the values for the point, should be the same size as the columns given to startPlot()
+    public void addPlotData(int id, double[] data)
+    {
+        if (!plots_.containsKey(id))
             return ;
-            
+
         PlotInfo info = plots_.get(id) ;
-        if (data.length == info.cols_)
+        if (data.length != info.cols_)
+            return ;
+
+        if (file_ != null)
+            file_.addPlotData(id, data) ;
+
+        if (!info.network_ || !isNetworkEnabled())
+            return ;
+
+        if (info.rows_ > 0)
+        {
+            if (info.buffered_ == 0)
+                info.first_time_ = System.nanoTime() ;
+
+            for(int col = 0 ; col < info.cols_ ; col++)
+                info.store_[col * info.rows_ + info.buffered_] = data[col] ;
+            info.buffered_++ ;
+
+            if (info.buffered_ == info.rows_ || System.nanoTime() - info.first_time_ >= batch_interval_)
+                publishChunk(info) ;
+        }
+        else
         {
             NetworkTableInstance inst = NetworkTableInstance.getDefault() ;
             NetworkTable table = inst.getTable(getKeyForPlot(id)) ;
-            NetworkTableEntry entry = table.getEntry(DataEntry + "/" + Integer.toString(info.index_)) ;
-            entry.setNumberArray(data) ;
+            NetworkTableEntry entry = table.getEntry(DataEntry + "/" + Integer.toString(info.points_)) ;
+            entry.setDoubleArray(data) ;
             entry = table.getEntry(PointsEntry) ;
-            info.index_++ ;
-            entry.setNumber(info.index_) ;
+            info.points_++ ;
+            entry.setNumber(info.points_) ;
         }
     }
 
     public void endPlot(int id)
     {
-        if (!enabled_ || DriverStation.isFMSAttached() || !plots_.containsKey(id))
+        if (!plots_.containsKey(id))
+            return ;
+
+        if (file_ != null)
+            file_.endPlot(id) ;
+
+        PlotInfo info = plots_.get(id) ;
+        if (!info.network_ || !isNetworkEnabled())
             return ;
-            
+
+        if (info.buffered_ > 0)
+            publishChunk(info) ;
+
         NetworkTableInstance inst = NetworkTableInstance.getDefault() ;
         NetworkTable table = inst.getTable(getKeyForPlot(id)) ;
         NetworkTableEntry entry = table.getEntry(CompleteEntry) ;
@@ -119,6 +266,49 @@ class PlotManager
         inst.flush() ;
     }
 
+    //
+    // Plots are only published to the network table when plotting is enabled and there is no FMS
+    //
+    private boolean isNetworkEnabled()
+    {
+        return enabled_ && !DriverStation.isFMSAttached() ;
+    }
+
+    //
+    // Publish the buffered points of a plot as a single raw entry
+    //
+    private void publishChunk(PlotInfo info)
+    {
+        int count = info.buffered_ ;
+        int size = ChunkHeaderSize + info.cols_ * count * Double.BYTES ;
+
+        //
+        // A full chunk reuses the chunk buffer, a partial chunk needs an array of the exact size
+        //
+        byte[] bytes = (size == info.chunk_.length) ? info.chunk_ : new byte[size] ;
+        ByteBuffer buf = ByteBuffer.wrap(bytes) ;
+        buf.putInt(info.points_) ;
+        buf.putInt(count) ;
+        buf.putInt(info.cols_) ;
+        for(int col = 0 ; col < info.cols_ ; col++)
+        {
+            int base = col * info.rows_ ;
+            for(int row = 0 ; row < count ; row++)
+                buf.putDouble(info.store_[base + row]) ;
+        }
+
+        NetworkTableInstance inst = NetworkTableInstance.getDefault() ;
+        NetworkTable table = inst.getTable(getKeyForPlot(info.index_)) ;
+        table.getEntry(ChunkEntry + "/" + Integer.toString(info.chunks_)).setRaw(bytes) ;
+
+        info.chunks_++ ;
+        info.points_ += count ;
+        info.buffered_ = 0 ;
+
+        table.getEntry(ChunksEntry).setNumber(info.chunks_) ;
+        table.getEntry(PointsEntry).setNumber(info.points_) ;
+    }
+
     private String getKeyForPlot(int id)
     {
         if (!plots_.containsKey(id))
@@ -137,6 +327,33 @@ class PlotManager
         public String name_ ;
         public int cols_ ;
         public int index_ ;
+
+        // If true, the current run of the plot is published to the network table
+        public boolean network_ ;
+
+        // The number of points published
+        public int points_ ;
+
+        // The number of points in each chunk, or zero if the plot is not batched
+        public int rows_ ;
+
+        // The buffered points, one column after another
+        public double[] store_ ;
+
+        // The number of points buffered
+        public int buffered_ ;
+
+        // The time the first buffered point was added
+        public long first_time_ ;
+
+        // The number of chunks published
+        public int chunks_ ;
+
+        // The buffer for a full chunk
+        public byte[] chunk_ ;
+
+        // The buffer for unboxing a point given as Double[]
+        public double[] row_ ;
     } ;
 
-} ;
\ No newline at end of file
+} ;
@@ -1,15 +1,18 @@
 package org.xero1425.base;
 
 import java.util.List;
-import java.text.DecimalFormat;
 import java.util.ArrayList;
 import org.xero1425.base.actions.Action;
 import org.xero1425.misc.BadParameterTypeException;
+import org.xero1425.misc.BooleanSetting;
+import org.xero1425.misc.DoubleSetting;
 import org.xero1425.misc.ISettingsSupplier;
+import org.xero1425.misc.IntSetting;
 import org.xero1425.misc.MessageLogger;
 import org.xero1425.misc.MessageType;
 import org.xero1425.misc.MissingParameterException;
 import org.xero1425.misc.SettingsValue;
+import org.xero1425.misc.TimingHistogram;
 import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 
 /// \file
@@ -31,11 +34,6 @@ import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 /// \li \c reset() - called after teleop as the robot enters the disabled state
 ///
 public class Subsystem {
-    //
-    // If true, we turn on subsystem timing
-    //
-    static private boolean timing_ = false ;
-
     //
     // The current action assigned to this subsystme
     //
@@ -77,30 +75,14 @@ public class Subsystem {
     private boolean finished_default_ ;
 
     //
-    // The total time spent running code in this subsystem.  This captures the compute state
-    // run time since this is the method that takes a lot of time in time critical subsystem code.
-    //
-    private double total_time_ ;
-
-    //
-    // The number of times this subsystem has been run
-    //
-    private int total_cnt_ ;
-
-    //
-    // The maximum time spent on any one robot loop in the code for this subsystem
-    //
-    private double max_time_ ;
-
-    //
-    // The output format for logging information about the subsystem run times
+    // The time spent in computeMyState() for this subsystem, not including its children
     //
-    private DecimalFormat fmt_ ;
+    private TimingHistogram compute_timer_ ;
 
     //
-    // The minimum time spend on any one robot loop in the code for this subsystem
+    // The time spent running the action for this subsystem in run(), not including its children
     //
-    private double min_time_ ;
+    private TimingHistogram run_timer_ ;
 
     //
     // If true, this subsystem logs much information
@@ -128,14 +110,10 @@ public class Subsystem {
         finished_default_ = false;
         verbose_ = false;
 
-        if (timing_)
-        {
-            total_time_ = 0.0;
-            total_cnt_ = 0;
-            min_time_ = Double.MAX_VALUE;
-            max_time_ = 0.0;
-            fmt_ = new DecimalFormat("00.000");
-        }
+        String path = getPath() ;
+        compute_timer_ = getRobot().getLoopProfiler().register(path + ":compute") ;
+        run_timer_ = getRobot().getLoopProfiler().register(path + ":run") ;
+
         try {
             ISettingsSupplier p = getRobot().getSettingsSupplier();
             String pname = "system:verbose:" + name_ ;
@@ -189,6 +167,36 @@ public class Subsystem {
         return getRobot().getSettingsSupplier().get("subsystems:" + name_ + ":" + name) ;
     }
 
+    /// \brief Returns a handle to a double setting associated with this subsystem.  The name is
+    /// relative to the subsystem as in getSettingsValue().  Reading the handle does not look up the setting.
+    /// \param name the name of the setting associated with a subsystem
+    /// \exception throws MissingParameterException if the setting is not present in the settings file
+    /// \exception throws BadParameterTypeException if the setting is not a double
+    /// \returns a handle to the setting
+    public DoubleSetting getDoubleSetting(String name) throws MissingParameterException, BadParameterTypeException {
+        return getRobot().getSettingsSupplier().getDoubleSetting("subsystems:" + name_ + ":" + name) ;
+    }
+
+    /// \brief Returns a handle to an integer setting associated with this subsystem.  The name is
+    /// relative to the subsystem as in getSettingsValue().  Reading the handle does not look up the setting.
+    /// \param name the name of the setting associated with a subsystem
+    /// \exception throws MissingParameterException if the setting is not present in the settings file
+    /// \exception throws BadParameterTypeException if the setting is not an integer
+    /// \returns a handle to the setting
+    public IntSetting getIntSetting(String name) throws MissingParameterException, BadParameterTypeException {
+        return getRobot().getSettingsSupplier().getIntSetting("subsystems:" + name_ + ":" + name) ;
+    }
+
+    /// \brief Returns a handle to a boolean setting associated with this subsystem.  The name is
+    /// relative to the subsystem as in getSettingsValue().  Reading the handle does not look up the setting.
+    /// \param name the name of the setting associated with a subsystem
+    /// \exception throws MissingParameterException if the setting is not present in the settings file
+    /// \exception throws BadParameterTypeException if the setting is not a boolean
+    /// \returns a handle to the setting
+    public BooleanSetting getBooleanSetting(String name) throws MissingParameterException, BadParameterTypeException {
+        return getRobot().getSettingsSupplier().getBooleanSetting("subsystems:" + name_ + ":" + name) ;
+    }
+
     /// \brief Returns true if the subsystem related setting is defined
     /// \returns true if the subsystem related setting is defined
     public boolean isSettingDefined(String name) {
@@ -253,6 +261,27 @@ public class Subsystem {
         return name_;
     }
 
+    /// \brief returns the path to this subsystem through the subsystem hierarchy (e.g. robot/tankdrive)
+    /// \returns the path to this subsystem through the subsystem hierarchy
+    public String getPath() {
+        if (parent_ == null)
+            return name_ ;
+
+        return parent_.getPath() + "/" + name_ ;
+    }
+
+    /// \brief returns the timer for the computeMyState() method of this subsystem
+    /// \returns the timer for the computeMyState() method of this subsystem
+    public TimingHistogram getComputeTimer() {
+        return compute_timer_ ;
+    }
+
+    /// \brief returns the timer for the action run by this subsystem
+    /// \returns the timer for the action run by this subsystem
+    public TimingHistogram getRunTimer() {
+        return run_timer_ ;
+    }
+
     /// \brief returns the parent of the subsystem
     /// \returns the parent of the subsystem
     public Subsystem getParent() {
@@ -314,8 +343,9 @@ public class Subsystem {
     /// \brief this method computes the current state of the subsystem.
     /// This method is called when the robot is disabled, in auto mode, or in teleop mode.  This
     /// method calls subsystem specific computeMyState() which should be implemented by any
-    /// derived class.  This specific implementation keeps track of execution time of the
-    /// subsystem state computations as this is the most CPU intensive operation of the robot.
+    /// derived class.  When the loop profiler is enabled, this specific implementation keeps track
+    /// of execution time of the subsystem state computations as this is the most CPU intensive
+    /// operation of the robot.
     /// Note, this method also catches all exceptions from the computeMyState() method keeping
     /// the exception from propogating up and crashing the robot code.
     ///
@@ -325,33 +355,10 @@ public class Subsystem {
             sub.computeState();
         }
 
+        LoopProfiler profiler = getRobot().getLoopProfiler() ;
+        long start = profiler.start() ;
         try {
             computeMyState() ;
-
-            if (timing_)
-            {
-                double start = getRobot().getTime() ;
-                double elapsed = getRobot().getTime() - start ;
-                total_time_ += elapsed ;
-                total_cnt_++ ;
-
-                min_time_ = Math.min(min_time_, elapsed) ;
-                max_time_ = Math.max(max_time_, elapsed) ;
-
-                
-                // Turn this on to see where execution time is going
-                
-                if (total_cnt_ > 0 && (total_cnt_ % 500) == 0) {
-                    MessageLogger logger = getRobot().getMessageLogger() ;
-                    logger.startMessage(MessageType.Debug, getRobot().getLoggerID()) ;
-                    logger.add("subsystem ").addQuoted(getName()) ;
-                    logger.add("count", total_cnt_) ;
-                    logger.add("min", fmt_.format(min_time_ * 1000)) ;
-                    logger.add("average", fmt_.format(total_time_ / total_cnt_ * 1000)) ;
-                    logger.add("max", fmt_.format(max_time_ * 1000)) ;
-                    logger.endMessage();
-                }
-            }
         }
         catch(Exception ex) {
             MessageLogger logger = getRobot().getMessageLogger() ;            
@@ -360,6 +367,7 @@ public class Subsystem {
             logger.add(" threw exception in computeMyState() - ").add(ex.getMessage()) ;
             logger.endMessage();
         }
+        profiler.stop(compute_timer_, start) ;
     }
 
     /// \brief this method is called in robot loop to set any hardware outputs
@@ -368,6 +376,10 @@ public class Subsystem {
     /// required for actuators.
     ///
     public void run() throws Exception {
+        LoopProfiler profiler = getRobot().getLoopProfiler() ;
+        long start = profiler.start() ;
+        Action running = action_ ;
+
         if (action_ != null)
         {
             try {
@@ -412,6 +424,8 @@ public class Subsystem {
             }
         }
 
+        profiler.stop(run_timer_, start, running) ;
+
         for(Subsystem sub : children_)
             sub.run();        
     }
@@ -668,6 +682,14 @@ public class Subsystem {
         getRobot().getPlotManager().addPlotData(id, data) ;
     }
 
+    /// \brief add data to a plot without boxing the values.  The values are copied, so the caller
+    /// can reuse the array for the next robot loop.
+    /// \param id the handle for a plot returned by initPlot()
+    /// \param data the data for the plot, should be the same size as the cols array in startPlot()
+    public void addPlotData(int id, double[] data) {
+        getRobot().getPlotManager().addPlotData(id, data) ;
+    }
+
     /// \brief end a plot
     /// This signals to any software listening to plots that this plot is complete and all data is present
     /// \param id the handle for a plot returned by initPlot()
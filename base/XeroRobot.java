@@ -12,6 +12,8 @@ import java.util.List;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
+import edu.wpi.first.hal.HAL;
+import edu.wpi.first.networktables.NetworkTableInstance;
 import edu.wpi.first.wpilibj.Compressor;
 import edu.wpi.first.wpilibj.DriverStation;
 import edu.wpi.first.wpilibj.PneumaticsModuleType;
@@ -29,9 +31,16 @@ import org.xero1425.misc.BadParameterTypeException;
 import org.xero1425.misc.ISettingsSupplier;
 import org.xero1425.misc.JsonSettingsParser;
 import org.xero1425.misc.MessageDestination;
+import org.xero1425.misc.MessageDestinationAsync;
+import org.xero1425.misc.MessageDestinationBinaryFile;
 import org.xero1425.misc.MessageDestinationFile;
+import org.xero1425.misc.MessageDestinationMappedFile;
 import org.xero1425.misc.MessageDestinationThumbFile;
+import org.xero1425.misc.MessageOverflowPolicy;
+import org.xero1425.misc.MessageRecordDestination;
+import org.xero1425.misc.MessageRecordDestinationAsync;
 import org.xero1425.misc.SimArgs;
+import org.xero1425.misc.TimingHistogram;
 import org.xero1425.misc.XeroPathManager;
 import org.xero1425.misc.XeroPathType;
 import org.xero1425.base.motors.MotorFactory;
@@ -70,9 +79,27 @@ public abstract class XeroRobot extends TimedRobot {
     // The settings file supplier for the robot
     private ISettingsSupplier settings_ ;
 
+    // The settings file parser, used to install new settings when the settings file changes
+    private JsonSettingsParser settings_file_ ;
+
     // The plot manager for the robot
     private PlotManager plot_mgr_ ;
 
+    // The loop profiler for the robot
+    private LoopProfiler profiler_ ;
+
+    // The time spent in the simulation engine each robot loop
+    private TimingHistogram sim_timer_ ;
+
+    // The time spent in the current controller each robot loop
+    private TimingHistogram controller_timer_ ;
+
+    // The time spent in each complete robot loop
+    private TimingHistogram loop_timer_ ;
+
+    // Detects and reports robot loops that take longer than the loop period
+    private LoopOverrunMonitor overrun_ ;
+
     // The path following paths 
     private XeroPathManager paths_ ;
 
@@ -119,9 +146,21 @@ public abstract class XeroRobot extends TimedRobot {
     // The type of pneumatics on the robot
     private PneumaticsModuleType pneumatics_type_ ;
 
+    // If not null, this is the size rotated log file, which starts a new segment each match
+    private MessageDestinationMappedFile mapped_log_ ;
+
+    // If not null, this is the simulation engine running the models and stimulus file for this robot
+    private SimulationEngine engine_ ;
+
     /// \brief The "subsystem" name for the message logger for this class
     public static final String LoggerName = "xerorobot" ;
 
+    // The largest size of a single log file segment when the log files are size rotated
+    private static final long MaxLogSegmentSize = 16 * 1024 * 1024 ;
+
+    // The time between checks of the settings file for changes, in milliseconds
+    private static final long SettingsWatchInterval = 1000 ;
+
     // A array to convert hex characters to integers
     private static final char[] HEX_ARRAY = "0123456789ABCDEF".toCharArray();
 
@@ -140,16 +179,32 @@ public abstract class XeroRobot extends TimedRobot {
         logger_id_ = logger_.registerSubsystem(LoggerName) ;        
         logger_.startMessage(MessageType.Info).add("robot code starting").endMessage();
 
+        // Create the loop profiler, before any subsystems register their timers
+        profiler_ = new LoopProfiler(logger_, "/XeroProfile") ;
+        sim_timer_ = profiler_.register("simulator") ;
+        controller_timer_ = profiler_.register("controller") ;
+        loop_timer_ = profiler_.register("loop") ;
+        overrun_ = new LoopOverrunMonitor(logger_, profiler_, period) ;
+
+        if (RobotBase.isSimulation() && SimArgs.Headless) {
+            //
+            // RobotBase starts the NetworkTables server on its default port.  Many headless simulations may run
+            // at once, and nothing connects to them, so the server is stopped rather than having every simulation
+            // contend for the same port.  Tables are still available to the robot code in this process.
+            //
+            NetworkTableInstance.getDefault().stopServer() ;
+        }
+
         if (RobotBase.isSimulation()) {
-            String str = getSimulationFileName() ;
+            String str = (SimArgs.InputFileName != null) ? SimArgs.InputFileName : getSimulationFileName() ;
             if (str == null) {
                 System.out.println("The code is setup to simulate, but the derived robot class did not provide a stimulus file") ;
                 System.out.println("Not initializing the Xero1425 Simulation engine - assuming Romi robot") ;
             }
             else {
-                SimulationEngine.initializeSimulator(this, logger_);
+                engine_ = SimulationEngine.initializeSimulator(this, logger_);
                 addRobotSimulationModels() ;
-                SimulationEngine.getInstance().initAll(str) ;
+                engine_.initAll(str) ;
             }
         }
 
@@ -164,6 +219,8 @@ public abstract class XeroRobot extends TimedRobot {
 
         // Read the paths files needed
         paths_ = new XeroPathManager(logger_, robot_paths_.pathsDirectory(), getPathType());
+        if (RobotBase.isReal())
+            paths_.setCacheDirectory(robot_paths_.pathsDirectory()) ;
         try {
             loadPathsFile();
         } catch (Exception ex) {
@@ -281,7 +338,7 @@ public abstract class XeroRobot extends TimedRobot {
     }
 
     /// \brief Returns the simulation stimulus file (JSON) name.  This method should be overridden by the 
-    /// derived robot specific class.
+    /// derived robot specific class.  A stimulus file given on the command line (see SimArgs) is used instead.
     /// \returns the simulation stimulus file (JSON) name
     protected String getSimulationFileName() {
         return null ;
@@ -308,6 +365,19 @@ public abstract class XeroRobot extends TimedRobot {
         return loop_count_ ;
     }
 
+    /// \brief Start the robot code.  When simulating headless, the robot loop is run here with the robot time
+    /// stepped forward one period each loop, rather than waiting on the TimedRobot timer.
+    @Override
+    public void startCompetition() {
+        if (RobotBase.isSimulation() && engine_ != null && SimArgs.Headless) {
+            runHeadless() ;
+            exitSimulation() ;
+        }
+        else {
+            super.startCompetition() ;
+        }
+    }
+
     /// \brief Initialize the robot
     @Override
     public void robotInit() {
@@ -334,6 +404,47 @@ public abstract class XeroRobot extends TimedRobot {
             plot_mgr_.enable(false);
         }
 
+        try {
+            if (settings_.isDefined("system:plotbatch"))
+                plot_mgr_.setBatching(settings_.get("system:plotbatch").getInteger(), PlotManager.DefaultBatchInterval) ;
+        } catch (Exception ex) {
+            //
+            // The parameter is not an integer, so publish each point in its own entry
+            plot_mgr_.setBatching(0, PlotManager.DefaultBatchInterval) ;
+        }
+
+        // Plots written to a file in the log directory are captured even when the FMS is attached
+        try {
+            if (settings_.isDefined("system:plotfile") && settings_.get("system:plotfile").getBoolean()) {
+                PlotFileWriter file = new PlotFileWriter(robot_paths_.logFileDirectory(), 250) ;
+                file.start() ;
+                plot_mgr_.setFileWriter(file) ;
+            }
+        } catch (Exception ex) {
+            //
+            // The parameter is not a boolean, so do not write plots to a file
+            plot_mgr_.setFileWriter(null) ;
+        }
+
+        /// Initialize the loop profiler
+        try {
+            profiler_.enable(settings_.get("system:profiling").getBoolean()) ;
+        } catch (Exception ex) {
+            //
+            // Either the parameter is missing, or is not a boolean. In either
+            // case we just turn off profiling
+            profiler_.enable(false) ;
+        }
+
+        /// Watch the settings file so settings can be tuned without restarting the robot code
+        try {
+            if (settings_.isDefined("system:hotreload") && settings_.get("system:hotreload").getBoolean())
+                settings_file_.startWatching(SettingsWatchInterval) ;
+        } catch (Exception ex) {
+            //
+            // The parameter is not a boolean, so do not watch the settings file
+        }
+
         //
         // initialize the basic hardware
         //
@@ -342,12 +453,12 @@ public abstract class XeroRobot extends TimedRobot {
             hardwareInit();
 
 
-            if (RobotBase.isSimulation() && SimulationEngine.getInstance() != null)
+            if (RobotBase.isSimulation() && engine_ != null)
             {
                 //
                 // If we are simulating, create the simulation modules required
                 //
-                SimulationEngine.getInstance().createModels() ;
+                engine_.createModels() ;
             }
         } catch (Exception ex) {
             logger_.startMessage(MessageType.Error);
@@ -417,6 +528,10 @@ public abstract class XeroRobot extends TimedRobot {
             return;
 
         updateAutoMode();
+
+        if (mapped_log_ != null)
+            mapped_log_.requestRotate() ;
+
         logAutoModeState();
 
         current_controller_ = auto_controller_;
@@ -512,6 +627,13 @@ public abstract class XeroRobot extends TimedRobot {
         current_controller_ = null;
         robot_subsystem_.reset();
 
+        // Report the timing for the mode that just ended, and start fresh for the next one
+        if (profiler_.isEnabled())
+            profiler_.report() ;
+        profiler_.reset() ;
+        overrun_.report() ;
+        overrun_.reset() ;
+
         automode_ = -1;
         robot_subsystem_.init(LoopType.Disabled);
 
@@ -524,6 +646,9 @@ public abstract class XeroRobot extends TimedRobot {
         if (robot_subsystem_ == null)
             return;
 
+        // Install any new settings between robot loops, so a loop never sees a mix of old and new settings
+        settings_file_.applyPendingChanges() ;
+
         double initial_time = getTime();
         delta_time_ = initial_time - last_time_;
 
@@ -538,10 +663,9 @@ public abstract class XeroRobot extends TimedRobot {
             logger_.endMessage();
         }
 
-        if (isSimulation()) {
-            SimulationEngine engine = SimulationEngine.getInstance() ;
-            if (engine != null)
-                engine.run(getTime()) ;
+        if (isSimulation() && engine_ != null) {
+            engine_.run(delta_time_) ;
+            checkSimulationDone() ;
         }
 
         last_time_ = initial_time;
@@ -601,10 +725,60 @@ public abstract class XeroRobot extends TimedRobot {
         return plot_mgr_;
     }
 
+    /// \brief Returns the loop profiler
+    /// \returns the loop profiler
+    public LoopProfiler getLoopProfiler() {
+        return profiler_ ;
+    }
+
+    /// \brief Returns the simulation engine
+    /// \returns the simulation engine, or null if this robot is not simulated with a stimulus file
+    public SimulationEngine getSimulationEngine() {
+        return engine_ ;
+    }
+
+    /// \brief Returns the loop overrun monitor
+    /// \returns the loop overrun monitor
+    public LoopOverrunMonitor getLoopOverrunMonitor() {
+        return overrun_ ;
+    }
+
     /// \brief enable specific messages, epxected to be overridden by the derived class
     protected void enableMessages() {
     }
 
+    /// \brief returns true if the log file should be written in the compact binary format.  The
+    /// MessageLogDecoder program turns the binary log back into text.  May be overridden by the derived class.
+    /// \returns true if the log file should be written in the compact binary format
+    protected boolean useBinaryMessageLog() {
+        return false ;
+    }
+
+    /// \brief returns the total number of bytes of log files kept on the thumb drive.  If this is
+    /// zero, each run of the robot code writes a new log file and old log files are never removed.  If
+    /// this is not zero, the log is written to size limited segments, a new segment is started for each
+    /// match, and the oldest segments are deleted to stay within this budget.  May be overridden by the
+    /// derived class.
+    /// \returns the total number of bytes of log files kept on the thumb drive
+    protected long getLogRetentionBytes() {
+        return 0 ;
+    }
+
+    /// \brief returns the number of messages that can be queued for the background log writer.  If
+    /// this is zero, messages are written to the log file on the robot thread.  This applies to the binary log as
+    /// well as the text logs.  May be overridden by the derived class.
+    /// \returns the number of messages that can be queued for the background log writer
+    protected int getMessageLoggerQueueSize() {
+        return 0 ;
+    }
+
+    /// \brief returns what the background log writer does when its queue is full.  May be overridden by
+    /// the derived class.
+    /// \returns what the background log writer does when its queue is full
+    protected MessageOverflowPolicy getMessageLoggerOverflowPolicy() {
+        return MessageOverflowPolicy.DropOldest ;
+    }
+
     /// \brief add specific models to the simulation, expected to be overridden by the derived class
     protected void addRobotSimulationModels() {
     }
@@ -662,7 +836,7 @@ public abstract class XeroRobot extends TimedRobot {
         return robot_subsystem_.getOI().getAutoModeSelector() ;
     }
 
-    /// \brief load the paths file from the paths file directory
+    /// \brief add the paths in the paths file directory to the path manager, and start reading them
     protected void loadPathsFile() throws Exception {
         XeroPathManager mgr = getPathManager() ;
 
@@ -673,12 +847,18 @@ public abstract class XeroRobot extends TimedRobot {
                 if (index != -1) {
                     name = name.substring(index + 1) ;
                     name = name.substring(0, name.length() - 9) ;
-                    mgr.loadPath(name) ;
+                    mgr.addPath(name) ;
                 }
             }
         }
         catch(IOException ex) {
         }
+
+        //
+        // The paths are read on background threads, an action that asks for a path before it
+        // is read waits for that path only
+        //
+        mgr.prefetch() ;
     }   
 
     private void enableMessagesFromSettingsFile() {
@@ -705,6 +885,45 @@ public abstract class XeroRobot extends TimedRobot {
         }
     }
 
+    //
+    // Run the robot code as TimedRobot does, but with the robot time stopped except when it is stepped
+    // forward by exactly one period before each robot loop.  Nothing waits on the wall clock, so the
+    // simulation runs as fast as the robot code and models allow, and every loop sees the same delta time.
+    // The loop ends when the simulation engine exits the simulator.
+    //
+    private void runHeadless() {
+        engine_.startHeadless() ;
+
+        robotInit() ;
+        simulationInit() ;
+
+        System.out.println("********** Robot program startup complete **********") ;
+        HAL.observeUserProgramStarting() ;
+
+        while (!engine_.isDone()) {
+            engine_.stepTime(period_) ;
+            loopFunc() ;
+        }
+    }
+
+    //
+    // When the simulation engine has exited the simulator while the TimedRobot is running the robot loop, end
+    // the program with the result of the simulation.  When running headless, the headless loop ends instead.
+    //
+    private void checkSimulationDone() {
+        if (engine_.isDone() && !engine_.isHeadless())
+            exitSimulation() ;
+    }
+
+    //
+    // End the program with the result of the simulation.  The message logger may be holding messages in a
+    // queue or a buffer, so it is flushed first to keep the result of the simulation and the end of the log.
+    //
+    private void exitSimulation() {
+        logger_.flush() ;
+        System.exit(engine_.getExitCode()) ;
+    }
+
     private void robotLoop(LoopType ltype) {
         double initial_time = getTime() ;
         delta_time_ = initial_time - last_time_ ;
@@ -726,11 +945,17 @@ public abstract class XeroRobot extends TimedRobot {
         logger_.add("delta", delta_time_) ;
         logger_.endMessage() ;
 
-        if (isSimulation()) {
-            SimulationEngine engine = SimulationEngine.getInstance() ;
-            if (engine != null) {
-                engine.run(delta_time_) ;
-            }
+        overrun_.startLoop() ;
+
+        // Install any new settings between robot loops, so a loop never sees a mix of old and new settings
+        settings_file_.applyPendingChanges() ;
+        long loop_start = profiler_.start() ;
+
+        if (isSimulation() && engine_ != null) {
+            long start = profiler_.start() ;
+            engine_.run(delta_time_) ;
+            profiler_.stop(sim_timer_, start) ;
+            checkSimulationDone() ;
         }        
 
         try {
@@ -743,8 +968,11 @@ public abstract class XeroRobot extends TimedRobot {
             logger_.endMessage();
         }
 
-        if (current_controller_ != null)
+        if (current_controller_ != null) {
+            long start = profiler_.start() ;
             current_controller_.run() ;
+            profiler_.stop(controller_timer_, start) ;
+        }
 
         try {
             robot_subsystem_.run();
@@ -756,6 +984,10 @@ public abstract class XeroRobot extends TimedRobot {
             logger_.endMessage();            
         }
 
+        profiler_.stopTotal(loop_timer_, loop_start) ;
+        overrun_.endLoop() ;
+        profiler_.endLoop() ;
+
         last_time_ = initial_time ;
     }
 
@@ -853,16 +1085,53 @@ public abstract class XeroRobot extends TimedRobot {
     private void enableMessageLogger() {
         String logfile = SimArgs.LogFileName ;
         MessageDestination dest ;
+        int qsize = getMessageLoggerQueueSize() ;
 
         logger_ = new MessageLogger();
         logger_.setTimeSource(new RobotTimeSource());
 
-        if (logfile != null) {
-            dest = new MessageDestinationFile(logfile) ;
+        if (useBinaryMessageLog()) {
+            //
+            // The binary log buffers internally and is flushed by its own policy, and it never
+            // needs the text of a message, so messages are not formatted at all
+            //
+            if (logfile != null)
+                dest = new MessageDestinationBinaryFile(logfile) ;
+            else
+                dest = new MessageDestinationBinaryFile(robot_paths_.logFileDirectory(), 250) ;
+        }
+        else if (logfile != null) {
+            MessageDestinationFile file = new MessageDestinationFile(logfile) ;
+            file.setAutoFlush(qsize <= 0) ;
+            dest = file ;
+        }
+        else if (getLogRetentionBytes() > 0) {
+            long retention = getLogRetentionBytes() ;
+            mapped_log_ = new MessageDestinationMappedFile(robot_paths_.logFileDirectory(), Math.min(MaxLogSegmentSize, retention / 4), retention) ;
+            dest = mapped_log_ ;
         }
         else {
-            dest = new MessageDestinationThumbFile(robot_paths_.logFileDirectory(), 250);
+            MessageDestinationThumbFile file = new MessageDestinationThumbFile(robot_paths_.logFileDirectory(), 250);
+            file.setAutoFlush(qsize <= 0) ;
+            dest = file ;
         }
+
+        if (qsize > 0) {
+            //
+            // Write the log file from a background thread so a slow file system does not
+            // steal time from the robot loop.  The binary log receives copies of the message
+            // records so it still never needs the text of a message.
+            //
+            MessageDestinationAsync async ;
+            if (dest instanceof MessageRecordDestination)
+                async = new MessageRecordDestinationAsync(qsize, getMessageLoggerOverflowPolicy()) ;
+            else
+                async = new MessageDestinationAsync(qsize, getMessageLoggerOverflowPolicy()) ;
+            async.addDestination(dest) ;
+            async.start() ;
+            dest = async ;
+        }
+
         logger_.addDestination(dest);
         enableMessages();
     }
@@ -879,11 +1148,19 @@ public abstract class XeroRobot extends TimedRobot {
         file.addDefine(bot) ;
         logger_.startMessage(MessageType.Info).add("reading params for bot ").addQuoted(bot).endMessage() ;
 
+        //
+        // On the robot, keep a precompiled copy of the settings next to the JSON file so the JSON text
+        // is only parsed again after a new settings file is deployed
+        //
+        if (RobotBase.isReal())
+            file.setArtifactFile(robot_paths_.deployDirectory() + getName() + ".settings") ;
+
         if (!file.readFile(robot_paths_.deployDirectory() + getName() + ".json")) {
             logger_.startMessage(MessageType.Error).add("error reading parameters file").endMessage();
         }
 
         settings_ = file ;
+        settings_file_ = file ;
     }
      
     private void getMacAddress() {
@@ -940,11 +1217,14 @@ public abstract class XeroRobot extends TimedRobot {
                     logger_.startMessage(MessageType.Debug, logger_id_) ;
                     logger_.add("    processing path ").addQuoted(pa.getPathName()).endMessage();
 
-                    if (!paths_.hasPath(pa.getPathName())) {
+                    //
+                    // Wait for the path to be read, so missing and damaged path files are both found here
+                    //
+                    if (!paths_.isLoaded(pa.getPathName())) {
                         logger_.startMessage(MessageType.Error) ;
                         logger_.add("automode ").addQuoted(mode.getName()) ;
                         logger_.add(" requires path ").addQuoted(pa.getPathName()) ;
-                        logger_.add(" which is missing from the paths directory") ;
+                        logger_.add(" which is missing from the paths directory or cannot be read") ;
                         logger_.endMessage();
                         valid = false ;
                     }
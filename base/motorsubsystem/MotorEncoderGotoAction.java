@@ -79,6 +79,9 @@ public class MotorEncoderGotoAction extends MotorAction {
     // The columns to plot
     static final String [] plot_columns_ = { "time", "tpos", "apos", "tvel", "avel", "out" } ;
 
+    // The values for the current robot loop, reused each loop
+    private double [] plot_data_ = new double[plot_columns_.length] ;
+
     /// \brief Create the action
     /// \param sub the MotorEncoderSubsystem subsystem for the action    
     /// \param target the target position
@@ -152,14 +155,13 @@ public class MotorEncoderGotoAction extends MotorAction {
             double out = ctrl_.getOutput(targetAcc, targetVel, targetDist, traveled, dt) ;
             sub.setPower(out) ;
 
-            Double[] data = new Double[plot_columns_.length] ;
-            data[0] = elapsed ;
-            data[1] = start_position_ + targetDist ;
-            data[2] = position ;
-            data[3] = targetVel ;
-            data[4] = sub.getVelocity() ;
-            data[5] = out ;
-            sub.addPlotData(plot_id_, data);
+            plot_data_[0] = elapsed ;
+            plot_data_[1] = start_position_ + targetDist ;
+            plot_data_[2] = position ;
+            plot_data_[3] = targetVel ;
+            plot_data_[4] = sub.getVelocity() ;
+            plot_data_[5] = out ;
+            sub.addPlotData(plot_id_, plot_data_);
         }
     }
 
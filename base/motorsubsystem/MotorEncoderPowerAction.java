@@ -18,6 +18,9 @@ public class MotorEncoderPowerAction extends MotorPowerAction
     // The columns to plot
     private static String[] plot_columns_ = {"time","pos","vel","accel","out","encoder" } ;
 
+    // The values for the current robot loop, reused each loop
+    private double[] plot_data_ = new double[plot_columns_.length] ;
+
     /// \brief Create the MotorEncoderPowerAction that applies a fixed power value then is done
     /// \param motor the subsystem to apply the action to
     /// \param power the power to apply to the motor
@@ -72,14 +75,13 @@ public class MotorEncoderPowerAction extends MotorPowerAction
     public void run() {
         super.run() ;
 
-        Double [] data = new Double[plot_columns_.length] ;
-        data[0] = getSubsystem().getRobot().getTime() - start_ ;
-        data[1] = ((MotorEncoderSubsystem)(getSubsystem())).getPosition() ;
-        data[2] = ((MotorEncoderSubsystem)(getSubsystem())).getVelocity() ;
-        data[3] = ((MotorEncoderSubsystem)(getSubsystem())).getAcceleration() ;
-        data[4] = getSubsystem().getPower() ;
-        data[5] = ((MotorEncoderSubsystem)(getSubsystem())).getEncoderRawCount() ;
-        getSubsystem().addPlotData(plot_id_, data);
+        plot_data_[0] = getSubsystem().getRobot().getTime() - start_ ;
+        plot_data_[1] = ((MotorEncoderSubsystem)(getSubsystem())).getPosition() ;
+        plot_data_[2] = ((MotorEncoderSubsystem)(getSubsystem())).getVelocity() ;
+        plot_data_[3] = ((MotorEncoderSubsystem)(getSubsystem())).getAcceleration() ;
+        plot_data_[4] = getSubsystem().getPower() ;
+        plot_data_[5] = ((MotorEncoderSubsystem)(getSubsystem())).getEncoderRawCount() ;
+        getSubsystem().addPlotData(plot_id_, plot_data_);
         
         if (isDone())
             getSubsystem().endPlot(plot_id_) ;
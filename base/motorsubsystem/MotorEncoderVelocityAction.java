@@ -41,6 +41,9 @@ public class MotorEncoderVelocityAction extends MotorAction {
     // The columns to plot
     private static String [] columns_ = { "time", "target", "actual"}  ;
 
+    // The values for the current robot loop, reused each loop
+    private double [] plot_data_ = new double[columns_.length] ;
+
     /// \brief Create a new MotorEncoderVelocityAction
     /// \param sub the target MotorEncoderSubsystem
     /// \param name the name of the action, for entries from the settings file
@@ -149,11 +152,10 @@ public class MotorEncoderVelocityAction extends MotorAction {
             logger.endMessage();
 
             if (plot_id_ != -1) {
-                Double[] data = new Double[columns_.length] ;
-                data[0] = getSubsystem().getRobot().getTime() - start_ ;
-                data[1] = target_ ;
-                data[2] = me.getVelocity() ;
-                getSubsystem().addPlotData(plot_id_, data);
+                plot_data_[0] = getSubsystem().getRobot().getTime() - start_ ;
+                plot_data_[1] = target_ ;
+                plot_data_[2] = me.getVelocity() ;
+                getSubsystem().addPlotData(plot_id_, plot_data_);
 
                 if (getSubsystem().getRobot().getTime() - start_ > 10.0)
                 {
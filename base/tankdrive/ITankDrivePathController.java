@@ -0,0 +1,39 @@
+package org.xero1425.base.tankdrive;
+
+import org.xero1425.misc.XeroPath;
+
+import edu.wpi.first.math.geometry.Pose2d;
+
+/// \file
+
+/// \brief This interface is the control law of a tank drive path following algorithm.
+/// The controller computes the left and right motor power each robot loop from the path and the measured state
+/// of the drivebase.  The path following actions use a controller with the TankDriveSubsystem, and the controller
+/// does not use the robot or the subsystem itself, so the same controller can be run against a model of the
+/// drivebase without robot hardware.
+public interface ITankDrivePathController {
+    /// \brief start following a path
+    /// \param path the path to follow
+    /// \param time the current time in seconds
+    /// \param state the measured state of the drivebase
+    void start(XeroPath path, double time, ITankDriveState state) ;
+
+    /// \brief compute the motor power for one robot loop
+    /// \param time the current time in seconds
+    /// \param dt the time since the last robot loop in seconds
+    /// \param state the measured state of the drivebase
+    /// \returns true if the path is complete
+    boolean run(double time, double dt, ITankDriveState state) ;
+
+    /// \brief returns the pose of the robot at the start of the path
+    /// \returns the pose of the robot at the start of the path
+    Pose2d getStartPose() ;
+
+    /// \brief returns the power for the left side of the drivebase computed by the last call to run()
+    /// \returns the power for the left side of the drivebase
+    double getLeftPower() ;
+
+    /// \brief returns the power for the right side of the drivebase computed by the last call to run()
+    /// \returns the power for the right side of the drivebase
+    double getRightPower() ;
+}
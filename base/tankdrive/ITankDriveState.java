@@ -0,0 +1,42 @@
+package org.xero1425.base.tankdrive;
+
+import edu.wpi.first.math.geometry.Pose2d;
+
+/// \file
+
+/// \brief This interface is the measured state of a tank drive used by the path following controllers.
+/// The TankDriveSubsystem provides this state from its encoders and gyro.  Other classes may provide it
+/// from a model of the drivebase so the path following controllers can be run without robot hardware.
+public interface ITankDriveState {
+    /// \brief returns the distance traveled by the left side of the robot
+    /// \returns the distance traveled by the left side of the robot
+    double getLeftDistance() ;
+
+    /// \brief returns the distance traveled by the right side of the robot
+    /// \returns the distance traveled by the right side of the robot
+    double getRightDistance() ;
+
+    /// \brief returns the velocity of the left side of the robot
+    /// \returns the velocity of the left side of the robot
+    double getLeftVelocity() ;
+
+    /// \brief returns the velocity of the right side of the robot
+    /// \returns the velocity of the right side of the robot
+    double getRightVelocity() ;
+
+    /// \brief returns the current angle in degrees of the robot
+    /// \returns the current angle in degrees of the robot
+    double getAngle() ;
+
+    /// \brief returns the pose of the robot from the position tracker
+    /// \returns the pose of the robot
+    Pose2d getPose() ;
+
+    /// \brief returns the track width of the robot
+    /// \returns the track width of the robot
+    double getWidth() ;
+
+    /// \brief returns the scrub value for the robot
+    /// \returns the scrub value for the robot
+    double getScrub() ;
+}
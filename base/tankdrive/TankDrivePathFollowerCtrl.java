@@ -0,0 +1,376 @@
+package org.xero1425.base.tankdrive;
+
+import org.xero1425.misc.BadParameterTypeException;
+import org.xero1425.misc.ISettingsSupplier;
+import org.xero1425.misc.MissingParameterException;
+import org.xero1425.misc.PIDACtrl;
+import org.xero1425.misc.PIDCtrl;
+import org.xero1425.misc.SettingsValue;
+import org.xero1425.misc.XeroMath;
+import org.xero1425.misc.XeroPath;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+
+/// \file
+
+/// \brief This class is the control law for the traditional "Path Following" algorithm used by the
+/// TankDrivePathFollowerAction.  The position, velocity, and acceleration for the left and right side of the
+/// tank drive are followed with a PIDACtrl for each side, and a PIDCtrl corrects the heading of the robot.
+public class TankDrivePathFollowerCtrl implements ITankDrivePathController {
+    // The path being followed
+    private XeroPath path_ ;
+
+    // The data point we are currently processing
+    private int index_ ;
+
+    // If true, the path is sampled at the elapsed time rather than one point per robot loop
+    private boolean timed_ ;
+
+    // If true, follow the path in reverse
+    private boolean reverse_ ;
+
+    // The length of a robot loop in seconds
+    private double period_ ;
+
+    // The targets for the left and right side of the robot this robot loop, indexed by path column
+    private double[] lseg_ ;
+    private double[] rseg_ ;
+
+    // The number of robot loops since the path started
+    private int loops_ ;
+
+    // The elapsed time less the time expected from the number of robot loops
+    private double slip_ ;
+
+    // The starting position of the left and right sides of the robot
+    private double left_start_ ;
+    private double right_start_ ;
+
+    // The starting time for the path.
+    private double start_time_ ;
+
+    // The starting angle for the robot
+    private double start_angle_ ;
+
+    // The starting angle for the path
+    private double target_start_angle_ ;
+
+    // The pose of the robot at the start of the path
+    private Pose2d start_pose_ ;
+
+    // The followers for the left and right sides of the robot
+    private PIDACtrl left_follower_ ;
+    private PIDACtrl right_follower_ ;
+
+    // The PID controller used to do angle correction for the robot heading
+    private PIDCtrl angle_correction_pid_ ;
+
+    // The targets for the left and right side of the robot this robot loop
+    private double laccel_, lvel_, lpos_ ;
+    private double raccel_, rvel_, rpos_ ;
+
+    // The target and actual headings, and the heading error and correction, this robot loop
+    private double thead_, ahead_ ;
+    private double angerr_, angcorr_ ;
+
+    // The left and right power computed this robot loop
+    private double left_out_ ;
+    private double right_out_ ;
+
+    // The data elements to extract from the path
+    private static final int LeftSide = 0 ;
+    private static final int RightSide = 1 ;
+
+    /// \brief create the control law, reading the followers from the settings for a subsystem
+    /// \param settings the settings supplier
+    /// \param subsystem the name of the tankdrive subsystem
+    /// \param reverse if true, follow the path in reverse
+    /// \param timed if true, sample the path at the elapsed time rather than one point per robot loop
+    /// \param period the length of a robot loop in seconds
+    public TankDrivePathFollowerCtrl(ISettingsSupplier settings, String subsystem, boolean reverse, boolean timed, double period)
+            throws BadParameterTypeException, MissingParameterException {
+        reverse_ = reverse ;
+        timed_ = timed ;
+        period_ = period ;
+        lseg_ = new double[XeroPath.Columns] ;
+        rseg_ = new double[XeroPath.Columns] ;
+
+        left_follower_ = new PIDACtrl(settings, "subsystems:" + subsystem + ":follower:left", false) ;
+        right_follower_ = new PIDACtrl(settings, "subsystems:" + subsystem + ":follower:right", false) ;
+        angle_correction_pid_ = new PIDCtrl(settings, "subsystems:" + subsystem + ":angle_correction", false) ;
+    }
+
+    /// \brief returns the default mode from the settings, following one point per robot loop if there is no setting
+    /// \param settings the settings supplier
+    /// \param subsystem the name of the tankdrive subsystem
+    /// \returns true if the setting subsystems:NAME:follower:timed is true
+    public static boolean isTimedDefault(ISettingsSupplier settings, String subsystem) throws BadParameterTypeException {
+        SettingsValue v = settings.getOrNull("subsystems:" + subsystem + ":follower:timed") ;
+        return v != null && v.getBoolean() ;
+    }
+
+    /// \brief start following a path
+    /// \param path the path to follow, with left and right wheels
+    /// \param time the current time in seconds
+    /// \param state the measured state of the drivebase
+    @Override
+    public void start(XeroPath path, double time, ITankDriveState state) {
+        path_ = path ;
+
+        left_start_ = state.getLeftDistance() ;
+        right_start_ = state.getRightDistance() ;
+
+        index_ = 0 ;
+        loops_ = 0 ;
+        slip_ = 0.0 ;
+        start_time_ = time ;
+        start_angle_ = state.getAngle() ;
+
+        target_start_angle_ = path.getHeading(LeftSide, 0) ;
+
+        double x = (path.getX(LeftSide, 0) + path.getX(RightSide, 0)) / 2.0 ;
+        double y = (path.getY(LeftSide, 0) + path.getY(RightSide, 0)) / 2.0 ;
+        start_pose_ = new Pose2d(x, y, Rotation2d.fromDegrees(target_start_angle_)) ;
+    }
+
+    /// \brief compute the left and right power for one robot loop
+    /// \param time the current time in seconds
+    /// \param dt the time since the last robot loop in seconds
+    /// \param state the measured state of the drivebase
+    /// \returns true if the path is complete
+    @Override
+    public boolean run(double time, double dt, ITankDriveState state) {
+        XeroPath path = path_ ;
+
+        //
+        // The time slip is how far the elapsed time has moved from the time expected from the number
+        // of robot loops, which is how far behind the path the robot would be when following one point
+        // per robot loop
+        //
+        double elapsed = time - start_time_ ;
+        slip_ = elapsed - loops_ * period_ ;
+        loops_++ ;
+
+        if (timed_ || index_ < path.getSize())
+        {
+            double[] lseg = lseg_ ;
+            double[] rseg = rseg_ ;
+
+            if (timed_) {
+                path.sampleAt(LeftSide, elapsed, lseg) ;
+                path.sampleAt(RightSide, elapsed, rseg) ;
+            }
+            else {
+                path.sampleAt(LeftSide, path.getTime(LeftSide, index_), lseg) ;
+                path.sampleAt(RightSide, path.getTime(RightSide, index_), rseg) ;
+            }
+
+            // Compute the desired left and right side parameters
+            if (reverse_)
+            {
+                laccel_ = -rseg[XeroPath.Accel] ;
+                lvel_ = -rseg[XeroPath.Velocity] ;
+                lpos_ = -rseg[XeroPath.Position] ;
+                raccel_ = -lseg[XeroPath.Accel] ;
+                rvel_ = -lseg[XeroPath.Velocity] ;
+                rpos_ = -lseg[XeroPath.Position] ;
+            }
+            else
+            {
+                laccel_ = lseg[XeroPath.Accel] ;
+                lvel_ = lseg[XeroPath.Velocity] ;
+                lpos_ = lseg[XeroPath.Position] ;
+                raccel_ = rseg[XeroPath.Accel] ;
+                rvel_ = rseg[XeroPath.Velocity] ;
+                rpos_ = rseg[XeroPath.Position] ;
+            }
+
+            // Compute the actual and target robot headings
+            thead_ = XeroMath.normalizeAngleDegrees(lseg[XeroPath.Heading] - target_start_angle_) ;
+            ahead_ = XeroMath.normalizeAngleDegrees(state.getAngle() - start_angle_) ;
+
+            // Compute the distance traveled by each side of the robot
+            double ldist = state.getLeftDistance() - left_start_ ;
+            double rdist = state.getRightDistance() - right_start_ ;
+
+            // Use a PID controller with feed forward for velocity and acceleration to determine
+            // the desired left and right motor power.
+            double lout = left_follower_.getOutput(laccel_, lvel_, lpos_, ldist, dt) ;
+            double rout = right_follower_.getOutput(raccel_, rvel_, rpos_, rdist, dt) ;
+
+            // Compute an adjustment to the left and right power to keep the robot on the correct
+            // heading.  Note: negative angle is clockwise
+            angerr_ = XeroMath.normalizeAngleDegrees(ahead_ - thead_) ;
+            angcorr_ = angle_correction_pid_.getOutput(0, angerr_, dt) ;
+
+            left_out_ = lout - angcorr_ ;
+            right_out_ = rout + angcorr_ ;
+        }
+        index_++ ;
+
+        return timed_ ? elapsed >= path.getDuration() : index_ >= path.getSize() ;
+    }
+
+    /// \brief stop following the path
+    public void cancel() {
+        index_ = path_.getSize() ;
+        left_out_ = 0.0 ;
+        right_out_ = 0.0 ;
+    }
+
+    /// \brief returns the pose of the robot at the start of the path
+    /// \returns the pose of the robot at the start of the path
+    @Override
+    public Pose2d getStartPose() {
+        return start_pose_ ;
+    }
+
+    /// \brief returns the power for the left side of the drivebase
+    /// \returns the power for the left side of the drivebase
+    @Override
+    public double getLeftPower() {
+        return left_out_ ;
+    }
+
+    /// \brief returns the power for the right side of the drivebase
+    /// \returns the power for the right side of the drivebase
+    @Override
+    public double getRightPower() {
+        return right_out_ ;
+    }
+
+    /// \brief returns the index of the path point followed by the last robot loop
+    /// \returns the index of the path point followed by the last robot loop
+    public int getIndex() {
+        return index_ ;
+    }
+
+    /// \brief returns the time the path started, in seconds
+    /// \returns the time the path started
+    public double getStartTime() {
+        return start_time_ ;
+    }
+
+    /// \brief returns the number of robot loops since the path started
+    /// \returns the number of robot loops since the path started
+    public int getLoops() {
+        return loops_ ;
+    }
+
+    /// \brief returns the elapsed time less the time expected from the number of robot loops, in seconds
+    /// \returns the time slip in seconds
+    public double getTimeSlip() {
+        return slip_ ;
+    }
+
+    /// \brief returns true if the path is sampled at the elapsed time rather than one point per robot loop
+    /// \returns true if the path is sampled at the elapsed time
+    public boolean isTimed() {
+        return timed_ ;
+    }
+
+    /// \brief returns the left side of the path sampled this robot loop, indexed by path column
+    /// \returns the left side of the path sampled this robot loop
+    public double[] getLeftSample() {
+        return lseg_ ;
+    }
+
+    /// \brief returns the right side of the path sampled this robot loop, indexed by path column
+    /// \returns the right side of the path sampled this robot loop
+    public double[] getRightSample() {
+        return rseg_ ;
+    }
+
+    /// \brief returns the target position for the left side
+    /// \returns the target position for the left side
+    public double getLeftTargetPosition() {
+        return lpos_ ;
+    }
+
+    /// \brief returns the target velocity for the left side
+    /// \returns the target velocity for the left side
+    public double getLeftTargetVelocity() {
+        return lvel_ ;
+    }
+
+    /// \brief returns the target acceleration for the left side
+    /// \returns the target acceleration for the left side
+    public double getLeftTargetAccel() {
+        return laccel_ ;
+    }
+
+    /// \brief returns the target position for the right side
+    /// \returns the target position for the right side
+    public double getRightTargetPosition() {
+        return rpos_ ;
+    }
+
+    /// \brief returns the target velocity for the right side
+    /// \returns the target velocity for the right side
+    public double getRightTargetVelocity() {
+        return rvel_ ;
+    }
+
+    /// \brief returns the target acceleration for the right side
+    /// \returns the target acceleration for the right side
+    public double getRightTargetAccel() {
+        return raccel_ ;
+    }
+
+    /// \brief returns the distance traveled by the left side since the path started
+    /// \param state the measured state of the drivebase
+    /// \returns the distance traveled by the left side since the path started
+    public double getLeftDistance(ITankDriveState state) {
+        return state.getLeftDistance() - left_start_ ;
+    }
+
+    /// \brief returns the distance traveled by the right side since the path started
+    /// \param state the measured state of the drivebase
+    /// \returns the distance traveled by the right side since the path started
+    public double getRightDistance(ITankDriveState state) {
+        return state.getRightDistance() - right_start_ ;
+    }
+
+    /// \brief returns the target heading relative to the start of the path, in degrees
+    /// \returns the target heading in degrees
+    public double getTargetHeading() {
+        return thead_ ;
+    }
+
+    /// \brief returns the actual heading relative to the start of the path, in degrees
+    /// \returns the actual heading in degrees
+    public double getActualHeading() {
+        return ahead_ ;
+    }
+
+    /// \brief returns the heading error, in degrees
+    /// \returns the heading error in degrees
+    public double getAngleError() {
+        return angerr_ ;
+    }
+
+    /// \brief returns the power correction for the heading error
+    /// \returns the power correction for the heading error
+    public double getAngleCorrection() {
+        return angcorr_ ;
+    }
+
+    /// \brief returns the follower for the left side of the robot
+    /// \returns the follower for the left side of the robot
+    public PIDACtrl getLeftFollower() {
+        return left_follower_ ;
+    }
+
+    /// \brief returns the follower for the right side of the robot
+    /// \returns the follower for the right side of the robot
+    public PIDACtrl getRightFollower() {
+        return right_follower_ ;
+    }
+
+    /// \brief returns the PID controller that corrects the heading of the robot
+    /// \returns the PID controller that corrects the heading of the robot
+    public PIDCtrl getAngleCorrectionPID() {
+        return angle_correction_pid_ ;
+    }
+}
@@ -0,0 +1,257 @@
+package org.xero1425.base.tankdrive;
+
+import org.xero1425.misc.BadParameterTypeException;
+import org.xero1425.misc.ISettingsSupplier;
+import org.xero1425.misc.MissingParameterException;
+import org.xero1425.misc.PIDCtrl;
+import org.xero1425.misc.XeroPath;
+import org.xero1425.misc.XeroPathSpatialIndex;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+
+/// \file
+
+/// \brief This class is the control law for the TankDrivePurePursuitPathAction.
+/// Each robot loop the point on the path closest to the robot is found, the look ahead point is found the
+/// look ahead distance further along the path, and the robot drives the arc to the look ahead point.  The
+/// closest point, the look ahead point, and the wheel velocities are kept in fields of this class and
+/// computed with plain arithmetic, so following a path does not create any objects in the robot loop.
+public class TankDrivePurePursuitCtrl implements ITankDrivePathController {
+    private double look_ahead_distance_;
+    private double max_accel_ ;
+    private XeroPath path_;
+    private XeroPathSpatialIndex index_ ;
+    private int closest_ ;
+    private double[] closest_data_ ;
+    private double[] look_data_ ;
+    private Pose2d start_pose_ ;
+
+    // The point on the path closest to the robot, and the fraction of the way along the closest segment
+    private double closest_x_ ;
+    private double closest_y_ ;
+    private double closest_pcnt_ ;
+
+    // The point on the path the look ahead distance past the closest point
+    private double look_x_ ;
+    private double look_y_ ;
+    private double look_heading_ ;
+    private boolean look_at_end_ ;
+
+    // The curvature of the arc to the look ahead point
+    private double curvature_ ;
+
+    // The target left and right velocities computed from the curvature
+    private double left_vel_ ;
+    private double right_vel_ ;
+    private double current_vel_ ;
+
+    // The left and right power computed this robot loop
+    private double left_out_ ;
+    private double right_out_ ;
+
+    private PIDCtrl left_pid_;
+    private PIDCtrl right_pid_;
+
+    // The data to extract from a path
+    private static final int MainRobot = 0;
+
+    /// \brief create the control law, reading the parameters from the settings for a subsystem
+    /// \param settings the settings supplier
+    /// \param subsystem the name of the tankdrive subsystem
+    public TankDrivePurePursuitCtrl(ISettingsSupplier settings, String subsystem)
+            throws MissingParameterException, BadParameterTypeException {
+        look_ahead_distance_ = settings.get("subsystems:" + subsystem + ":tankdrive:purepursuit:lookahead").getDouble() ;
+        max_accel_ = settings.get("subsystems:" + subsystem + ":tankdrive:purepursuit:maxaccel").getDouble() ;
+
+        closest_data_ = new double[XeroPathSpatialIndex.OutputSize] ;
+        look_data_ = new double[XeroPath.Columns] ;
+
+        left_pid_ = new PIDCtrl(settings, "tankdrive:purepursuit:left", false) ;
+        right_pid_ = new PIDCtrl(settings, "tankdrive:purepursuit:right", false) ;
+    }
+
+    /// \brief start following a path
+    /// \param path the path to follow
+    /// \param time the current time in seconds
+    /// \param state the measured state of the drivebase
+    @Override
+    public void start(XeroPath path, double time, ITankDriveState state) {
+        path_ = path ;
+        index_ = path.getSpatialIndex(MainRobot) ;
+        closest_ = 0 ;
+        look_at_end_ = false ;
+        start_pose_ = new Pose2d(path.getX(MainRobot, 0), path.getY(MainRobot, 0), Rotation2d.fromDegrees(path.getHeading(MainRobot, 0))) ;
+    }
+
+    /// \brief compute the left and right power for one robot loop
+    /// \param time the current time in seconds
+    /// \param dt the time since the last robot loop in seconds
+    /// \param state the measured state of the drivebase
+    /// \returns true if the path is complete
+    @Override
+    public boolean run(double time, double dt, ITankDriveState state) {
+        //
+        // Get the robots current position
+        //
+        Pose2d current = state.getPose() ;
+        double rx = current.getX() ;
+        double ry = current.getY() ;
+        double ra = current.getRotation().getRadians() ;
+
+        //
+        // Find the point on the path that is closest in distance to the robots
+        // current position
+        //
+        findClosestPoint(rx, ry) ;
+
+        //
+        // Find point at the look ahead distance from here to the robot
+        //
+        findLookAheadPoint() ;
+
+        if (look_at_end_)
+            return true ;
+
+        //
+        // Find the curved arc we need to drive from the current
+        // position to the look ahead position
+        //
+        curvature_ = findDrivingCurvature(rx, ry, ra, look_x_, look_y_) ;
+
+        current_vel_ = current_vel_ + max_accel_ * dt ;
+
+        double width = state.getWidth() / state.getScrub() ;
+
+        //
+        // Compute the left and right drive velocities
+        //
+        inverseKinematics(curvature_, current_vel_, width) ;
+
+        left_out_ = left_pid_.getOutput(left_vel_, state.getLeftVelocity(), dt) ;
+        right_out_ = right_pid_.getOutput(right_vel_, state.getRightVelocity(), dt);
+        return false ;
+    }
+
+    /// \brief returns the pose of the robot at the start of the path
+    /// \returns the pose of the robot at the start of the path
+    @Override
+    public Pose2d getStartPose() {
+        return start_pose_ ;
+    }
+
+    /// \brief returns the power for the left side of the drivebase
+    /// \returns the power for the left side of the drivebase
+    @Override
+    public double getLeftPower() {
+        return left_out_ ;
+    }
+
+    /// \brief returns the power for the right side of the drivebase
+    /// \returns the power for the right side of the drivebase
+    @Override
+    public double getRightPower() {
+        return right_out_ ;
+    }
+
+    /// \brief returns the x position of the look ahead point
+    /// \returns the x position of the look ahead point
+    public double getLookAheadX() {
+        return look_x_ ;
+    }
+
+    /// \brief returns the y position of the look ahead point
+    /// \returns the y position of the look ahead point
+    public double getLookAheadY() {
+        return look_y_ ;
+    }
+
+    /// \brief returns the heading of the path at the look ahead point
+    /// \returns the heading of the path at the look ahead point
+    public double getLookAheadHeading() {
+        return look_heading_ ;
+    }
+
+    /// \brief returns the curvature of the arc to the look ahead point
+    /// \returns the curvature of the arc to the look ahead point
+    public double getCurvature() {
+        return curvature_ ;
+    }
+
+    /// \brief returns the target velocity of the robot
+    /// \returns the target velocity of the robot
+    public double getVelocity() {
+        return current_vel_ ;
+    }
+
+    /// \brief returns the target velocity of the left side of the robot
+    /// \returns the target velocity of the left side of the robot
+    public double getLeftVelocity() {
+        return left_vel_ ;
+    }
+
+    /// \brief returns the target velocity of the right side of the robot
+    /// \returns the target velocity of the right side of the robot
+    public double getRightVelocity() {
+        return right_vel_ ;
+    }
+
+    //
+    // Compute the left and right velocities for the curvature given, storing them in left_vel_ and right_vel_
+    //
+    private void inverseKinematics(double curvature, double velocity, double width) {
+        left_vel_ = velocity * (2 + curvature * width) / 2.0 ;
+        right_vel_ = velocity * (2 - curvature * width) / 2.0 ;
+    }
+
+    private double findDrivingCurvature(double rx, double ry, double ang, double tx, double ty) {
+        double a, b, c ;
+
+        a = -Math.tan(ang) ;
+        b = 1.0 ;
+        c = Math.tan(ang) * rx - ry ;
+
+        double x = Math.abs(a * tx + b * ty + c) / Math.sqrt(a * a + b * b) ;
+
+        double z = Math.sin(ang) * (tx - rx) - Math.cos(ang) * (ty - ry) ;
+        double curv = 2 * x / (look_ahead_distance_ * look_ahead_distance_)  * Math.signum(z) ;
+
+        return curv ;
+    }
+
+    //
+    // Find the point on the path closest to the robot, storing it in the closest_ fields.  The robot only
+    // moves forward along the path, so segments before the closest segment found in the last robot loop
+    // are not considered.
+    //
+    private void findClosestPoint(double x, double y) {
+        closest_ = index_.closest(x, y, closest_, closest_data_) ;
+        closest_x_ = closest_data_[XeroPathSpatialIndex.ClosestX] ;
+        closest_y_ = closest_data_[XeroPathSpatialIndex.ClosestY] ;
+        closest_pcnt_ = closest_data_[XeroPathSpatialIndex.Fraction] ;
+    }
+
+    //
+    // Find the point on the path the look ahead distance past the closest point, measured along the path,
+    // storing it in the look_ fields
+    //
+    private void findLookAheadPoint() {
+        double seglen = path_.getArcLength(MainRobot, closest_ + 1) - path_.getArcLength(MainRobot, closest_) ;
+        double target = path_.getArcLength(MainRobot, closest_) + closest_pcnt_ * seglen + look_ahead_distance_ ;
+
+        path_.pointAtDistance(MainRobot, target, look_data_) ;
+        look_x_ = look_data_[XeroPath.X] ;
+        look_y_ = look_data_[XeroPath.Y] ;
+        look_heading_ = look_data_[XeroPath.Heading] ;
+        look_at_end_ = false ;
+
+        if (target >= path_.getLength(MainRobot))
+        {
+            //
+            // The look ahead point exceeds the path, so it is the end of the path.  The path is done
+            // when the closest point reaches the end.
+            //
+            look_at_end_ = Math.hypot(look_x_ - closest_x_, look_y_ - closest_y_) < 0.1 ;
+        }
+    }
+}
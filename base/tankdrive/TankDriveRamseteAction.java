@@ -3,29 +3,18 @@ package org.xero1425.base.tankdrive;
 import org.xero1425.base.Subsystem.DisplayType;
 import org.xero1425.misc.BadParameterTypeException;
 import org.xero1425.misc.MissingParameterException;
-import org.xero1425.misc.PIDCtrl;
-import org.xero1425.misc.XeroMath;
-import org.xero1425.misc.XeroPathSegment;
-
-import edu.wpi.first.math.controller.RamseteController;
-import edu.wpi.first.math.geometry.Pose2d;
-import edu.wpi.first.math.geometry.Rotation2d;
-import edu.wpi.first.math.geometry.Twist2d;
-import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import org.xero1425.misc.XeroPath;
 
 /// \file
 
 /// \brief This class implements an action to do path following for the Xero1425 framework tankdrive
 ///
 /// The controller used to perform the path following is the RamseteController from the WPILibrary.
+/// The path is sampled at the time since the action started, so a long robot loop does not put the
+/// robot behind the path.  The control law is in TankDriveRamseteCtrl.
 public class TankDriveRamseteAction extends TankDrivePathAction {
-    private RamseteController ctrl_;
-    private int index_ ;
-    private PIDCtrl left_pid_ ;
-    private PIDCtrl right_pid_ ;
-
-    private final int MainRobot = 0;
-    private final double inchesToMeters = 0.0254 ;
+    // The control law that computes the left and right power to follow the path
+    private TankDriveRamseteCtrl ctrl_ ;
 
     /// \brief create the new action to follow a path using the Ramsete controller from the WPI Library
     /// \param sub the tankdrive subsystem
@@ -38,10 +27,7 @@ public class TankDriveRamseteAction extends TankDrivePathAction {
         super(sub, pathname);
 
         // reverse_ = reverse ;
-        ctrl_ = new RamseteController(b, zeta);
-        
-        left_pid_ = new PIDCtrl(sub.getRobot().getSettingsSupplier(), "subsystems:" + sub.getName() + ":ramsete:left", false) ;
-        right_pid_ = new PIDCtrl(sub.getRobot().getSettingsSupplier(), "subsystems:" + sub.getName() + ":ramsete:right", false) ;
+        ctrl_ = new TankDriveRamseteCtrl(sub.getRobot().getSettingsSupplier(), sub.getName(), b, zeta, sub.getRobot().getPeriod()) ;
     }
 
     /// \brief create the new action to follow a path using the Ramsete controller from the WPI Library
@@ -60,11 +46,9 @@ public class TankDriveRamseteAction extends TankDrivePathAction {
     @Override
     public void start() throws Exception {
         super.start() ;
-        index_ = 0 ;
 
-        XeroPathSegment seg = getPath().getSegment(MainRobot, 0) ;
-        Pose2d start = new Pose2d(seg.getX(), seg.getY(), Rotation2d.fromDegrees(seg.getHeading())) ;
-        getSubsystem().setPose(start);
+        ctrl_.start(getPath(), getSubsystem().getRobot().getTime(), getSubsystem()) ;
+        getSubsystem().setPose(ctrl_.getStartPose());
         
         getSubsystem().setRecording(true);
     }
@@ -73,55 +57,26 @@ public class TankDriveRamseteAction extends TankDrivePathAction {
     /// per the defined alborithm.
     @Override
     public void run() {
+        if (!ctrl_.isFollowing())
+            return ;
 
-        if (index_ < getPath().getSize())
+        TankDriveSubsystem sub = getSubsystem() ;
+        if (!ctrl_.run(sub.getRobot().getTime(), sub.getRobot().getDeltaTime(), sub))
         {
-            // Current pose in inches
-            Pose2d currentPose = inchesToMeters(getSubsystem().getPose()) ;
-
-            // Current segment in inches
-            XeroPathSegment seg = getPath().getSegment(MainRobot, index_) ;
-
             // Publish the desired path time and pose for external tools
-            getSubsystem().putDashboard("db-path-t", DisplayType.Verbose, getSubsystem().getRobot().getTime()) ;
-            getSubsystem().putDashboard("db-path-x", DisplayType.Verbose, seg.getX()) ;
-            getSubsystem().putDashboard("db-path-y", DisplayType.Verbose, seg.getY()) ;
-            getSubsystem().putDashboard("db-path-a", DisplayType.Verbose, seg.getHeading()) ;
-
-            // Desired pose in meters
-            Pose2d desiredPose = inchesToMeters(new Pose2d(seg.getX(), seg.getY(), Rotation2d.fromDegrees(seg.getHeading()))) ;
-
-            // The desired linear velocity in meters
-            double linearVelocityRefMeters = inchesToMeters(seg.getVelocity()) ;
-
-            // The desired angular velocity in radians per second
-            double angularVelocityRefRadiansPerSecond = 0.0 ;
-
-            if (index_ != 0) {
-                XeroPathSegment prev = getPath().getSegment(MainRobot, index_ - 1) ;
-
-                // Compute the angular velocity in radians per second
-                angularVelocityRefRadiansPerSecond = XeroMath.normalizeAngleDegrees(seg.getHeading() - prev.getHeading()) / getSubsystem().getRobot().getPeriod() / 180.0 * Math.PI ;
-            }
-
-            // Robot speed in meters per second
-            ChassisSpeeds speeds = ctrl_.calculate(currentPose, desiredPose, linearVelocityRefMeters, angularVelocityRefRadiansPerSecond) ;
-
-            // Robot speed as a Twist2d in inches per second
-            Twist2d twist = new Twist2d(metersToInches(speeds.vxMetersPerSecond), 0.0, speeds.omegaRadiansPerSecond) ;
+            double[] sample = ctrl_.getSample() ;
+            sub.putDashboard("db-path-t", DisplayType.Verbose, sub.getRobot().getTime()) ;
+            sub.putDashboard("db-path-x", DisplayType.Verbose, sample[XeroPath.X]) ;
+            sub.putDashboard("db-path-y", DisplayType.Verbose, sample[XeroPath.Y]) ;
+            sub.putDashboard("db-path-a", DisplayType.Verbose, sample[XeroPath.Heading]) ;
 
-            // Left and right speed in inches per second
-            TankDriveVelocities vel = getSubsystem().inverseKinematics(twist) ;
-
-            setVelocity(vel.getLeft(), vel.getRight()) ;
-            index_++ ;
+            sub.setPower(ctrl_.getLeftPower(), ctrl_.getRightPower()) ;
         }
-
-        if (index_ == getPath().getSize())
+        else
         {
-            getSubsystem().setPower(0.0, 0.0) ;
+            sub.setPower(0.0, 0.0) ;
             setDone() ;
-            getSubsystem().setRecording(false);
+            sub.setRecording(false);
         }
     }
 
@@ -129,7 +84,7 @@ public class TankDriveRamseteAction extends TankDrivePathAction {
     @Override
     public void cancel() {
         super.cancel() ;
-        index_ = getPath().getSize() ;
+        ctrl_.cancel() ;
         getSubsystem().setPower(0.0, 0.0) ;
     }
     
@@ -140,29 +95,4 @@ public class TankDriveRamseteAction extends TankDrivePathAction {
         String ret = prefix(indent) + "TankDriveRamseteAction-" + getPathName() ;
         return ret ;
     }
-
-    //
-    // Set the left and right wheel velocities in inches per second
-    //
-    private void setVelocity(double leftvel, double rightvel) {
-        double left = left_pid_.getOutput(leftvel, getSubsystem().getLeftVelocity(), getSubsystem().getRobot().getDeltaTime()) ;
-        double right = right_pid_.getOutput(rightvel, getSubsystem().getLeftVelocity(), getSubsystem().getRobot().getDeltaTime()) ;
-        getSubsystem().setPower(left, right) ;
-    }
-
-    private double inchesToMeters(double v) {
-        return v * inchesToMeters ;
-    }
-
-    private Pose2d inchesToMeters(Pose2d input) {
-
-        double x = input.getX() * inchesToMeters ;
-        double y = input.getY() * inchesToMeters ;
-
-        return new Pose2d(x, y, input.getRotation()) ;
-    }
-
-    private double metersToInches(double v) {
-        return v / inchesToMeters ;
-    }
 }
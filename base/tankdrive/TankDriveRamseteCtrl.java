@@ -0,0 +1,180 @@
+package org.xero1425.base.tankdrive;
+
+import org.xero1425.misc.BadParameterTypeException;
+import org.xero1425.misc.ISettingsSupplier;
+import org.xero1425.misc.MissingParameterException;
+import org.xero1425.misc.PIDCtrl;
+import org.xero1425.misc.XeroMath;
+import org.xero1425.misc.XeroPath;
+
+import edu.wpi.first.math.controller.RamseteController;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Twist2d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+
+/// \file
+
+/// \brief This class is the control law for the TankDriveRamseteAction.
+/// The RamseteController from the WPILibrary computes the robot velocity from the path sampled at the time
+/// since the path started, and a PIDCtrl for each side turns the wheel velocities into motor power.
+public class TankDriveRamseteCtrl implements ITankDrivePathController {
+    private RamseteController ctrl_;
+    private XeroPath path_ ;
+    private double start_time_ ;
+    private double period_ ;
+    private boolean following_ ;
+    private Pose2d start_pose_ ;
+    private double[] sample_ ;
+    private double[] prev_sample_ ;
+    private PIDCtrl left_pid_ ;
+    private PIDCtrl right_pid_ ;
+    private double left_out_ ;
+    private double right_out_ ;
+
+    private static final int MainRobot = 0;
+    private static final double inchesToMeters = 0.0254 ;
+
+    /// \brief create the control law, reading the velocity PID controllers from the settings for a subsystem
+    /// \param settings the settings supplier
+    /// \param subsystem the name of the tankdrive subsystem
+    /// \param b the b value for the ramsete algorithm
+    /// \param zeta the zeta value for the ramsete algorithm
+    /// \param period the length of a robot loop in seconds
+    public TankDriveRamseteCtrl(ISettingsSupplier settings, String subsystem, double b, double zeta, double period)
+            throws MissingParameterException, BadParameterTypeException {
+        ctrl_ = new RamseteController(b, zeta);
+        period_ = period ;
+        sample_ = new double[XeroPath.Columns] ;
+        prev_sample_ = new double[XeroPath.Columns] ;
+
+        left_pid_ = new PIDCtrl(settings, "subsystems:" + subsystem + ":ramsete:left", false) ;
+        right_pid_ = new PIDCtrl(settings, "subsystems:" + subsystem + ":ramsete:right", false) ;
+    }
+
+    /// \brief start following a path
+    /// \param path the path to follow
+    /// \param time the current time in seconds
+    /// \param state the measured state of the drivebase
+    @Override
+    public void start(XeroPath path, double time, ITankDriveState state) {
+        path_ = path ;
+        start_time_ = time ;
+        following_ = true ;
+        start_pose_ = new Pose2d(path.getX(MainRobot, 0), path.getY(MainRobot, 0), Rotation2d.fromDegrees(path.getHeading(MainRobot, 0))) ;
+    }
+
+    /// \brief compute the left and right power for one robot loop
+    /// \param time the current time in seconds
+    /// \param dt the time since the last robot loop in seconds
+    /// \param state the measured state of the drivebase
+    /// \returns true if the path is complete
+    @Override
+    public boolean run(double time, double dt, ITankDriveState state) {
+        XeroPath path = path_ ;
+        double elapsed = time - start_time_ ;
+
+        if (following_ && elapsed < path.getDuration())
+        {
+            // Current pose in inches
+            Pose2d currentPose = inchesToMeters(state.getPose()) ;
+
+            // Desired point on the path at this time, in inches
+            path.sampleAt(MainRobot, elapsed, sample_) ;
+            double x = sample_[XeroPath.X] ;
+            double y = sample_[XeroPath.Y] ;
+            double heading = sample_[XeroPath.Heading] ;
+
+            // Desired pose in meters
+            Pose2d desiredPose = inchesToMeters(new Pose2d(x, y, Rotation2d.fromDegrees(heading))) ;
+
+            // The desired linear velocity in meters
+            double linearVelocityRefMeters = inchesToMeters(sample_[XeroPath.Velocity]) ;
+
+            // The desired angular velocity in radians per second, from the change in heading over one robot period
+            double angularVelocityRefRadiansPerSecond = 0.0 ;
+
+            if (elapsed > 0.0) {
+                double step = Math.min(period_, elapsed) ;
+                path.sampleAt(MainRobot, elapsed - step, prev_sample_) ;
+
+                // Compute the angular velocity in radians per second
+                angularVelocityRefRadiansPerSecond = XeroMath.normalizeAngleDegrees(heading - prev_sample_[XeroPath.Heading]) / step / 180.0 * Math.PI ;
+            }
+
+            // Robot speed in meters per second
+            ChassisSpeeds speeds = ctrl_.calculate(currentPose, desiredPose, linearVelocityRefMeters, angularVelocityRefRadiansPerSecond) ;
+
+            // Robot speed as a Twist2d in inches per second
+            Twist2d twist = new Twist2d(metersToInches(speeds.vxMetersPerSecond), 0.0, speeds.omegaRadiansPerSecond) ;
+
+            // Left and right speed in inches per second
+            TankDriveVelocities vel = TankDriveSubsystem.inverseKinematics(twist, state.getWidth(), state.getScrub()) ;
+
+            left_out_ = left_pid_.getOutput(vel.getLeft(), state.getLeftVelocity(), dt) ;
+            right_out_ = right_pid_.getOutput(vel.getRight(), state.getRightVelocity(), dt) ;
+            return false ;
+        }
+
+        following_ = false ;
+        left_out_ = 0.0 ;
+        right_out_ = 0.0 ;
+        return true ;
+    }
+
+    /// \brief stop following the path
+    public void cancel() {
+        following_ = false ;
+        left_out_ = 0.0 ;
+        right_out_ = 0.0 ;
+    }
+
+    /// \brief returns true while the path is being followed
+    /// \returns true while the path is being followed
+    public boolean isFollowing() {
+        return following_ ;
+    }
+
+    /// \brief returns the path sampled this robot loop, indexed by path column
+    /// \returns the path sampled this robot loop
+    public double[] getSample() {
+        return sample_ ;
+    }
+
+    /// \brief returns the pose of the robot at the start of the path
+    /// \returns the pose of the robot at the start of the path
+    @Override
+    public Pose2d getStartPose() {
+        return start_pose_ ;
+    }
+
+    /// \brief returns the power for the left side of the drivebase
+    /// \returns the power for the left side of the drivebase
+    @Override
+    public double getLeftPower() {
+        return left_out_ ;
+    }
+
+    /// \brief returns the power for the right side of the drivebase
+    /// \returns the power for the right side of the drivebase
+    @Override
+    public double getRightPower() {
+        return right_out_ ;
+    }
+
+    private double inchesToMeters(double v) {
+        return v * inchesToMeters ;
+    }
+
+    private Pose2d inchesToMeters(Pose2d input) {
+
+        double x = input.getX() * inchesToMeters ;
+        double y = input.getY() * inchesToMeters ;
+
+        return new Pose2d(x, y, input.getRotation()) ;
+    }
+
+    private double metersToInches(double v) {
+        return v / inchesToMeters ;
+    }
+}
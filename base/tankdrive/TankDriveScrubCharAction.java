@@ -62,13 +62,12 @@ public class TankDriveScrubCharAction extends TankDriveAction {
             logger.add(", scrub", scrub) ;
             logger.endMessage();
         } else {
-            final Double[] data = new Double[7];
-            data[0] = getSubsystem().getRobot().getTime() - start_;
-            data[1] = getSubsystem().getAngle();
-            data[4] = (double) getSubsystem().getLeftTick();
-            data[5] = (double) getSubsystem().getRightTick();
-            data[6] = power_;
-            getSubsystem().addPlotData(plot_id_, data);
+            plot_data_[0] = getSubsystem().getRobot().getTime() - start_;
+            plot_data_[1] = getSubsystem().getAngle();
+            plot_data_[2] = (double) getSubsystem().getLeftTick();
+            plot_data_[3] = (double) getSubsystem().getRightTick();
+            plot_data_[4] = power_;
+            getSubsystem().addPlotData(plot_id_, plot_data_);
         }
     }
 
@@ -97,4 +96,5 @@ public class TankDriveScrubCharAction extends TankDriveAction {
     private final double total_;
     private final int plot_id_;
     private static String [] plot_columns_ = { "time", "angle", "lticks", "rticks", "power" } ;
+    private double [] plot_data_ = new double[plot_columns_.length] ;
 } ;
\ No newline at end of file
@@ -25,7 +25,7 @@ import org.xero1425.misc.Speedometer;
 
 /// \brief The tankdrive subsystem for driving a robot using a tank drive type drivebase.
 /// 
-public class TankDriveSubsystem extends Subsystem {
+public class TankDriveSubsystem extends Subsystem implements ITankDriveState {
 
     private PositionTracker tracker_ ;
     private double left_power_ ;
@@ -391,10 +391,19 @@ public class TankDriveSubsystem extends Subsystem {
     /// \param velocity the desired velocity of the robot
     /// \returns the inverse kinematics for the robot
     public TankDriveVelocities inverseKinematics(Twist2d velocity) {
+        return inverseKinematics(velocity, getWidth(), getScrub()) ;
+    }
+
+    /// \brief This method return reverse kinematics for a drivebase with the width and scrub given
+    /// \param velocity the desired velocity of the robot
+    /// \param width the track width of the robot
+    /// \param scrub the scrub value for the robot
+    /// \returns the inverse kinematics for the robot
+    public static TankDriveVelocities inverseKinematics(Twist2d velocity, double width, double scrub) {
         if (Math.abs(velocity.dtheta) < kEpsilon) {
             return new TankDriveVelocities(velocity.dx, velocity.dx);
         }
-        double delta_v = getWidth() * velocity.dtheta / (2 * getScrub());
+        double delta_v = width * velocity.dtheta / (2 * scrub);
         return new TankDriveVelocities(velocity.dx - delta_v, velocity.dx + delta_v);
     }
 
@@ -0,0 +1,40 @@
+package org.xero1425.misc ;
+
+/// \file
+
+/// \brief This class is a handle to a single double setting.
+public class DoubleSetting extends SettingHandle
+{
+    //
+    // The value of the setting, volatile so a new value from another thread is seen by the robot loop
+    //
+    private volatile double value_ ;
+
+    /// \brief create a new handle with the value given
+    /// \param name the fully qualified name of the setting
+    /// \param value the value of the setting
+    public DoubleSetting(String name, double value) {
+        super(name) ;
+        value_ = value ;
+    }
+
+    /// \brief create a new handle from a settings value
+    /// \param name the fully qualified name of the setting
+    /// \param v the value of the setting
+    /// \exception throws BadParameterTypeException if the value is not a double
+    public DoubleSetting(String name, SettingsValue v) throws BadParameterTypeException {
+        super(name) ;
+        value_ = v.getDouble() ;
+    }
+
+    /// \brief returns the value of the setting
+    /// \returns the value of the setting
+    public double get() {
+        return value_ ;
+    }
+
+    @Override
+    void update(SettingsValue v) throws BadParameterTypeException {
+        value_ = v.getDouble() ;
+    }
+}
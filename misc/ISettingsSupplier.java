@@ -40,4 +40,35 @@ public interface ISettingsSupplier {
     /// \param path the name of the key to query for children
     /// \returns a list of keys that are chidren of the key given    
     List<String> getAllKeys(String path) ;
+
+    /// \brief Return a handle to a double setting.  The setting is looked up once, and the handle
+    /// reads the value with no lookup.  A supplier that can change its settings points the handle at
+    /// the new value.
+    /// \exception throws MissingParameterException if the name does not map to an entry in the JSON file
+    /// \exception throws BadParameterTypeException if the setting is not a double
+    /// \param name the name of the setting
+    /// \returns a handle to the setting
+    default DoubleSetting getDoubleSetting(String name) throws MissingParameterException, BadParameterTypeException {
+        return new DoubleSetting(name, get(name)) ;
+    }
+
+    /// \brief Return a handle to an integer setting.  The setting is looked up once, and the handle
+    /// reads the value with no lookup.
+    /// \exception throws MissingParameterException if the name does not map to an entry in the JSON file
+    /// \exception throws BadParameterTypeException if the setting is not an integer
+    /// \param name the name of the setting
+    /// \returns a handle to the setting
+    default IntSetting getIntSetting(String name) throws MissingParameterException, BadParameterTypeException {
+        return new IntSetting(name, get(name)) ;
+    }
+
+    /// \brief Return a handle to a boolean setting.  The setting is looked up once, and the handle
+    /// reads the value with no lookup.
+    /// \exception throws MissingParameterException if the name does not map to an entry in the JSON file
+    /// \exception throws BadParameterTypeException if the setting is not a boolean
+    /// \param name the name of the setting
+    /// \returns a handle to the setting
+    default BooleanSetting getBooleanSetting(String name) throws MissingParameterException, BadParameterTypeException {
+        return new BooleanSetting(name, get(name)) ;
+    }
 }
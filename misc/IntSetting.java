@@ -0,0 +1,40 @@
+package org.xero1425.misc ;
+
+/// \file
+
+/// \brief This class is a handle to a single integer setting.
+public class IntSetting extends SettingHandle
+{
+    //
+    // The value of the setting, volatile so a new value from another thread is seen by the robot loop
+    //
+    private volatile int value_ ;
+
+    /// \brief create a new handle with the value given
+    /// \param name the fully qualified name of the setting
+    /// \param value the value of the setting
+    public IntSetting(String name, int value) {
+        super(name) ;
+        value_ = value ;
+    }
+
+    /// \brief create a new handle from a settings value
+    /// \param name the fully qualified name of the setting
+    /// \param v the value of the setting
+    /// \exception throws BadParameterTypeException if the value is not an integer
+    public IntSetting(String name, SettingsValue v) throws BadParameterTypeException {
+        super(name) ;
+        value_ = v.getInteger() ;
+    }
+
+    /// \brief returns the value of the setting
+    /// \returns the value of the setting
+    public int get() {
+        return value_ ;
+    }
+
+    @Override
+    void update(SettingsValue v) throws BadParameterTypeException {
+        value_ = v.getInteger() ;
+    }
+}
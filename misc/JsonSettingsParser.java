@@ -1,11 +1,14 @@
 package org.xero1425.misc;
 
+import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
 import org.json.simple.JSONObject;
 import org.json.simple.JSONValue;
 
@@ -27,16 +30,44 @@ import org.json.simple.JSONValue;
 /// Then the settings name <em>subsystems:tankdrive:width</em> would reference the value 3.0.  Values can be conditional
 /// based on defines. See the method addDefine() for more information about this capability.
 ///
+/// When the file is read, it is flattened into a SettingsSnapshot that maps every fully qualified
+/// name to its value with the defines already applied, so looking up a setting is a single hash probe.
+/// Handles returned by getDoubleSetting(), getIntSetting(), and getBooleanSetting() are kept so they can
+/// be pointed at the new values whenever the snapshot is rebuilt.
+///
+/// The settings file can be watched for changes with startWatching().  When the file changes, a background
+/// thread parses it into a new snapshot, and the robot loop installs the new snapshot at the start of the
+/// next loop by calling applyPendingChanges().  Installing a snapshot is a single volatile write, so reading
+/// settings never takes a lock, and the handles see all of the new values at once.
+///
+/// If an artifact file is given with setArtifactFile(), the snapshot is also saved in the binary form written
+/// by SettingsArtifact.  The next time the same settings file is read with the same defines, the snapshot is
+/// loaded from the artifact and the JSON text is not parsed.  The JSON text is only parsed later if a define
+/// is added after the file is read.
+///
 public class JsonSettingsParser implements ISettingsSupplier {
     private MessageLogger logger_ ;
     private List<String> defines_ ;
     private JSONObject contents_ ;
+    private volatile SettingsSnapshot snapshot_ ;
+    private AtomicReference<Pending> pending_ ;
+    private String filename_ ;
+    private String artifact_ ;
+    private Thread watcher_ ;
+    private Map<String, DoubleSetting> doubles_ ;
+    private Map<String, IntSetting> ints_ ;
+    private Map<String, BooleanSetting> booleans_ ;
 
     /// \brief Creates a new JsonSettings parser
     /// \param logger message logger for logging messages while reading the JSON settings file
     public JsonSettingsParser(MessageLogger logger) {
         logger_ = logger ;
         defines_ = new ArrayList<String>() ;
+        snapshot_ = new SettingsSnapshot(new HashMap<String, SettingsValue>(), new HashMap<String, List<String>>()) ;
+        doubles_ = new HashMap<String, DoubleSetting>() ;
+        ints_ = new HashMap<String, IntSetting>() ;
+        booleans_ = new HashMap<String, BooleanSetting>() ;
+        pending_ = new AtomicReference<Pending>(null) ;
     }
 
     /// \brief add a define to the reading process
@@ -59,9 +90,32 @@ public class JsonSettingsParser implements ISettingsSupplier {
     /// COMPETITION depending on the define that is set.
     ///
     /// \param name the name of the define to add
-    public void addDefine(String name) {
-        if (!defines_.contains(name))
+    public synchronized void addDefine(String name) {
+        if (!defines_.contains(name)) {
             defines_.add(name) ;
+
+            //
+            // Settings loaded from an artifact have not been parsed, so parse them now
+            //
+            if (contents_ == null && filename_ != null)
+                contents_ = parseFile(filename_) ;
+
+            if (contents_ != null)
+                setSnapshot(SettingsSnapshot.fromJson(contents_, defines_)) ;
+        }
+    }
+
+    /// \brief returns the index of all settings read from the file
+    /// \returns the index of all settings read from the file
+    public SettingsSnapshot getSnapshot() {
+        return snapshot_ ;
+    }
+
+    /// \brief set the file that holds the precompiled form of the settings.  This must be called
+    /// before readFile().
+    /// \param filename the name of the artifact file, or null to always parse the settings file
+    public void setArtifactFile(String filename) {
+        artifact_ = filename ;
     }
 
     /// \brief read a json settings file
@@ -75,6 +129,166 @@ public class JsonSettingsParser implements ISettingsSupplier {
         logger_.add("reading JSON robots setting file ").addQuoted(filename) ;
         logger_.endMessage();        
 
+        byte[] encoded = readBytes(filename) ;
+        if (encoded == null)
+            return false ;
+
+        List<String> defines ;
+        synchronized(this) {
+            defines = new ArrayList<String>(defines_) ;
+        }
+
+        long hash = SettingsArtifact.hash(encoded) ;
+        if (artifact_ != null) {
+            SettingsSnapshot snapshot = SettingsArtifact.read(artifact_, hash, defines) ;
+            if (snapshot != null) {
+                logger_.startMessage(MessageType.Info) ;
+                logger_.add("using precompiled settings file ").addQuoted(artifact_).endMessage() ;
+
+                synchronized(this) {
+                    filename_ = filename ;
+                    contents_ = null ;
+                    setSnapshot(snapshot) ;
+                }
+                return true ;
+            }
+        }
+
+        JSONObject obj = parseText(filename, encoded) ;
+        if (obj == null)
+            return false ;
+
+        SettingsSnapshot snapshot = SettingsSnapshot.fromJson(obj, defines) ;
+        synchronized(this) {
+            filename_ = filename ;
+            contents_ = obj ;
+            setSnapshot(snapshot) ;
+        }
+
+        if (artifact_ != null)
+            writeArtifact(artifact_, hash, defines, snapshot) ;
+
+        return true;        
+    }
+
+    /// \brief start a background thread that reads the settings file again whenever it changes.  The
+    /// new settings are not used until applyPendingChanges() is called.
+    /// \param interval the time between checks of the settings file in milliseconds
+    public synchronized void startWatching(long interval) {
+        if (watcher_ != null || filename_ == null)
+            return ;
+
+        final String filename = filename_ ;
+        watcher_ = new Thread(() -> watch(filename, interval), "xero-settings-watcher") ;
+        watcher_.setDaemon(true) ;
+        watcher_.start() ;
+    }
+
+    /// \brief install the settings read by the watcher thread, if the settings file has changed.  This is
+    /// called by the robot at the start of each robot loop so all settings change between loops.
+    /// \returns true if new settings were installed
+    public boolean applyPendingChanges() {
+        if (pending_.get() == null)
+            return false ;
+
+        Pending pending = pending_.getAndSet(null) ;
+        if (pending == null)
+            return false ;
+
+        SettingsSnapshot old ;
+        synchronized(this) {
+            old = snapshot_ ;
+            contents_ = pending.contents_ ;
+            setSnapshot(pending.snapshot_) ;
+        }
+
+        int changed = 0 ;
+        for(String name : pending.snapshot_.getNames()) {
+            if (!pending.snapshot_.get(name).equals(old.get(name)))
+                changed++ ;
+        }
+        for(String name : old.getNames()) {
+            if (pending.snapshot_.get(name) == null)
+                changed++ ;
+        }
+
+        logger_.startMessage(MessageType.Info) ;
+        logger_.add("settings file ").addQuoted(filename_).add(" reloaded") ;
+        logger_.add("changed", changed) ;
+        logger_.endMessage() ;
+
+        return true ;
+    }
+
+    //
+    // The body of the watcher thread
+    //
+    private void watch(String filename, long interval) {
+        File file = new File(filename) ;
+        long modified = file.lastModified() ;
+        long length = file.length() ;
+
+        while (true) {
+            try {
+                Thread.sleep(interval) ;
+            }
+            catch(InterruptedException ex) {
+                break ;
+            }
+
+            if (file.lastModified() == modified && file.length() == length)
+                continue ;
+
+            modified = file.lastModified() ;
+            length = file.length() ;
+
+            //
+            // A file in the middle of being copied usually fails to parse, and is read again once the
+            // copy finishes and the time or length changes again
+            //
+            JSONObject obj = parseFile(filename) ;
+            if (obj == null)
+                continue ;
+
+            List<String> defines ;
+            synchronized(this) {
+                defines = new ArrayList<String>(defines_) ;
+            }
+
+            pending_.set(new Pending(obj, SettingsSnapshot.fromJson(obj, defines))) ;
+        }
+    }
+
+    //
+    // Write the artifact on a background thread, the snapshot is immutable so it is safe to share
+    //
+    private void writeArtifact(String artifact, long hash, List<String> defines, SettingsSnapshot snapshot) {
+        Thread writer = new Thread(() -> {
+            try {
+                SettingsArtifact.write(artifact, hash, defines, snapshot) ;
+            }
+            catch(IOException ex) {
+                logger_.startMessage(MessageType.Warning) ;
+                logger_.add("cannot write precompiled settings file ").addQuoted(artifact).add(" - ") ;
+                logger_.add(ex.getMessage()).endMessage() ;
+            }
+        }, "xero-settings-artifact") ;
+        writer.setDaemon(true) ;
+        writer.start() ;
+    }
+
+    //
+    // Read and parse the settings file, returning null if it cannot be read
+    //
+    private JSONObject parseFile(String filename) {
+        byte[] encoded = readBytes(filename) ;
+        if (encoded == null)
+            return null ;
+
+        return parseText(filename, encoded) ;
+    }
+
+    private byte[] readBytes(String filename) {
         byte[] encoded;
         try {
             encoded = Files.readAllBytes(Paths.get(filename));
@@ -82,9 +296,13 @@ public class JsonSettingsParser implements ISettingsSupplier {
             logger_.startMessage(MessageType.Error);
             logger_.add("cannot read settings file ").addQuoted(filename).add(" - ");
             logger_.add(e.getMessage()).endMessage();
-            return false;
+            return null;
         }
 
+        return encoded ;
+    }
+
+    private JSONObject parseText(String filename, byte[] encoded) {
         String fulltext = new String(encoded);
 
         Object obj = JSONValue.parse(fulltext);
@@ -92,11 +310,10 @@ public class JsonSettingsParser implements ISettingsSupplier {
             logger_.startMessage(MessageType.Error);
             logger_.add("cannot read settings file ").addQuoted(filename).add(" - ");
             logger_.add("file does not contain a JSON object").endMessage();
-            return false;
+            return null;
         }
 
-        contents_ = (JSONObject) obj;
-        return true;        
+        return (JSONObject) obj;
     }
 
     /// \brief Return a SettingsValue given the settings name.
@@ -127,49 +344,7 @@ public class JsonSettingsParser implements ISettingsSupplier {
     /// \returns the SettingsValue object that for the setting with the given name, or null if it does not exist
     @Override
     public SettingsValue getOrNull(String name) {
-        String [] parts = name.split(":") ;
-        SettingsValue v = null ;
-
-        JSONObject current = findParent(parts) ;
-        if (current == null)
-            return null ;
-
-        Object value = current.get(parts[parts.length-1]) ;
-        if (value == null)
-            return null ;
-
-        if ((value instanceof JSONObject)) {
-            //
-            // This might be a conditional definiton based on a define
-            //
-            JSONObject condobj = (JSONObject)value ;
-            for(String define : defines_)
-            {
-                if (condobj.containsKey(define))
-                {
-                    value = condobj.get(define) ;
-                    break ;
-                }
-            }                
-        }
-
-        if ((value instanceof Double) == true) {
-            v = new SettingsValue((Double)value) ;
-        }
-        else if ((value instanceof Integer) == true) {
-            v = new SettingsValue((Integer)value) ;
-        }
-        else if ((value instanceof Long) == true) {
-            v = new SettingsValue((Long)value) ;
-        }
-        else if ((value instanceof Boolean) == true) {
-            v = new SettingsValue((Boolean)value) ;
-        }
-        else if ((value instanceof String) == true) {
-            v = new SettingsValue((String)value) ;
-        }
-
-        return v;
+        return snapshot_.get(name) ;
     }
 
     /// \brief For a given setting entry in the JSON file, return all children
@@ -191,44 +366,97 @@ public class JsonSettingsParser implements ISettingsSupplier {
     /// \returns a list of keys that are chidren of the key given
     @Override
     public List<String> getAllKeys(String path) {
-        String [] parts = path.split(":") ;
-        JSONObject parent = findParent(parts) ;
-
-        List<String> ret = new ArrayList<String>() ;
+        return snapshot_.getChildren(path) ;
+    }
 
-        if (parent == null)
-            return null ;
+    /// \brief Return a handle to a double setting.  Handles for the same name are shared, and are pointed
+    /// at the new value when the settings are rebuilt.
+    /// \exception throws MissingParameterException if the name does not map to an entry in the JSON file
+    /// \exception throws BadParameterTypeException if the setting is not a double
+    /// \param name the name of the setting
+    /// \returns a handle to the setting
+    @Override
+    public synchronized DoubleSetting getDoubleSetting(String name) throws MissingParameterException, BadParameterTypeException {
+        DoubleSetting ret = doubles_.get(name) ;
+        if (ret == null) {
+            ret = new DoubleSetting(name, get(name)) ;
+            doubles_.put(name, ret) ;
+        }
+        return ret ;
+    }
 
-        JSONObject obj = (JSONObject)parent.get(parts[parts.length - 1]) ;
-        if (obj != null) {
-            @SuppressWarnings("unchecked")
-            Set<String> keys = (Set<String>)obj.keySet() ;
-            if (keys != null) {
-                for(String key : keys)
-                    ret.add(key) ;
-            }
+    /// \brief Return a handle to an integer setting.  Handles for the same name are shared, and are pointed
+    /// at the new value when the settings are rebuilt.
+    /// \exception throws MissingParameterException if the name does not map to an entry in the JSON file
+    /// \exception throws BadParameterTypeException if the setting is not an integer
+    /// \param name the name of the setting
+    /// \returns a handle to the setting
+    @Override
+    public synchronized IntSetting getIntSetting(String name) throws MissingParameterException, BadParameterTypeException {
+        IntSetting ret = ints_.get(name) ;
+        if (ret == null) {
+            ret = new IntSetting(name, get(name)) ;
+            ints_.put(name, ret) ;
         }
+        return ret ;
+    }
 
+    /// \brief Return a handle to a boolean setting.  Handles for the same name are shared, and are pointed
+    /// at the new value when the settings are rebuilt.
+    /// \exception throws MissingParameterException if the name does not map to an entry in the JSON file
+    /// \exception throws BadParameterTypeException if the setting is not a boolean
+    /// \param name the name of the setting
+    /// \returns a handle to the setting
+    @Override
+    public synchronized BooleanSetting getBooleanSetting(String name) throws MissingParameterException, BadParameterTypeException {
+        BooleanSetting ret = booleans_.get(name) ;
+        if (ret == null) {
+            ret = new BooleanSetting(name, get(name)) ;
+            booleans_.put(name, ret) ;
+        }
         return ret ;
     }
 
-    private JSONObject findParent(String [] parts) {
-        JSONObject current = contents_ ;
-        int index = 0 ;
+    //
+    // Install a new snapshot and point all of the handles at the new values
+    //
+    private synchronized void setSnapshot(SettingsSnapshot snapshot) {
+        snapshot_ = snapshot ;
 
-        while (index < parts.length - 1)
-        {
-            Object obj = current.get(parts[index]) ;
-            if (obj == null)
-                return null ;
+        updateHandles(doubles_) ;
+        updateHandles(ints_) ;
+        updateHandles(booleans_) ;
+    }
 
-            if (!(obj instanceof JSONObject))
-                return null ;
+    private void updateHandles(Map<String, ? extends SettingHandle> handles) {
+        for(SettingHandle handle : handles.values()) {
+            SettingsValue v = snapshot_.get(handle.getName()) ;
+
+            try {
+                if (v == null)
+                    throw new MissingParameterException(handle.getName()) ;
+
+                handle.update(v) ;
+            }
+            catch(Exception ex) {
+                logger_.startMessage(MessageType.Warning) ;
+                logger_.add("setting ").addQuoted(handle.getName()) ;
+                logger_.add(" was not updated - ").add(ex.getMessage()) ;
+                logger_.endMessage() ;
+            }
+        }
+    }
 
-            current = (JSONObject)obj ;
-            index++ ;
+    //
+    // Settings read by the watcher thread that have not been installed yet
+    //
+    private static class Pending {
+        Pending(JSONObject contents, SettingsSnapshot snapshot) {
+            contents_ = contents ;
+            snapshot_ = snapshot ;
         }
 
-        return current ;
+        public final JSONObject contents_ ;
+        public final SettingsSnapshot snapshot_ ;
     }
 }
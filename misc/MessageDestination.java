@@ -10,4 +10,15 @@ public interface MessageDestination
     /// \param subsystem the subsystem ID for the message
     /// \param msg the text of the messag
     public abstract void displayMessage(MessageType type, int subsystem, String msg) ;
+
+    /// \brief push any buffered messages out to the underlying device.  Destinations that do
+    /// not buffer messages do not need to override this method.
+    public default void flush() {
+    }
+
+    /// \brief flush any buffered messages and release the underlying device.  Destinations that
+    /// hold no device open do not need to override this method.
+    public default void close() {
+        flush() ;
+    }
 }
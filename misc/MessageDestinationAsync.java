@@ -0,0 +1,432 @@
+package org.xero1425.misc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/// \file
+
+/// \brief a message destination that moves the cost of writing messages off of the robot thread.
+///
+/// Completed messages are published into a preallocated ring buffer and a background writer thread
+/// drains the ring in batches, passing each message to the destinations added to this object.  The
+/// destinations are flushed once per batch rather than once per message.  The ring is a bounded queue
+/// where each slot carries a sequence number, so publishing a message is a single compare and set with
+/// no locks taken.  When the ring is full, the overflow policy determines if the oldest message is dropped
+/// or if the producing thread waits for the writer to make room.
+///
+/// When created to carry message records (see MessageRecordDestinationAsync), each slot also holds a
+/// preallocated MessageRecord that the typed fields of a message are copied into, so destinations such
+/// as MessageDestinationBinaryFile can be written from the background thread as well.
+public class MessageDestinationAsync implements MessageDestination
+{
+    //
+    // A single entry in the ring buffer
+    //
+    private class Record
+    {
+        public MessageType type_ ;
+        public int subsystem_ ;
+        public String msg_ ;
+        public MessageRecord rec_ ;
+        public String subname_ ;
+        public boolean is_record_ ;
+    } ;
+
+    //
+    // The time the writer thread sleeps when there are no messages to write
+    //
+    private static final long IdleWaitNanos = 5000000 ;
+
+    //
+    // The time a producer waits for room in the ring buffer under the Block policy
+    //
+    private static final long BlockWaitNanos = 100000 ;
+
+    //
+    // The longest flush() will wait for the writer to catch up
+    //
+    private static final long FlushTimeoutNanos = 1000000000 ;
+
+    //
+    // The destinations that receive the messages from the writer thread
+    //
+    private List<MessageDestination> destinations_ ;
+
+    //
+    // The preallocated records in the ring buffer
+    //
+    private Record[] records_ ;
+
+    //
+    // The sequence number for each slot in the ring buffer
+    //
+    private AtomicLongArray sequences_ ;
+
+    //
+    // The mask to turn a position into a slot index
+    //
+    private int mask_ ;
+
+    //
+    // The position of the next message to be published
+    //
+    private AtomicLong tail_ ;
+
+    //
+    // The position of the next message to be written
+    //
+    private AtomicLong head_ ;
+
+    //
+    // The number of messages written or dropped, used by flush()
+    //
+    private AtomicLong completed_ ;
+
+    //
+    // The number of messages dropped because the ring was full
+    //
+    private AtomicLong dropped_ ;
+
+    //
+    // The number of messages written to the destinations
+    //
+    private AtomicLong written_ ;
+
+    //
+    // What to do when the ring buffer is full
+    //
+    private MessageOverflowPolicy policy_ ;
+
+    //
+    // The maximum number of messages written between flushes of the destinations
+    //
+    private int batch_size_ ;
+
+    //
+    // The background writer thread
+    //
+    private Thread writer_ ;
+
+    //
+    // If true, the writer thread should exit
+    //
+    private volatile boolean stop_ ;
+
+    //
+    // If true, the queued messages have been written and the destinations closed
+    //
+    private boolean closed_ ;
+
+    //
+    // Held while writing messages to the destinations, so only one thread writes at a time
+    //
+    private Object drain_lock_ ;
+
+    //
+    // The record a queued message record is copied into before it is written, so the slot can
+    // be released to the producers while the destinations are written.  Guarded by drain_lock_.
+    //
+    private MessageRecord scratch_ ;
+
+    /// \brief create a new asynchronous message destination
+    /// \param size the number of messages the ring buffer can hold, rounded up to a power of two
+    /// \param policy what to do when the ring buffer is full
+    public MessageDestinationAsync(final int size, final MessageOverflowPolicy policy) {
+        this(size, policy, false) ;
+    }
+
+    /// \brief create a new asynchronous message destination
+    /// \param size the number of messages the ring buffer can hold, rounded up to a power of two
+    /// \param policy what to do when the ring buffer is full
+    /// \param records if true, each slot in the ring buffer can carry a message record
+    protected MessageDestinationAsync(final int size, final MessageOverflowPolicy policy, final boolean records) {
+        int capacity = 2 ;
+        while (capacity < size)
+            capacity <<= 1 ;
+
+        records_ = new Record[capacity] ;
+        sequences_ = new AtomicLongArray(capacity) ;
+        for(int i = 0 ; i < capacity ; i++) {
+            records_[i] = new Record() ;
+            if (records)
+                records_[i].rec_ = new MessageRecord() ;
+            sequences_.set(i, i) ;
+        }
+
+        mask_ = capacity - 1 ;
+        policy_ = policy ;
+        batch_size_ = Math.max(1, capacity / 4) ;
+
+        tail_ = new AtomicLong(0) ;
+        head_ = new AtomicLong(0) ;
+        completed_ = new AtomicLong(0) ;
+        dropped_ = new AtomicLong(0) ;
+        written_ = new AtomicLong(0) ;
+
+        destinations_ = new ArrayList<MessageDestination>() ;
+        stop_ = false ;
+        closed_ = false ;
+        writer_ = null ;
+        drain_lock_ = new Object() ;
+        scratch_ = records ? new MessageRecord() : null ;
+
+        //
+        // The writer thread is a daemon so it never holds the robot code open, so write any
+        // queued messages when the robot code exits
+        //
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> close())) ;
+    }
+
+    /// \brief add a destination that receives messages from the writer thread.  This must be
+    /// called before start().
+    /// \param d the destination to add
+    public void addDestination(final MessageDestination d) {
+        destinations_.add(d) ;
+    }
+
+    /// \brief start the background writer thread
+    public void start() {
+        if (writer_ != null)
+            return ;
+
+        writer_ = new Thread(() -> writerLoop(), "xero-message-writer") ;
+        writer_.setDaemon(true) ;
+        writer_.setPriority(Thread.MIN_PRIORITY) ;
+        writer_.start() ;
+    }
+
+    /// \brief stop the background writer thread after writing any queued messages
+    public void stop() {
+        if (writer_ == null)
+            return ;
+
+        stop_ = true ;
+        LockSupport.unpark(writer_) ;
+        try {
+            writer_.join() ;
+        }
+        catch(InterruptedException ex) {
+            Thread.currentThread().interrupt() ;
+        }
+        writer_ = null ;
+    }
+
+    /// \brief stop the writer thread, write any queued messages, and then flush and close the destinations
+    public synchronized void close() {
+        if (closed_)
+            return ;
+
+        stop() ;
+        drain(Integer.MAX_VALUE) ;
+        for(final MessageDestination dest : destinations_)
+            dest.close() ;
+
+        closed_ = true ;
+    }
+
+    /// \brief returns the overflow policy for the ring buffer
+    /// \returns the overflow policy for the ring buffer
+    public MessageOverflowPolicy getOverflowPolicy() {
+        return policy_ ;
+    }
+
+    /// \brief returns the number of messages the ring buffer can hold
+    /// \returns the number of messages the ring buffer can hold
+    public int getCapacity() {
+        return records_.length ;
+    }
+
+    /// \brief returns the number of messages dropped because the ring buffer was full
+    /// \returns the number of messages dropped because the ring buffer was full
+    public long getDroppedCount() {
+        return dropped_.get() ;
+    }
+
+    /// \brief returns the number of messages written to the destinations
+    /// \returns the number of messages written to the destinations
+    public long getWrittenCount() {
+        return written_.get() ;
+    }
+
+    /// \brief returns the number of messages waiting to be written
+    /// \returns the number of messages waiting to be written
+    public int getPendingCount() {
+        return (int)Math.max(0, tail_.get() - head_.get()) ;
+    }
+
+    /// \brief queue a message to be displayed by the writer thread
+    /// \param type the message type
+    /// \param subsystem the subsystem ID for the message
+    /// \param msg the text of the message
+    public void displayMessage(final MessageType type, final int subsystem, final String msg) {
+        while (!offer(type, subsystem, msg, null, null))
+            makeRoom() ;
+    }
+
+    /// \brief queue a message record to be displayed by the writer thread.  The record is copied
+    /// into the ring buffer, so it only needs to be valid for the duration of this call.
+    /// \param rec the message record
+    /// \param subname the name of the subsystem for the message, or null
+    protected void displayRecordAsync(final MessageRecord rec, final String subname) {
+        while (!offer(rec.getType(), rec.getSubsystem(), null, rec, subname))
+            makeRoom() ;
+    }
+
+    //
+    // Called when the ring buffer is full, either drops the oldest message or waits for the writer
+    //
+    private void makeRoom() {
+        if (policy_ == MessageOverflowPolicy.DropOldest) {
+            if (poll(null))
+                dropped_.incrementAndGet() ;
+        }
+        else if (writer_ == null || stop_) {
+            //
+            // There is no writer to make room, so write a batch on this thread
+            //
+            drain(batch_size_) ;
+        }
+        else {
+            LockSupport.unpark(writer_) ;
+            LockSupport.parkNanos(BlockWaitNanos) ;
+        }
+    }
+
+    /// \brief wait for the writer thread to write all messages queued before this call and flush
+    /// the destinations.  If the writer is not running, the messages are written on the calling thread.
+    public void flush() {
+        final long target = tail_.get() ;
+
+        if (writer_ == null || !writer_.isAlive()) {
+            drain(Integer.MAX_VALUE) ;
+            return ;
+        }
+
+        final long start = System.nanoTime() ;
+        LockSupport.unpark(writer_) ;
+        while (completed_.get() < target && System.nanoTime() - start < FlushTimeoutNanos) {
+            LockSupport.parkNanos(BlockWaitNanos) ;
+        }
+    }
+
+    //
+    // Publish a message, or a copy of a message record if rec is not null, into the ring buffer.
+    // Returns false if the ring buffer is full.
+    //
+    private boolean offer(final MessageType type, final int subsystem, final String msg, final MessageRecord rec, final String subname) {
+        long pos = tail_.get() ;
+
+        while (true) {
+            final int index = (int)(pos & mask_) ;
+            final long diff = sequences_.get(index) - pos ;
+
+            if (diff == 0) {
+                if (tail_.compareAndSet(pos, pos + 1)) {
+                    final Record r = records_[index] ;
+                    r.type_ = type ;
+                    r.subsystem_ = subsystem ;
+                    r.msg_ = msg ;
+                    r.is_record_ = (rec != null) ;
+                    if (rec != null) {
+                        r.rec_.set(rec) ;
+                        r.subname_ = subname ;
+                    }
+                    sequences_.set(index, pos + 1) ;
+                    return true ;
+                }
+                pos = tail_.get() ;
+            }
+            else if (diff < 0) {
+                return false ;
+            }
+            else {
+                pos = tail_.get() ;
+            }
+        }
+    }
+
+    //
+    // Remove the oldest message from the ring buffer and pass it to the destinations.  If
+    // dests is null, the message is discarded and counted as complete.  Returns false if the
+    // ring buffer is empty.  When dests is not null, the caller must hold drain_lock_.
+    //
+    private boolean poll(final List<MessageDestination> dests) {
+        long pos = head_.get() ;
+
+        while (true) {
+            final int index = (int)(pos & mask_) ;
+            final long diff = sequences_.get(index) - (pos + 1) ;
+
+            if (diff == 0) {
+                if (head_.compareAndSet(pos, pos + 1)) {
+                    final Record r = records_[index] ;
+                    final MessageType type = r.type_ ;
+                    final int subsystem = r.subsystem_ ;
+                    final String msg = r.msg_ ;
+                    final boolean is_record = r.is_record_ ;
+                    final String subname = r.subname_ ;
+                    if (is_record && dests != null)
+                        scratch_.set(r.rec_) ;
+                    r.msg_ = null ;
+                    r.subname_ = null ;
+                    sequences_.set(index, pos + mask_ + 1) ;
+
+                    if (dests != null) {
+                        for(final MessageDestination dest : dests) {
+                            if (!is_record)
+                                dest.displayMessage(type, subsystem, msg) ;
+                            else if (dest instanceof MessageRecordDestination)
+                                ((MessageRecordDestination)dest).displayRecord(scratch_, subname) ;
+                        }
+                    }
+                    else {
+                        completed_.incrementAndGet() ;
+                    }
+                    return true ;
+                }
+                pos = head_.get() ;
+            }
+            else if (diff < 0) {
+                return false ;
+            }
+            else {
+                pos = head_.get() ;
+            }
+        }
+    }
+
+    //
+    // Write up to count messages and flush the destinations, returns the number written
+    //
+    private int drain(final int count) {
+        int n = 0 ;
+        synchronized(drain_lock_) {
+            while (n < count && poll(destinations_))
+                n++ ;
+
+            if (n > 0) {
+                for(final MessageDestination dest : destinations_)
+                    dest.flush() ;
+            }
+        }
+
+        if (n > 0) {
+            written_.addAndGet(n) ;
+            completed_.addAndGet(n) ;
+        }
+
+        return n ;
+    }
+
+    private void writerLoop() {
+        while (!stop_) {
+            if (drain(batch_size_) == 0)
+                LockSupport.parkNanos(IdleWaitNanos) ;
+        }
+
+        drain(Integer.MAX_VALUE) ;
+    }
+}
@@ -0,0 +1,323 @@
+package org.xero1425.misc;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+/// \file
+
+/// \brief a message destination that stores messages in a compact binary file.
+///
+/// Rather than formatting each message into text, this destination writes the typed fields of each
+/// message as they were added to the MessageLogger.  Subsystem names, field names, and repeated text
+/// fragments are written once per file into a string table and referenced by index after that.  The
+/// file can be turned back into the normal text format, or into CSV, with the MessageLogDecoder program.
+///
+/// The file starts with the magic number and version, followed by a stream of records.  Each record
+/// starts with a one byte tag.
+/// \li \c TagSubsystem - the subsystem ID (int) and name (UTF)
+/// \li \c TagString - the string table index (short) and string (UTF)
+/// \li \c TagMessage - time (double), thread (long), type (byte), subsystem (int), field count (short), and the fields
+/// \li \c TagText - type (byte), subsystem (int), and a preformatted line of text (UTF)
+///
+/// Each field is a kind (byte) followed by the name for named fields and then the value.  Strings are
+/// written as a string table index (short), or StringInline followed by the UTF string, or StringNull.
+public class MessageDestinationBinaryFile implements MessageRecordDestination
+{
+    /// \brief the magic number at the start of the file
+    public static final int Magic = 0x584c4f47 ;
+
+    /// \brief the version of the file format
+    public static final int Version = 1 ;
+
+    /// \brief the tag for a subsystem name record
+    public static final int TagSubsystem = 1 ;
+
+    /// \brief the tag for a string table record
+    public static final int TagString = 2 ;
+
+    /// \brief the tag for a message record
+    public static final int TagMessage = 3 ;
+
+    /// \brief the tag for a preformatted text record
+    public static final int TagText = 4 ;
+
+    /// \brief the string reference that means the string follows inline
+    public static final int StringInline = -1 ;
+
+    /// \brief the string reference that means the string is null
+    public static final int StringNull = -2 ;
+
+    //
+    // The largest number of entries in the string table, strings after this are written inline
+    //
+    private static final int MaxStringTableSize = 4096 ;
+
+    //
+    // Strings longer than this are never put in the string table
+    //
+    private static final int MaxStringTableLength = 128 ;
+
+    //
+    // The largest string length that can be written as UTF, longer strings are truncated
+    //
+    private static final int MaxStringLength = 16384 ;
+
+    //
+    // The longest time between flushes of the file
+    //
+    private static final long FlushIntervalNanos = 500000000 ;
+
+    //
+    // The name of the file
+    //
+    private String filename_ ;
+
+    //
+    // The stream for writing to the file
+    //
+    private DataOutputStream out_ ;
+
+    //
+    // If true, the output stream is valid
+    //
+    private boolean valid_ ;
+
+    //
+    // The subsystems whose names have been written to the file
+    //
+    private Map<Integer, String> subsystems_ ;
+
+    //
+    // The strings in the string table
+    //
+    private Map<String, Integer> strings_ ;
+
+    //
+    // The time of the last flush of the file
+    //
+    private long last_flush_ ;
+
+    /// \brief create a new destination writing to the filename given
+    /// \param filename the name of the output file for messages
+    public MessageDestinationBinaryFile(final String filename) {
+        open(filename) ;
+    }
+
+    /// \brief create a new destination writing to the first unused binlog_N file in a directory
+    /// \param bdir the base directory for log files (e.g. /u) ;
+    /// \param timeout a timeout for trying to open a file in the base directory given
+    public MessageDestinationBinaryFile(final String bdir, final long timeout) {
+        int index = 1;
+        final long startms = new Date().getTime();
+
+        while (true) {
+            final long now = new Date().getTime();
+            if (now - startms > timeout) {
+                System.err.println("timeout while opening robot log file");
+                valid_ = false;
+                break;
+            }
+
+            final String filename = bdir + "/binlog_" + Integer.toString(index++);
+            if (!new File(filename).exists()) {
+                open(filename) ;
+                break ;
+            }
+        }
+    }
+
+    private void open(final String filename) {
+        filename_ = filename ;
+        subsystems_ = new HashMap<Integer, String>() ;
+        strings_ = new HashMap<String, Integer>() ;
+        last_flush_ = System.nanoTime() ;
+
+        try {
+            out_ = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filename), 65536)) ;
+            out_.writeInt(Magic) ;
+            out_.writeShort(Version) ;
+            out_.flush() ;
+            valid_ = true ;
+        }
+        catch(final Exception ex) {
+            valid_ = false ;
+            System.err.println("cannot open log file '" + filename_ + "' - " + ex.getMessage()) ;
+        }
+    }
+
+    /// \brief store a preformatted line of text in the file
+    /// \param type the message type
+    /// \param subsystem the subsystem ID for the message
+    /// \param msg the text of the message
+    public synchronized void displayMessage(final MessageType type, final int subsystem, final String msg) {
+        if (valid_) {
+            try {
+                out_.writeByte(TagText) ;
+                out_.writeByte(type.ordinal()) ;
+                out_.writeInt(subsystem) ;
+                out_.writeUTF(truncate(msg)) ;
+                checkFlush(type) ;
+            }
+            catch(final IOException ex) {
+                writeFailed(ex) ;
+            }
+        }
+    }
+
+    /// \brief store the typed fields of a message in the file
+    /// \param rec the message record
+    /// \param subname the name of the subsystem for the message, or null if the message has no subsystem
+    public synchronized void displayRecord(final MessageRecord rec, final String subname) {
+        if (!valid_)
+            return ;
+
+        try {
+            final int sub = rec.getSubsystem() ;
+            if (subname != null && !subsystems_.containsKey(sub)) {
+                subsystems_.put(sub, subname) ;
+                out_.writeByte(TagSubsystem) ;
+                out_.writeInt(sub) ;
+                out_.writeUTF(truncate(subname)) ;
+            }
+
+            //
+            // Any new strings must be in the string table before the message that uses them
+            //
+            for(int i = 0 ; i < rec.getFieldCount() ; i++) {
+                defineString(rec.getName(i)) ;
+                if (rec.getKind(i) == MessageRecord.FieldKind.Text || rec.getKind(i) == MessageRecord.FieldKind.Quoted)
+                    defineString(rec.getString(i)) ;
+            }
+
+            out_.writeByte(TagMessage) ;
+            out_.writeDouble(rec.getTime()) ;
+            out_.writeLong(rec.getThread()) ;
+            out_.writeByte(rec.getType().ordinal()) ;
+            out_.writeInt(sub) ;
+            out_.writeShort(rec.getFieldCount()) ;
+
+            for(int i = 0 ; i < rec.getFieldCount() ; i++) {
+                final MessageRecord.FieldKind kind = rec.getKind(i) ;
+                out_.writeByte(kind.ordinal()) ;
+
+                switch(kind) {
+                    case Text:
+                    case Quoted:
+                        writeString(rec.getString(i)) ;
+                        break ;
+                    case Char:
+                        out_.writeChar((int)rec.getLong(i)) ;
+                        break ;
+                    case Long:
+                        out_.writeLong(rec.getLong(i)) ;
+                        break ;
+                    case Double:
+                        out_.writeDouble(rec.getDouble(i)) ;
+                        break ;
+                    case Boolean:
+                        out_.writeBoolean(rec.getLong(i) != 0) ;
+                        break ;
+                    case NamedLong:
+                        writeString(rec.getName(i)) ;
+                        out_.writeLong(rec.getLong(i)) ;
+                        break ;
+                    case NamedDouble:
+                        writeString(rec.getName(i)) ;
+                        out_.writeDouble(rec.getDouble(i)) ;
+                        break ;
+                    case NamedBoolean:
+                        writeString(rec.getName(i)) ;
+                        out_.writeBoolean(rec.getLong(i) != 0) ;
+                        break ;
+                    case NamedString:
+                        writeString(rec.getName(i)) ;
+                        writeString(rec.getString(i)) ;
+                        break ;
+                }
+            }
+
+            checkFlush(rec.getType()) ;
+        }
+        catch(final IOException ex) {
+            writeFailed(ex) ;
+        }
+    }
+
+    /// \brief flush any messages written to the file
+    public synchronized void flush() {
+        if (valid_) {
+            try {
+                out_.flush() ;
+                last_flush_ = System.nanoTime() ;
+            }
+            catch(final IOException ex) {
+                writeFailed(ex) ;
+            }
+        }
+    }
+
+    //
+    // Add a string to the string table if there is room and it is not already there
+    //
+    private void defineString(final String str) throws IOException {
+        if (str == null || str.length() > MaxStringTableLength || strings_.size() >= MaxStringTableSize || strings_.containsKey(str))
+            return ;
+
+        final int index = strings_.size() ;
+        strings_.put(str, index) ;
+        out_.writeByte(TagString) ;
+        out_.writeShort(index) ;
+        out_.writeUTF(str) ;
+    }
+
+    //
+    // Write a reference to a string, or the string itself if it is not in the string table
+    //
+    private void writeString(final String str) throws IOException {
+        if (str == null) {
+            out_.writeShort(StringNull) ;
+            return ;
+        }
+
+        final Integer index = strings_.get(str) ;
+        if (index != null) {
+            out_.writeShort(index) ;
+        }
+        else {
+            out_.writeShort(StringInline) ;
+            out_.writeUTF(truncate(str)) ;
+        }
+    }
+
+    //
+    // Flush the file if it has been a while, or if the message is important
+    //
+    private void checkFlush(final MessageType type) throws IOException {
+        final long now = System.nanoTime() ;
+        if (type == MessageType.Error || type == MessageType.Fatal || now - last_flush_ > FlushIntervalNanos) {
+            out_.flush() ;
+            last_flush_ = now ;
+        }
+    }
+
+    private void writeFailed(final IOException ex) {
+        valid_ = false ;
+        System.err.println("cannot write to log file '" + filename_ + "' - " + ex.getMessage()) ;
+    }
+
+    private static String truncate(final String str) {
+        if (str == null)
+            return "null" ;
+
+        if (str.length() > MaxStringLength)
+            return str.substring(0, MaxStringLength) ;
+
+        return str ;
+    }
+}
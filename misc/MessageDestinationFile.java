@@ -11,11 +11,14 @@ public class MessageDestinationFile implements MessageDestination
     private String filename_;
     private FileWriter file_ ;
     private boolean valid_ ;
+    private boolean auto_flush_ ;
 
     /// \brief create a new destination writing to the filename given
     /// \param filename the name of the output file for messages
     public MessageDestinationFile(final String filename) {
         final File f = new File(filename);
+        filename_ = filename ;
+        auto_flush_ = true ;
         try {
             file_ = new FileWriter(f) ;
             valid_ = true ;
@@ -35,11 +38,31 @@ public class MessageDestinationFile implements MessageDestination
             try {
                 file_.write(msg) ;
                 file_.write("\n") ;
-                file_.flush() ;
+                if (auto_flush_)
+                    file_.flush() ;
             }
             catch(final Exception ex) {
                 System.err.println("cannot write to log file '" + filename_ + "' - " + ex.getMessage()) ;
             }
         }
     }
+
+    /// \brief set whether the file is flushed after every message.  This should only be turned
+    /// off when some other agent, such as a MessageDestinationAsync, calls flush() periodically.
+    /// \param flush if true, the file is flushed after every message
+    public void setAutoFlush(final boolean flush) {
+        auto_flush_ = flush ;
+    }
+
+    /// \brief flush any messages written to the file
+    public void flush() {
+        if (valid_) {
+            try {
+                file_.flush() ;
+            }
+            catch(final Exception ex) {
+                System.err.println("cannot flush log file '" + filename_ + "' - " + ex.getMessage()) ;
+            }
+        }
+    }
 }
@@ -0,0 +1,361 @@
+package org.xero1425.misc;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/// \file
+
+/// \brief This class is a MessageDestination that logs messages to a set of memory mapped, size limited
+/// segment files on a thumb drive on the roborio.
+///
+/// Messages are copied into a memory mapped window of the current segment file, so writing a message
+/// is a memory copy and the operating system writes the pages to the drive in the background.  The window
+/// is forced to the drive at most once every few seconds and when a segment is closed.  When a segment
+/// reaches its size limit, or after requestRotate() is called at the start of a match, a new segment is
+/// started.  The sequence number of the next segment and of the oldest segment are kept in a small index
+/// file so startup does not need to search for a free file name.  When the total size of the segments
+/// exceeds the retention budget, the oldest segments are deleted.
+///
+/// Segment files are named logseg_N.  A segment that was not closed cleanly, for instance because
+/// power was removed, may end with zero bytes which should be ignored when reading the file.
+public class MessageDestinationMappedFile implements MessageDestination
+{
+    //
+    // The name of the index file in the log directory
+    //
+    private static final String IndexFileName = "logindex" ;
+
+    //
+    // The prefix for segment file names
+    //
+    private static final String SegmentPrefix = "logseg_" ;
+
+    //
+    // The size of the memory mapped window into the segment file
+    //
+    private static final int WindowSize = 1024 * 1024 ;
+
+    //
+    // The shortest time between forcing the window out to the drive
+    //
+    private static final long ForceIntervalNanos = 5000000000L ;
+
+    //
+    // The directory containing the log files
+    //
+    private String bdir_ ;
+
+    //
+    // The largest size of a single segment file
+    //
+    private long segment_size_ ;
+
+    //
+    // The largest total size of all segment files
+    //
+    private long retention_ ;
+
+    //
+    // The sequence number of the current segment
+    //
+    private int sequence_ ;
+
+    //
+    // The sequence number of the oldest segment that has not been deleted
+    //
+    private int oldest_ ;
+
+    //
+    // The current segment file
+    //
+    private RandomAccessFile file_ ;
+
+    //
+    // The channel for the current segment file
+    //
+    private FileChannel channel_ ;
+
+    //
+    // The memory mapped window into the current segment file
+    //
+    private MappedByteBuffer window_ ;
+
+    //
+    // The offset in the segment file of the start of the window
+    //
+    private long window_start_ ;
+
+    //
+    // The number of bytes written to the current segment
+    //
+    private long written_ ;
+
+    //
+    // If true, the current segment is valid
+    //
+    private boolean valid_ ;
+
+    //
+    // The time the window was last forced out to the drive
+    //
+    private long last_force_ ;
+
+    //
+    // If true, a new segment is started before the next message is written
+    //
+    private volatile boolean rotate_pending_ ;
+
+    /// \brief create a new object that logs messages to memory mapped segments on a thumb drive
+    /// \param bdir the base directory for log files (e.g. /u)
+    /// \param segment_size the largest size of a single segment file in bytes
+    /// \param retention the largest total size of all segment files in bytes
+    public MessageDestinationMappedFile(final String bdir, final long segment_size, final long retention) {
+        bdir_ = bdir ;
+        segment_size_ = Math.max(segment_size, WindowSize) ;
+        retention_ = Math.max(retention, segment_size_) ;
+        valid_ = false ;
+        rotate_pending_ = false ;
+
+        readIndex() ;
+        openSegment() ;
+
+        //
+        // Trim the current segment back to its written size when the robot code exits
+        //
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> close())) ;
+    }
+
+    /// \brief returns the name of the current segment file
+    /// \returns the name of the current segment file
+    public String getFileName() {
+        return segmentName(sequence_) ;
+    }
+
+    /// \brief display a message by copying it into the current segment
+    /// \param type the message type
+    /// \param subsystem the subsystem ID for the message
+    /// \param msg the text of the message
+    public synchronized void displayMessage(final MessageType type, final int subsystem, final String msg) {
+        if (rotate_pending_) {
+            rotate_pending_ = false ;
+            rotate() ;
+        }
+
+        if (!valid_)
+            return ;
+
+        final byte[] bytes = msg.getBytes(StandardCharsets.UTF_8) ;
+        if (written_ > 0 && written_ + bytes.length + 1 > segment_size_)
+            rotate() ;
+
+        put(bytes) ;
+        put((byte)'\n') ;
+    }
+
+    /// \brief force the data written so far out to the thumb drive.  The pages are already visible to the
+    /// operating system, so this forces the window at most once every ForceIntervalNanos.
+    public synchronized void flush() {
+        final long now = System.nanoTime() ;
+        if (valid_ && now - last_force_ > ForceIntervalNanos) {
+            window_.force() ;
+            last_force_ = now ;
+        }
+    }
+
+    /// \brief start a new segment before the next message is written.  This is called at match boundaries
+    /// so each match starts in its own segment.  The segment is closed and the next one opened by the thread
+    /// writing messages, which is the background writer when the log is written asynchronously, so the
+    /// caller never waits on the file system.  Messages still queued for the writer when this is called are
+    /// written to the new segment.
+    public void requestRotate() {
+        rotate_pending_ = true ;
+    }
+
+    //
+    // Close the current segment and start a new one.  If nothing has been written to the current
+    // segment, it is reused.
+    //
+    private void rotate() {
+        if (valid_ && written_ == 0)
+            return ;
+
+        closeSegment() ;
+        sequence_++ ;
+        openSegment() ;
+    }
+
+    /// \brief close the current segment
+    public synchronized void close() {
+        closeSegment() ;
+    }
+
+    private void put(final byte[] bytes) {
+        int offset = 0 ;
+        while (valid_ && offset < bytes.length) {
+            if (!window_.hasRemaining())
+                mapWindow(window_start_ + WindowSize) ;
+
+            final int count = Math.min(bytes.length - offset, window_.remaining()) ;
+            window_.put(bytes, offset, count) ;
+            offset += count ;
+            written_ += count ;
+        }
+    }
+
+    private void put(final byte b) {
+        if (valid_ && !window_.hasRemaining())
+            mapWindow(window_start_ + WindowSize) ;
+
+        if (valid_) {
+            window_.put(b) ;
+            written_++ ;
+        }
+    }
+
+    private void mapWindow(final long start) {
+        try {
+            window_ = channel_.map(FileChannel.MapMode.READ_WRITE, start, WindowSize) ;
+            window_start_ = start ;
+        }
+        catch(final IOException ex) {
+            writeFailed(ex) ;
+        }
+    }
+
+    private void openSegment() {
+        final String filename = segmentName(sequence_) ;
+
+        try {
+            file_ = new RandomAccessFile(filename, "rw") ;
+            file_.setLength(0) ;
+            channel_ = file_.getChannel() ;
+            written_ = 0 ;
+            valid_ = true ;
+            mapWindow(0) ;
+            last_force_ = System.nanoTime() ;
+        }
+        catch(final IOException ex) {
+            valid_ = false ;
+            System.err.println("cannot open log file '" + filename + "' - " + ex.getMessage()) ;
+        }
+
+        enforceRetention() ;
+    }
+
+    private void closeSegment() {
+        if (file_ == null)
+            return ;
+
+        try {
+            if (valid_)
+                window_.force() ;
+
+            //
+            // Mapping the window extends the file, so cut it back to the bytes actually written
+            //
+            window_ = null ;
+            channel_.truncate(written_) ;
+            file_.close() ;
+        }
+        catch(final IOException ex) {
+            System.err.println("cannot close log file '" + segmentName(sequence_) + "' - " + ex.getMessage()) ;
+        }
+
+        file_ = null ;
+        channel_ = null ;
+        valid_ = false ;
+    }
+
+    //
+    // Delete the oldest segments until the total size is within the retention budget
+    //
+    private void enforceRetention() {
+        long total = 0 ;
+        for(int seq = oldest_ ; seq < sequence_ ; seq++)
+            total += new File(segmentName(seq)).length() ;
+
+        //
+        // The current segment can grow to the segment size, so leave room for it
+        //
+        while (oldest_ < sequence_ && total + segment_size_ > retention_) {
+            final File f = new File(segmentName(oldest_)) ;
+            total -= f.length() ;
+            if (f.exists() && !f.delete())
+                System.err.println("cannot delete log file '" + f.getPath() + "'") ;
+            oldest_++ ;
+        }
+
+        writeIndex() ;
+    }
+
+    //
+    // Read the index file giving the next and oldest sequence numbers.  If the index file is missing,
+    // the directory is listed once to find the segments that exist.
+    //
+    private void readIndex() {
+        sequence_ = -1 ;
+        oldest_ = -1 ;
+
+        try {
+            final String[] words = new String(Files.readAllBytes(new File(bdir_, IndexFileName).toPath()), StandardCharsets.UTF_8).trim().split("\\s+") ;
+            if (words.length == 2) {
+                sequence_ = Integer.parseInt(words[0]) ;
+                oldest_ = Integer.parseInt(words[1]) ;
+            }
+        }
+        catch(final Exception ex) {
+            sequence_ = -1 ;
+        }
+
+        if (sequence_ < 0 || oldest_ < 0 || oldest_ > sequence_) {
+            sequence_ = 0 ;
+            oldest_ = Integer.MAX_VALUE ;
+
+            final String[] names = new File(bdir_).list() ;
+            if (names != null) {
+                for(String name : names) {
+                    if (!name.startsWith(SegmentPrefix))
+                        continue ;
+
+                    try {
+                        final int seq = Integer.parseInt(name.substring(SegmentPrefix.length())) ;
+                        sequence_ = Math.max(sequence_, seq + 1) ;
+                        oldest_ = Math.min(oldest_, seq) ;
+                    }
+                    catch(final NumberFormatException ex) {
+                    }
+                }
+            }
+
+            if (oldest_ > sequence_)
+                oldest_ = sequence_ ;
+        }
+    }
+
+    //
+    // Write the index file so the next startup starts after the current segment
+    //
+    private void writeIndex() {
+        try (FileWriter w = new FileWriter(new File(bdir_, IndexFileName))) {
+            w.write(Integer.toString(sequence_ + 1) + " " + Integer.toString(oldest_) + "\n") ;
+        }
+        catch(final IOException ex) {
+            System.err.println("cannot write log index file in '" + bdir_ + "' - " + ex.getMessage()) ;
+        }
+    }
+
+    private String segmentName(final int seq) {
+        return bdir_ + "/" + SegmentPrefix + Integer.toString(seq) ;
+    }
+
+    private void writeFailed(final IOException ex) {
+        valid_ = false ;
+        System.err.println("cannot write to log file '" + segmentName(sequence_) + "' - " + ex.getMessage()) ;
+    }
+}
@@ -24,12 +24,18 @@ public class MessageDestinationThumbFile implements MessageDestination
     //
     private boolean valid_;
 
+    //
+    // If true, the file is flushed after each message
+    //
+    private boolean auto_flush_ ;
+
     /// \brief create a new object that logs messages to a thumb drive
     /// \param bdir the base directory for log files (e.g. /u) ;
     /// \param timeout a timeout for trying to open a file in the base directory given
     public MessageDestinationThumbFile(final String bdir, final long timeout) {
         int index = 1;
         valid_ = false;
+        auto_flush_ = true ;
         final long startms = new Date().getTime();
 
         while (true) {
@@ -70,7 +76,8 @@ public class MessageDestinationThumbFile implements MessageDestination
             {
                 file_.write(msg) ;
                 file_.write("\n") ;
-                file_.flush() ;
+                if (auto_flush_)
+                    file_.flush() ;
             }
             catch(final Exception ex)
             {
@@ -79,4 +86,24 @@ public class MessageDestinationThumbFile implements MessageDestination
         }
     }
 
+    /// \brief set whether the file is flushed after every message.  This should only be turned
+    /// off when some other agent, such as a MessageDestinationAsync, calls flush() periodically.
+    /// \param flush if true, the file is flushed after every message
+    public void setAutoFlush(final boolean flush) {
+        auto_flush_ = flush ;
+    }
+
+    /// \brief flush any messages written to the file on the thumb drive
+    public void flush() {
+        if (valid_) {
+            try
+            {
+                file_.flush() ;
+            }
+            catch(final Exception ex)
+            {
+                System.err.println("cannot flush log file '" + filename_ + "' - " + ex.getMessage()) ;
+            }
+        }
+    }
 }
@@ -0,0 +1,286 @@
+package org.xero1425.misc;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/// \file
+
+/// \brief This class converts a binary log file written by MessageDestinationBinaryFile back into text.
+///
+/// The decoder can be run from the command line to produce either the same text the MessageLogger writes
+/// to a text log file, or a CSV file with one row for the text of each message and one row for each named
+/// value in each message.
+///
+/// usage: MessageLogDecoder [--csv] logfile [outfile]
+public class MessageLogDecoder
+{
+    //
+    // All of the message types, indexed by ordinal
+    //
+    private static final MessageType[] Types = MessageType.values() ;
+
+    //
+    // The input stream for the binary log file
+    //
+    private DataInputStream in_ ;
+
+    //
+    // The output for the decoded messages
+    //
+    private PrintWriter out_ ;
+
+    //
+    // If true, the output is CSV, otherwise it is text
+    //
+    private boolean csv_ ;
+
+    //
+    // The subsystem names from the file
+    //
+    private Map<Integer, String> subsystems_ ;
+
+    //
+    // The string table from the file
+    //
+    private List<String> strings_ ;
+
+    //
+    // The message being decoded
+    //
+    private MessageRecord record_ ;
+
+    //
+    // The format for time stamps
+    //
+    private DecimalFormat format_ ;
+
+    /// \brief create a new decoder
+    /// \param in the input stream for the binary log file
+    /// \param out the output for the decoded messages
+    /// \param csv if true, the output is CSV, otherwise it is text
+    public MessageLogDecoder(final DataInputStream in, final PrintWriter out, final boolean csv) {
+        in_ = in ;
+        out_ = out ;
+        csv_ = csv ;
+        subsystems_ = new HashMap<Integer, String>() ;
+        strings_ = new ArrayList<String>() ;
+        record_ = new MessageRecord() ;
+        format_ = new DecimalFormat("000.0000") ;
+    }
+
+    /// \brief decode the complete log file
+    /// \returns the number of messages decoded
+    public int decode() throws IOException {
+        int count = 0 ;
+
+        if (in_.readInt() != MessageDestinationBinaryFile.Magic)
+            throw new IOException("input file is not a binary message log") ;
+
+        int version = in_.readShort() ;
+        if (version != MessageDestinationBinaryFile.Version)
+            throw new IOException("unsupported binary message log version " + version) ;
+
+        if (csv_)
+            out_.println("time,thread,type,subsystem,name,value") ;
+
+        while (true) {
+            int tag ;
+
+            try {
+                tag = in_.readUnsignedByte() ;
+            }
+            catch(EOFException ex) {
+                break ;
+            }
+
+            try {
+                switch(tag) {
+                    case MessageDestinationBinaryFile.TagSubsystem:
+                        int sub = in_.readInt() ;
+                        subsystems_.put(sub, in_.readUTF()) ;
+                        break ;
+
+                    case MessageDestinationBinaryFile.TagString:
+                        int index = in_.readShort() ;
+                        while (strings_.size() <= index)
+                            strings_.add(null) ;
+                        strings_.set(index, in_.readUTF()) ;
+                        break ;
+
+                    case MessageDestinationBinaryFile.TagMessage:
+                        readMessage() ;
+                        count++ ;
+                        break ;
+
+                    case MessageDestinationBinaryFile.TagText:
+                        MessageType type = Types[in_.readUnsignedByte()] ;
+                        int tsub = in_.readInt() ;
+                        String text = in_.readUTF() ;
+                        if (csv_)
+                            out_.println(",," + type.toString() + "," + csvQuote(subsystemName(tsub)) + ",message," + csvQuote(text)) ;
+                        else
+                            out_.println(text) ;
+                        count++ ;
+                        break ;
+
+                    default:
+                        throw new IOException("invalid record tag " + tag + " in binary message log") ;
+                }
+            }
+            catch(EOFException ex) {
+                //
+                // The robot was probably turned off in the middle of writing a record
+                //
+                System.err.println("warning: binary message log ends with a partial record") ;
+                break ;
+            }
+        }
+
+        out_.flush() ;
+        return count ;
+    }
+
+    /// \brief decode a binary log file from the command line
+    /// \param args the command line arguments
+    public static void main(String[] args) {
+        boolean csv = false ;
+        String infile = null ;
+        String outfile = null ;
+
+        for(String arg : args) {
+            if (arg.equals("--csv"))
+                csv = true ;
+            else if (infile == null)
+                infile = arg ;
+            else if (outfile == null)
+                outfile = arg ;
+            else
+                infile = null ;
+        }
+
+        if (infile == null) {
+            System.err.println("usage: MessageLogDecoder [--csv] logfile [outfile]") ;
+            System.exit(1) ;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(infile), 65536)) ;
+             PrintWriter out = new PrintWriter(outfile == null ? new OutputStreamWriter(System.out) : new FileWriter(outfile))) {
+            MessageLogDecoder decoder = new MessageLogDecoder(in, out, csv) ;
+            decoder.decode() ;
+        }
+        catch(Exception ex) {
+            System.err.println("cannot decode binary message log '" + infile + "' - " + ex.getMessage()) ;
+            System.exit(1) ;
+        }
+    }
+
+    private void readMessage() throws IOException {
+        double time = in_.readDouble() ;
+        long thread = in_.readLong() ;
+        MessageType type = Types[in_.readUnsignedByte()] ;
+        int sub = in_.readInt() ;
+        int count = in_.readUnsignedShort() ;
+
+        record_.clear(type, sub, thread) ;
+        record_.setTime(time) ;
+
+        for(int i = 0 ; i < count ; i++) {
+            int kind = in_.readUnsignedByte() ;
+            if (kind >= MessageRecord.FieldKind.values().length)
+                throw new IOException("invalid field kind " + kind + " in binary message log") ;
+
+            switch(MessageRecord.FieldKind.values()[kind]) {
+                case Text:
+                case Quoted:
+                    record_.addField(kind, null, readString(), 0, 0.0) ;
+                    break ;
+                case Char:
+                    record_.addField(kind, null, null, in_.readChar(), 0.0) ;
+                    break ;
+                case Long:
+                    record_.addField(kind, null, null, in_.readLong(), 0.0) ;
+                    break ;
+                case Double:
+                    record_.addField(kind, null, null, 0, in_.readDouble()) ;
+                    break ;
+                case Boolean:
+                    record_.addField(kind, null, null, in_.readBoolean() ? 1 : 0, 0.0) ;
+                    break ;
+                case NamedLong:
+                    record_.addField(kind, readString(), null, in_.readLong(), 0.0) ;
+                    break ;
+                case NamedDouble:
+                    record_.addField(kind, readString(), null, 0, in_.readDouble()) ;
+                    break ;
+                case NamedBoolean:
+                    record_.addField(kind, readString(), null, in_.readBoolean() ? 1 : 0, 0.0) ;
+                    break ;
+                case NamedString:
+                    String name = readString() ;
+                    record_.addField(kind, name, readString(), 0, 0.0) ;
+                    break ;
+            }
+        }
+
+        String subname = subsystems_.get(sub) ;
+        if (csv_) {
+            String prefix = (Double.isNaN(time) ? "" : format_.format(time)) + "," + thread + "," + type.toString() + "," + csvQuote(subsystemName(sub)) + "," ;
+            StringBuilder bld = new StringBuilder() ;
+            record_.formatBody(bld) ;
+            out_.println(prefix + "message," + csvQuote(bld.toString())) ;
+
+            for(int i = 0 ; i < record_.getFieldCount() ; i++) {
+                if (record_.getName(i) != null)
+                    out_.println(prefix + csvQuote(record_.getName(i)) + "," + csvQuote(record_.formatValue(i))) ;
+            }
+        }
+        else {
+            for(String line : MessageLogger.formatLines(record_, subname, format_, new StringBuilder()))
+                out_.println(line) ;
+        }
+    }
+
+    private String readString() throws IOException {
+        int index = in_.readShort() ;
+
+        if (index == MessageDestinationBinaryFile.StringNull)
+            return null ;
+
+        if (index == MessageDestinationBinaryFile.StringInline)
+            return in_.readUTF() ;
+
+        if (index < 0 || index >= strings_.size() || strings_.get(index) == null)
+            throw new IOException("invalid string table index " + index + " in binary message log") ;
+
+        return strings_.get(index) ;
+    }
+
+    private String subsystemName(int sub) {
+        if (sub == MessageLogger.NOSUBSYSTEM)
+            return "global" ;
+
+        String name = subsystems_.get(sub) ;
+        if (name == null)
+            name = "missing(" + sub + ")" ;
+
+        return name ;
+    }
+
+    private static String csvQuote(String str) {
+        if (str.indexOf(',') == -1 && str.indexOf('"') == -1 && str.indexOf('\n') == -1)
+            return str ;
+
+        return "\"" + str.replace("\"", "\"\"") + "\"" ;
+    }
+}
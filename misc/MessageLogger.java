@@ -2,10 +2,15 @@
 package org.xero1425.misc;
 
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 import java.util.List;
 import java.text.DecimalFormat;
 import java.util.ArrayList ;
+import java.util.BitSet;
+import java.util.EnumSet;
+import org.xero1425.misc.MessageRecord.FieldKind;
 
 /// \file
 
@@ -26,13 +31,17 @@ import java.util.ArrayList ;
 public final class MessageLogger
 {
     // The per thread data for the logger
-    private Map<Long, ThreadData> per_thread_data_ ;
+    private ThreadLocal<ThreadData> per_thread_data_ ;
 
     // The set of destinations for messages
     private List<MessageDestination> destinations_ ;
 
+    // The number of destinations that need the text of a message.  If zero, the text of
+    // messages is never formatted.
+    private int text_destinations_ ;
+
     // The set of message types enabled
-    private List<MessageType> enabled_types_ ;
+    private EnumSet<MessageType> enabled_types_ ;
 
     // The time source for messages
     private MessageTimeSource time_src_ ;
@@ -40,17 +49,17 @@ public final class MessageLogger
     // This is a mapping from subsystem number to subsystem name
     private Map<Integer, String> subsystems_ ;
 
-    // The list of enabled subsytems
-    private List<Integer> enabled_subsystems_ ;
+    // This is a mapping from subsystem name to subsystem number
+    private Map<String, Integer> subsystem_ids_ ;
+
+    // The enabled subsystems, indexed by subsystem number
+    private BitSet enabled_subsystems_ ;
 
     // This is the number for the next subsystem registered
     private int subsystem_index_ ;
 
-    // The lock for the serial number
-    private Object lock_ ;
-
-    // the list of subsystem to be enabled if ethey are created
-    private List<String> to_be_enabled_ ;
+    // the set of subsystem to be enabled if ethey are created
+    private Set<String> to_be_enabled_ ;
 
     // the format for the time value
     private DecimalFormat format_ ;
@@ -64,26 +73,32 @@ public final class MessageLogger
     /// \brief the subsystem value that means there is no subsystem
     public static final int NOSUBSYSTEM = 0 ;
 
+    // The initial size of the per thread text buffer
+    private static final int InitialMessageCapacity = 80 ;
+
+    // If a very long message grows the per thread text buffer past this size, the buffer
+    // is replaced rather than holding on to the memory for the life of the thread
+    private static final int MaxRetainedMessageCapacity = 4096 ;
+
+    // The number of subsystems the enabled set is sized for up front, so the set is not
+    // resized while other threads are testing it
+    private static final int InitialSubsystemCapacity = 256 ;
+
     /// \brief Create a new message logger object
     public MessageLogger()
     {
         subsystems_ = new HashMap<Integer, String>() ;
+        subsystem_ids_ = new HashMap<String, Integer>() ;
         subsystem_index_ = 1 ;
         time_src_ = null ;
         destinations_ = new ArrayList<MessageDestination>() ;
-        per_thread_data_ = new HashMap<Long, ThreadData>() ;
-
-        enabled_types_ = new ArrayList<MessageType>() ;
-        enabled_types_.add(MessageType.Debug) ;
-        enabled_types_.add(MessageType.Info) ;
-        enabled_types_.add(MessageType.Warning) ;
-        enabled_types_.add(MessageType.Error) ;
-        enabled_types_.add(MessageType.Fatal) ;
+        text_destinations_ = 0 ;
+        per_thread_data_ = ThreadLocal.withInitial(() -> new ThreadData()) ;
 
-        enabled_subsystems_ = new ArrayList<Integer>() ;
-        to_be_enabled_ = new ArrayList<String>() ;
+        enabled_types_ = EnumSet.allOf(MessageType.class) ;
 
-        lock_ = new Object() ;
+        enabled_subsystems_ = new BitSet(InitialSubsystemCapacity) ;
+        to_be_enabled_ = new HashSet<String>() ;
 
         format_ = new DecimalFormat("000.0000") ;
 
@@ -99,13 +114,13 @@ public final class MessageLogger
     /// \brief register a new subsystem with the message logger
     /// \param name the name of the subsystem
     /// \returns the message ID handle for messages
-    public int registerSubsystem(final String name) {
+    public synchronized int registerSubsystem(final String name) {
         final int index = subsystem_index_++;
         subsystems_.put(index, name);
+        subsystem_ids_.putIfAbsent(name, index) ;
 
-        if (to_be_enabled_.contains(name)) {
+        if (to_be_enabled_.remove(name)) {
             enableLoggerID(index) ;
-            to_be_enabled_.remove(name) ;
         }
         return index;
     }
@@ -119,26 +134,41 @@ public final class MessageLogger
     /// \brief clear all message destinations
     public void clear() {
         destinations_.clear();
+        text_destinations_ = 0 ;
     }
 
     /// \brief add a new message destination
     /// \param d the new message destination
     public void addDestination(final MessageDestination d) {
         destinations_.add(d);
+        if (!(d instanceof MessageRecordDestination))
+            text_destinations_++ ;
+    }
+
+    /// \brief returns the name of a registered subsystem
+    /// \param handle the message ID handle for the subsystem
+    /// \returns the name of the subsystem, or null if the handle is not registered
+    public String getSubsystemName(final int handle) {
+        return subsystems_.get(handle) ;
+    }
+
+    /// \brief flush any messages buffered by the message destinations
+    public void flush() {
+        for (final MessageDestination dest : destinations_) {
+            dest.flush() ;
+        }
     }
 
     /// \brief enable a given message type
     /// \param mt the message type to enable
-    public void enableMessageType(final MessageType mt) {
-        if (!enabled_types_.contains(mt))
-            enabled_types_.add(mt);
+    public synchronized void enableMessageType(final MessageType mt) {
+        enabled_types_.add(mt);
     }
 
     /// \brief disable a given message type
     /// \param mt the message type to disable
-    public void disableMessageType(final MessageType mt) {
-        if (enabled_types_.contains(mt))
-            enabled_types_.remove(mt);
+    public synchronized void disableMessageType(final MessageType mt) {
+        enabled_types_.remove(mt);
     }
 
     /// \brief returns true if a given message type is enabled
@@ -149,83 +179,76 @@ public final class MessageLogger
 
     /// \brief enable the messages associated with a given subsystem message hangle
     /// \param handle the handle for a given subsystem
-    private void enableLoggerID(final int handle) {
-        if (!enabled_subsystems_.contains(handle))
-            enabled_subsystems_.add(handle);
+    private synchronized void enableLoggerID(final int handle) {
+        enabled_subsystems_.set(handle) ;
     }
 
     /// \brief disable messages given a logger id
     /// \param handle the handle for a given subsystem
-    public void disableLoggerID(final int handle) {
-        if (enabled_subsystems_.contains(handle))
-            enabled_subsystems_.remove(handle);
+    public synchronized void disableLoggerID(final int handle) {
+        enabled_subsystems_.clear(handle) ;
     }
 
     /// \brief returns true if the given logger ID is enabled
     /// \param handle the handle to check to see if its enabled
     /// \returns true if the given logger ID is enabled
     public boolean isLoggerIDEnabled(final int handle) {
-        return enabled_subsystems_.contains(handle);
+        return enabled_subsystems_.get(handle) ;
     }
 
-    /// \brief enable messages for a given subsystem
+    /// \brief enable messages for a given subsystem.  If the subsystem has not been registered yet, its
+    /// messages are enabled when it is registered.
     /// \param name the name of the subsystem to enable
     /// \returns true if the messages are enabled sucessfully
     public boolean enableSubsystem(final String name) {
-        boolean ret = false;
-
-        for (final Integer key : subsystems_.keySet()) {
-            final String subname = subsystems_.get(key);
-            if (subname.equals(name)) {
-                enableLoggerID(key);
-                ret = true;
-                break;
-            }
-        }
-
-        if (!ret)
-        {   
-            if (!to_be_enabled_.contains(name))
-                to_be_enabled_.add(name) ;
-            ret = true ;
-        }
-
-        return ret;
+        return setSubsystemEnabled(name, true) ;
     }
 
     /// \brief disable messages for a given subsystem
     /// \param name the name of the subsystem to disable
     /// \returns true if the messages are disabled sucessfully
     public boolean disableSubsystem(final String name) {
-        boolean ret = false;
-
-        for (final Integer key : subsystems_.keySet()) {
-            final String subname = subsystems_.get(key);
-            if (subname == name) {
-                disableLoggerID(key);
-                ret = true;
-                break;
+        return setSubsystemEnabled(name, false) ;
+    }
+
+    /// \brief enable or disable the messages for a given subsystem.  This can be called at any time
+    /// while the robot is running to change which messages are logged.
+    /// \param name the name of the subsystem
+    /// \param enabled if true the messages are enabled, otherwise they are disabled
+    /// \returns true if the subsystem is registered, or if it was enabled and will be enabled on registration
+    public synchronized boolean setSubsystemEnabled(final String name, final boolean enabled) {
+        final Integer handle = subsystem_ids_.get(name) ;
+
+        if (handle == null) {
+            if (enabled) {
+                to_be_enabled_.add(name) ;
+                return true ;
             }
+
+            to_be_enabled_.remove(name) ;
+            return false ;
         }
 
-        return ret;
+        if (enabled)
+            enableLoggerID(handle) ;
+        else
+            disableLoggerID(handle) ;
+
+        return true ;
     }
 
     /// \brief returns true if the subsystem given is enabled
     /// \param name the name of the subsystem to check for enabled
     /// \returns true if the subsystem given is enabled
     public boolean isSubsystemEnabled(final String name) {
-        boolean ret = false;
-
-        for (final Integer key : subsystems_.keySet()) {
-            final String subname = subsystems_.get(key);
-            if (subname == name) {
-                ret = isLoggerIDEnabled(key);
-                break;
-            }
-        }
+        final Integer handle = subsystem_ids_.get(name) ;
+        return handle != null && isLoggerIDEnabled(handle) ;
+    }
 
-        return ret;
+    /// \brief returns the names of all registered subsystems
+    /// \returns the names of all registered subsystems
+    public synchronized List<String> getSubsystemNames() {
+        return new ArrayList<String>(subsystem_ids_.keySet()) ;
     }
 
     /// \brief start a new message
@@ -240,18 +263,26 @@ public final class MessageLogger
             // We have a nested message, someone forgot to close off the current
             // message.
             //
-            per.message_.append(" DID NOT CALL ENDMESSAGE, serial = ") ;
-            per.message_.append(per.serial_) ;
+            if (per.enabled_) {
+                per.record_.addField(FieldKind.Text, null, " DID NOT CALL ENDMESSAGE, serial = ", 0, 0.0) ;
+                per.record_.addField(FieldKind.Long, null, null, per.serial_, 0.0) ;
+            }
             endMessage();
         }
 
         per.serial_ = getSerial() ;
         per.in_message_ = true;
-        per.message_ = new StringBuilder(80) ;
         per.type_ = mtype;
         per.subsystem_ = subsystem;
         per.enabled_ = enabled_types_.contains(per.type_) && subsystemEnabled(per.subsystem_) ;
 
+        //
+        // The message record is only touched if the message is going to be displayed, so
+        // a filtered message costs no allocation and no lock
+        //
+        if (per.enabled_)
+            per.record_.clear(mtype, subsystem, per.id_) ;
+
         return this;
     }
 
@@ -263,56 +294,87 @@ public final class MessageLogger
     }
 
     private void outputMessage(final ThreadData per)
+    {
+        final MessageRecord rec = per.record_ ;
+        final String subname = (per.subsystem_ == NOSUBSYSTEM) ? null : subsystems_.get(per.subsystem_) ;
+
+        rec.setTime(time_src_ == null ? Double.NaN : time_src_.getTime()) ;
+
+        String[] lines = null ;
+        if (text_destinations_ > 0) {
+            if (per.text_.capacity() > MaxRetainedMessageCapacity)
+                per.text_ = new StringBuilder(InitialMessageCapacity) ;
+            else
+                per.text_.setLength(0) ;
+
+            lines = formatLines(rec, subname, format_, per.text_) ;
+        }
+
+        for (final MessageDestination dest : destinations_) {
+            if (dest instanceof MessageRecordDestination) {
+                ((MessageRecordDestination)dest).displayRecord(rec, subname) ;
+            }
+            else {
+                for(String line : lines)
+                    dest.displayMessage(per.type_, per.subsystem_, line);
+            }
+        }
+    }
+
+    /// \brief format a message record as the lines of text the message logger displays
+    /// \param rec the message record
+    /// \param subname the name of the subsystem for the message, or null
+    /// \param format the format for the time stamp
+    /// \param bld a string builder used to build the text of the message
+    /// \returns the lines of text for the message
+    static String[] formatLines(final MessageRecord rec, final String subname, final DecimalFormat format, final StringBuilder bld)
     {
         String timestr ;
         String threadstr ;
         String typestr ;
         String substr ;
 
-        if (time_src_ == null) {
+        if (Double.isNaN(rec.getTime())) {
             timestr = "???.????";
         } else {
-            timestr = format_.format(time_src_.getTime()) ;
+            timestr = format.format(rec.getTime()) ;
         }
 
-        threadstr = ":" + Long.toString(per.id_) ;
+        threadstr = ":" + Long.toString(rec.getThread()) ;
 
-        typestr = ": " + per.type_.toString() + ": "  ;
+        typestr = ": " + rec.getType().toString() + ": "  ;
 
-        if (per.subsystem_ == 0)
+        if (rec.getSubsystem() == NOSUBSYSTEM)
         {
             substr = "global: ";
         }
         else
         {
-            String subname = subsystems_.get(per.subsystem_) ;
             if (subname != null)
                 substr = subname + ": " ;
             else
-                substr = "missing(" + per.subsystem_ + "): " ;
+                substr = "missing(" + rec.getSubsystem() + "): " ;
         }
 
-        StringBuilder bld = new StringBuilder() ;
+        rec.formatBody(bld) ;
+        String[] lines = bld.toString().split("\n") ;
+
+        bld.setLength(0) ;
         for(int i = 0 ; i < timestr.length() + typestr.length() + threadstr.length() ; i++)
             bld.append(' ') ;
         String spaces = bld.toString() ;
 
-        String[] lines = per.message_.toString().split("\n") ;
         boolean first = true ;
-        for(String line : lines) {
-            String msg ;
-
+        for(int i = 0 ; i < lines.length ; i++) {
             if (first)
-                msg = timestr + threadstr + typestr + substr + line ;
+                lines[i] = timestr + threadstr + typestr + substr + lines[i] ;
             else
-                msg = spaces + substr + line ;
-
-            for (final MessageDestination dest : destinations_) {
-                dest.displayMessage(per.type_, per.subsystem_, msg);
-            }
+                lines[i] = spaces + substr + lines[i] ;
 
             first = false ;
         }
+
+        return lines ;
     }
 
     /// \brief ends the current message
@@ -325,7 +387,7 @@ public final class MessageLogger
         if (!per.in_message_)
             return;
 
-        if (per.message_.length() > 0) {
+        if (per.enabled_ && per.record_.getFieldCount() > 0) {
             if (enabled_types_.contains(per.type_) && subsystemEnabled(per.subsystem_)) {
                 if (per.type_ == MessageType.Error)
                     error_count_++ ;
@@ -337,11 +399,12 @@ public final class MessageLogger
             for (final MessageDestination dest : destinations_) {                
                 dest.displayMessage(per.type_, per.subsystem_, "fatal error occurred - code aborting") ;
             }
+            flush() ;
             System.exit(-2);
         }
 
-        per.message_ = null ;
         per.subsystem_ = 0;
+        per.enabled_ = false ;
         per.in_message_ = false;
     }
 
@@ -351,7 +414,8 @@ public final class MessageLogger
     public MessageLogger add(final String str) {
         final ThreadData per = getPerThreadData();
         if (per.enabled_ && per.in_message_)
-            per.message_.append(str) ;
+            per.record_.addField(FieldKind.Text, null, str, 0, 0.0) ;
+
         return this;
     }
 
@@ -361,14 +425,10 @@ public final class MessageLogger
     /// \returns the MessageLogger object
     public MessageLogger add(final String name, final double value) {
         final ThreadData per = getPerThreadData();
-        if (per.enabled_&& per.in_message_) {
-            per.message_.append(" ") ;
-            per.message_.append(name) ;
-            per.message_.append(" = ") ;
-            per.message_.append(String.format(java.util.Locale.US, "%.4f", value)) ;
-        }
+        if (per.enabled_ && per.in_message_)
+            per.record_.addField(FieldKind.NamedDouble, name, null, 0, value) ;
 
-        return this;        
+        return this;
     }
 
     /// \brief add a name value pair to the message
@@ -377,14 +437,10 @@ public final class MessageLogger
     /// \returns the MessageLogger object
     public MessageLogger add(final String name, final float value) {
         final ThreadData per = getPerThreadData();
-        if (per.enabled_&& per.in_message_) {
-            per.message_.append(" ") ;
-            per.message_.append(name) ;
-            per.message_.append(" = ") ;
-            per.message_.append(String.format(java.util.Locale.US, "%.4f", value)) ;
-        }
+        if (per.enabled_ && per.in_message_)
+            per.record_.addField(FieldKind.NamedDouble, name, null, 0, value) ;
 
-        return this;        
+        return this;
     }
 
     /// \brief add a name value pair to the message
@@ -393,125 +449,109 @@ public final class MessageLogger
     /// \returns the MessageLogger object
     public MessageLogger add(final String name, final int value) {
         final ThreadData per = getPerThreadData();
-        if (per.enabled_&& per.in_message_) {
-            per.message_.append(" ") ;
-            per.message_.append(name) ;
-            per.message_.append(" = ") ;
-            per.message_.append(value) ;
-        }
+        if (per.enabled_ && per.in_message_)
+            per.record_.addField(FieldKind.NamedLong, name, null, value, 0.0) ;
+
+        return this;
+    }
 
-        return this;        
-    }  
-    
     /// \brief add a name value pair to the message
     /// \param name the name to add
     /// \param value the value to add
-    /// \returns the MessageLogger object    
+    /// \returns the MessageLogger object
     public MessageLogger add(final String name, final boolean value) {
         final ThreadData per = getPerThreadData();
-        if (per.enabled_&& per.in_message_) {
-            per.message_.append(" ") ;
-            per.message_.append(name) ;
-            per.message_.append(" = ") ;
-            per.message_.append(value) ;
-        }
+        if (per.enabled_ && per.in_message_)
+            per.record_.addField(FieldKind.NamedBoolean, name, null, value ? 1 : 0, 0.0) ;
+
+        return this;
+    }
 
-        return this;        
-    }  
-    
     /// \brief add a name value pair to the message
     /// \param name the name to add
     /// \param value the value to add
-    /// \returns the MessageLogger object    
+    /// \returns the MessageLogger object
     public MessageLogger add(final String name, final String value) {
         final ThreadData per = getPerThreadData();
-        if (per.enabled_&& per.in_message_) {
-            per.message_.append(" ") ;
-            per.message_.append(name) ;
-            per.message_.append(" = ") ;
-            per.message_.append(value) ;
-        }
+        if (per.enabled_ && per.in_message_)
+            per.record_.addField(FieldKind.NamedString, name, value, 0, 0.0) ;
 
-        return this;        
-    }       
+        return this;
+    }
 
     /// \brief add a quoted string to a messages
     /// \param str the string to add
-    /// \returns the MessageLogger object  
+    /// \returns the MessageLogger object
     public MessageLogger addQuoted(final String str) {
         final ThreadData per = getPerThreadData();
-        if (per.enabled_&& per.in_message_)
-        {
-            per.message_.append("'") ;
-            per.message_.append(str) ;
-            per.message_.append("'") ;
-        }
+        if (per.enabled_ && per.in_message_)
+            per.record_.addField(FieldKind.Quoted, null, str, 0, 0.0) ;
 
         return this;
-    }    
+    }
 
     /// \brief add a character to a messages
     /// \param ch the character to add
-    /// \returns the MessageLogger object  
+    /// \returns the MessageLogger object
     public MessageLogger add(final char ch) {
         final ThreadData per = getPerThreadData();
-        if (per.enabled_&& per.in_message_)
-            per.message_.append(ch) ;
+        if (per.enabled_ && per.in_message_)
+            per.record_.addField(FieldKind.Char, null, null, ch, 0.0) ;
 
-        return this;        
+        return this;
     }
 
     /// \brief add a integer to a messages
     /// \param value the integer to add
-    /// \returns the MessageLogger object     
+    /// \returns the MessageLogger object
     public MessageLogger add(final int value) {
         final ThreadData per = getPerThreadData();
-        if (per.enabled_&& per.in_message_)
-            per.message_.append(value) ;
+        if (per.enabled_ && per.in_message_)
+            per.record_.addField(FieldKind.Long, null, null, value, 0.0) ;
 
         return this;
     }
 
     /// \brief add a value to a messages
     /// \param value the value to add
-    /// \returns the MessageLogger object     
+    /// \returns the MessageLogger object
     public MessageLogger add(final long value) {
         final ThreadData per = getPerThreadData();
-        if (per.enabled_&& per.in_message_)
-            per.message_.append(value) ;
+        if (per.enabled_ && per.in_message_)
+            per.record_.addField(FieldKind.Long, null, null, value, 0.0) ;
 
         return this;
     }
 
     /// \brief add a value to a messages
     /// \param value the value to add
-    /// \returns the MessageLogger object     
+    /// \returns the MessageLogger object
     public MessageLogger add(final boolean value) {
         final ThreadData per = getPerThreadData();
-        if (per.enabled_&& per.in_message_)
-            per.message_.append(value) ;
+        if (per.enabled_ && per.in_message_)
+            per.record_.addField(FieldKind.Boolean, null, null, value ? 1 : 0, 0.0) ;
 
         return this;
     }
 
     /// \brief add a value to a messages
     /// \param value the value to add
-    /// \returns the MessageLogger object     
+    /// \returns the MessageLogger object
     public MessageLogger add(final double value) {
         final ThreadData per = getPerThreadData();
-        if (per.enabled_&& per.in_message_)
-            per.message_.append(String.format(java.util.Locale.US, "%.4f", value)) ;
+        if (per.enabled_ && per.in_message_)
+            per.record_.addField(FieldKind.Double, null, null, 0, value) ;
 
         return this;
     }
 
     /// \brief add a value to a messages
     /// \param value the value to add
-    /// \returns the MessageLogger object     
+    /// \returns the MessageLogger object
     public MessageLogger add(final float value) {
         final ThreadData per = getPerThreadData();
-        if (per.enabled_&& per.in_message_)
-            per.message_.append(String.format(java.util.Locale.US, "%.4f", value)) ;
+        if (per.enabled_ && per.in_message_)
+            per.record_.addField(FieldKind.Double, null, null, 0, value) ;
 
         return this;
     }
@@ -521,28 +561,11 @@ public final class MessageLogger
     }
 
     private boolean subsystemEnabled(final int sub) {
-        return sub == NOSUBSYSTEM || enabled_subsystems_.contains(sub);
+        return sub == NOSUBSYSTEM || enabled_subsystems_.get(sub);
     }
 
     private ThreadData getPerThreadData() {
-        ThreadData per = null;
-
-        synchronized(lock_) {
-            final long id = Thread.currentThread().getId();
-            if (per_thread_data_.containsKey(id))
-            {
-                per = per_thread_data_.get(id) ;
-            }
-            else
-            {
-                per = new ThreadData() ;
-                per.id_ = id ;
-                per.in_message_ = false ;
-                per_thread_data_.put(id, per) ;
-            }
-        }
-
-        return per ;
+        return per_thread_data_.get() ;
     }
 
     private class ThreadData
@@ -552,8 +575,17 @@ public final class MessageLogger
         public boolean enabled_ ;
         public MessageType type_ ;
         public int subsystem_ ;
-        public StringBuilder message_ ;
+        public MessageRecord record_ ;
+        public StringBuilder text_ ;
         public int serial_ ;
+
+        public ThreadData() {
+            id_ = Thread.currentThread().getId() ;
+            in_message_ = false ;
+            enabled_ = false ;
+            record_ = new MessageRecord() ;
+            text_ = new StringBuilder(InitialMessageCapacity) ;
+        }
     } ;
 
 }
\ No newline at end of file
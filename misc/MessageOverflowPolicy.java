@@ -0,0 +1,10 @@
+package org.xero1425.misc ;
+
+/// \file
+
+/// \brief what an asynchronous message destination does when its queue is full
+public enum MessageOverflowPolicy
+{
+    DropOldest,     ///< Discard the oldest queued message to make room for the new one
+    Block           ///< Wait on the producing thread until the writer makes room
+} ;
@@ -0,0 +1,298 @@
+package org.xero1425.misc;
+
+import java.util.Arrays;
+
+/// \file
+
+/// \brief This class holds a single message from the MessageLogger as a list of typed fields.
+///
+/// The MessageLogger captures each add() call as a field in a message record rather than formatting
+/// it into text.  The text of the message is only produced when a destination needs it, so a destination
+/// such as MessageDestinationBinaryFile can store the values without paying for the text formatting.  The
+/// fields are held in parallel arrays that grow as needed and are reused from message to message, so
+/// capturing a field does not allocate once the arrays have reached their working size.
+public class MessageRecord
+{
+    /// \brief the type of a field in a message record
+    public enum FieldKind
+    {
+        Text,               ///< a string added to the message
+        Quoted,             ///< a string added to the message in single quotes
+        Char,               ///< a single character
+        Long,               ///< an integer value
+        Double,             ///< a floating point value
+        Boolean,            ///< a boolean value
+        NamedLong,          ///< a name and integer value pair
+        NamedDouble,        ///< a name and floating point value pair
+        NamedBoolean,       ///< a name and boolean value pair
+        NamedString         ///< a name and string value pair
+    } ;
+
+    //
+    // The initial number of fields a record can hold
+    //
+    private static final int InitialFieldCapacity = 16 ;
+
+    //
+    // All of the field kinds, indexed by ordinal
+    //
+    private static final FieldKind[] Kinds = FieldKind.values() ;
+
+    //
+    // The time of the message, NaN if there is no time source
+    //
+    private double time_ ;
+
+    //
+    // The ID of the thread that produced the message
+    //
+    private long thread_ ;
+
+    //
+    // The type of the message
+    //
+    private MessageType type_ ;
+
+    //
+    // The subsystem ID for the message
+    //
+    private int subsystem_ ;
+
+    //
+    // The number of fields in the message
+    //
+    private int count_ ;
+
+    //
+    // The kind of each field
+    //
+    private FieldKind[] kinds_ ;
+
+    //
+    // The name of each field, or null if the field is not named
+    //
+    private String[] names_ ;
+
+    //
+    // The string value of each field
+    //
+    private String[] strings_ ;
+
+    //
+    // The integer, character, or boolean value of each field
+    //
+    private long[] longs_ ;
+
+    //
+    // The floating point value of each field
+    //
+    private double[] doubles_ ;
+
+    /// \brief create a new empty message record
+    public MessageRecord() {
+        kinds_ = new FieldKind[InitialFieldCapacity] ;
+        names_ = new String[InitialFieldCapacity] ;
+        strings_ = new String[InitialFieldCapacity] ;
+        longs_ = new long[InitialFieldCapacity] ;
+        doubles_ = new double[InitialFieldCapacity] ;
+        clear(MessageType.Info, MessageLogger.NOSUBSYSTEM, 0) ;
+    }
+
+    /// \brief remove all fields from the record and start a new message
+    /// \param type the type of the message
+    /// \param subsystem the subsystem ID for the message
+    /// \param thread the ID of the thread producing the message
+    public void clear(final MessageType type, final int subsystem, final long thread) {
+        for(int i = 0 ; i < count_ ; i++) {
+            names_[i] = null ;
+            strings_[i] = null ;
+        }
+
+        type_ = type ;
+        subsystem_ = subsystem ;
+        thread_ = thread ;
+        time_ = Double.NaN ;
+        count_ = 0 ;
+    }
+
+    /// \brief make this record a copy of another record.  The field arrays are reused, so copying
+    /// does not allocate once they have reached their working size.
+    /// \param other the record to copy
+    public void set(final MessageRecord other) {
+        clear(other.type_, other.subsystem_, other.thread_) ;
+        time_ = other.time_ ;
+        for(int i = 0 ; i < other.count_ ; i++)
+            addField(other.kinds_[i], other.names_[i], other.strings_[i], other.longs_[i], other.doubles_[i]) ;
+    }
+
+    /// \brief set the time stamp for the message
+    /// \param time the time stamp for the message, NaN if not known
+    public void setTime(final double time) {
+        time_ = time ;
+    }
+
+    /// \brief returns the time stamp for the message
+    /// \returns the time stamp for the message, NaN if not known
+    public double getTime() {
+        return time_ ;
+    }
+
+    /// \brief returns the ID of the thread that produced the message
+    /// \returns the ID of the thread that produced the message
+    public long getThread() {
+        return thread_ ;
+    }
+
+    /// \brief returns the type of the message
+    /// \returns the type of the message
+    public MessageType getType() {
+        return type_ ;
+    }
+
+    /// \brief returns the subsystem ID for the message
+    /// \returns the subsystem ID for the message
+    public int getSubsystem() {
+        return subsystem_ ;
+    }
+
+    /// \brief returns the number of fields in the message
+    /// \returns the number of fields in the message
+    public int getFieldCount() {
+        return count_ ;
+    }
+
+    /// \brief returns the kind of a field
+    /// \param i the index of the field
+    /// \returns the kind of a field
+    public FieldKind getKind(final int i) {
+        return kinds_[i] ;
+    }
+
+    /// \brief returns the name of a field
+    /// \param i the index of the field
+    /// \returns the name of a field, or null if the field is not named
+    public String getName(final int i) {
+        return names_[i] ;
+    }
+
+    /// \brief returns the string value of a Text, Quoted, or NamedString field
+    /// \param i the index of the field
+    /// \returns the string value of the field
+    public String getString(final int i) {
+        return strings_[i] ;
+    }
+
+    /// \brief returns the value of a Long, Char, Boolean, NamedLong, or NamedBoolean field.  Boolean
+    /// values are stored as 1 for true and 0 for false.
+    /// \param i the index of the field
+    /// \returns the value of the field
+    public long getLong(final int i) {
+        return longs_[i] ;
+    }
+
+    /// \brief returns the value of a Double or NamedDouble field
+    /// \param i the index of the field
+    /// \returns the value of the field
+    public double getDouble(final int i) {
+        return doubles_[i] ;
+    }
+
+    /// \brief add a field to the record
+    /// \param kind the kind of field
+    /// \param name the name of the field, or null
+    /// \param str the string value of the field, or null
+    /// \param lvalue the integer value of the field
+    /// \param dvalue the floating point value of the field
+    public void addField(final FieldKind kind, final String name, final String str, final long lvalue, final double dvalue) {
+        if (count_ == kinds_.length)
+            grow() ;
+
+        kinds_[count_] = kind ;
+        names_[count_] = name ;
+        strings_[count_] = str ;
+        longs_[count_] = lvalue ;
+        doubles_[count_] = dvalue ;
+        count_++ ;
+    }
+
+    /// \brief add a field to the record given the ordinal of its kind, used when decoding
+    /// \param kind the ordinal of the kind of field
+    /// \param name the name of the field, or null
+    /// \param str the string value of the field, or null
+    /// \param lvalue the integer value of the field
+    /// \param dvalue the floating point value of the field
+    public void addField(final int kind, final String name, final String str, final long lvalue, final double dvalue) {
+        addField(Kinds[kind], name, str, lvalue, dvalue) ;
+    }
+
+    /// \brief append the text of the message, without the time, thread, type, and subsystem
+    /// header, to a string builder.  The text is the same as the MessageLogger has always produced.
+    /// \param bld the string builder to append to
+    public void formatBody(final StringBuilder bld) {
+        for(int i = 0 ; i < count_ ; i++) {
+            switch(kinds_[i]) {
+                case Text:
+                    bld.append(strings_[i]) ;
+                    break ;
+                case Quoted:
+                    bld.append('\'').append(strings_[i]).append('\'') ;
+                    break ;
+                case Char:
+                    bld.append((char)longs_[i]) ;
+                    break ;
+                case Long:
+                    bld.append(longs_[i]) ;
+                    break ;
+                case Double:
+                    bld.append(String.format(java.util.Locale.US, "%.4f", doubles_[i])) ;
+                    break ;
+                case Boolean:
+                    bld.append(longs_[i] != 0) ;
+                    break ;
+                case NamedLong:
+                    bld.append(' ').append(names_[i]).append(" = ").append(longs_[i]) ;
+                    break ;
+                case NamedDouble:
+                    bld.append(' ').append(names_[i]).append(" = ").append(String.format(java.util.Locale.US, "%.4f", doubles_[i])) ;
+                    break ;
+                case NamedBoolean:
+                    bld.append(' ').append(names_[i]).append(" = ").append(longs_[i] != 0) ;
+                    break ;
+                case NamedString:
+                    bld.append(' ').append(names_[i]).append(" = ").append(strings_[i]) ;
+                    break ;
+            }
+        }
+    }
+
+    /// \brief returns the printable form of a single field value, used by the log decoder
+    /// \param i the index of the field
+    /// \returns the printable form of the field value
+    public String formatValue(final int i) {
+        switch(kinds_[i]) {
+            case Char:
+                return String.valueOf((char)longs_[i]) ;
+            case Long:
+            case NamedLong:
+                return Long.toString(longs_[i]) ;
+            case Double:
+            case NamedDouble:
+                return String.format(java.util.Locale.US, "%.4f", doubles_[i]) ;
+            case Boolean:
+            case NamedBoolean:
+                return Boolean.toString(longs_[i] != 0) ;
+            default:
+                return strings_[i] ;
+        }
+    }
+
+    private void grow() {
+        final int size = kinds_.length * 2 ;
+
+        kinds_ = Arrays.copyOf(kinds_, size) ;
+        names_ = Arrays.copyOf(names_, size) ;
+        strings_ = Arrays.copyOf(strings_, size) ;
+        longs_ = Arrays.copyOf(longs_, size) ;
+        doubles_ = Arrays.copyOf(doubles_, size) ;
+    }
+}
@@ -0,0 +1,14 @@
+package org.xero1425.misc ;
+
+/// \file
+
+/// \brief an interface for message destinations that store the typed fields of a message rather than its text.
+/// If all of the destinations for a MessageLogger implement this interface, the logger never formats the text
+/// of a message.
+public interface MessageRecordDestination extends MessageDestination
+{
+    /// \brief display a message record
+    /// \param rec the message record, only valid for the duration of this call
+    /// \param subname the name of the subsystem for the message, or null if the message has no subsystem
+    public abstract void displayRecord(MessageRecord rec, String subname) ;
+}
@@ -0,0 +1,36 @@
+package org.xero1425.misc ;
+
+/// \file
+
+/// \brief a message destination that writes message records to other record destinations from a background thread.
+///
+/// This is the MessageDestinationAsync ring buffer for destinations, such as MessageDestinationBinaryFile, that
+/// store the typed fields of a message.  Each message record is copied into a preallocated record in the ring
+/// buffer, so the MessageLogger still never formats the text of a message.
+public class MessageRecordDestinationAsync extends MessageDestinationAsync implements MessageRecordDestination
+{
+    /// \brief create a new asynchronous message record destination
+    /// \param size the number of messages the ring buffer can hold, rounded up to a power of two
+    /// \param policy what to do when the ring buffer is full
+    public MessageRecordDestinationAsync(final int size, final MessageOverflowPolicy policy) {
+        super(size, policy, true) ;
+    }
+
+    /// \brief add a destination that receives message records from the writer thread.  This must be
+    /// called before start().
+    /// \param d the destination to add, which must be a MessageRecordDestination
+    @Override
+    public void addDestination(final MessageDestination d) {
+        if (!(d instanceof MessageRecordDestination))
+            throw new IllegalArgumentException("MessageRecordDestinationAsync requires a MessageRecordDestination") ;
+
+        super.addDestination(d) ;
+    }
+
+    /// \brief queue a message record to be displayed by the writer thread
+    /// \param rec the message record, only valid for the duration of this call
+    /// \param subname the name of the subsystem for the message, or null if the message has no subsystem
+    public void displayRecord(final MessageRecord rec, final String subname) {
+        displayRecordAsync(rec, subname) ;
+    }
+}
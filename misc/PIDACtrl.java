@@ -39,6 +39,11 @@ public class PIDACtrl
     //
     private double last_error_ ;
 
+    //
+    // The settings for kv, ka, kp, and kd, or null if the constants were given directly
+    //
+    private DoubleSetting[] settings_ ;
+
     //
     // The portion of the output due to V feed forward
     //
@@ -68,10 +73,21 @@ public class PIDACtrl
     /// \param angle if true it is managing an angle between =180 and +180
     public PIDACtrl(ISettingsSupplier settings, String name, boolean angle) 
                     throws BadParameterTypeException, MissingParameterException {
-        kv_ = settings.get(name + ":kv").getDouble() ;
-        ka_ = settings.get(name + ":ka").getDouble() ;
-        kp_ = settings.get(name + ":kp").getDouble() ;
-        kd_ = settings.get(name + ":kd").getDouble() ;
+        this(settings.getDoubleSetting(name + ":kv"), settings.getDoubleSetting(name + ":ka"),
+             settings.getDoubleSetting(name + ":kp"), settings.getDoubleSetting(name + ":kd"), angle) ;
+    }
+
+    /// \brief create a new object that reads its constants from settings handles.  The constants are
+    /// read at the start of each call to getOutput(), so a change to the settings takes effect on the
+    /// next robot loop.
+    /// \param kv the kv value for the controller
+    /// \param ka the ka value for the controller
+    /// \param kp the kp value for the controller
+    /// \param kd the kd value for the controller
+    /// \param angle if true we are controlling an angle quantityt between -180 and +180
+    public PIDACtrl(DoubleSetting kv, DoubleSetting ka, DoubleSetting kp, DoubleSetting kd, boolean angle) {
+        settings_ = new DoubleSetting[] { kv, ka, kp, kd } ;
+        readSettings() ;
         angle_ = angle ;
     }
 
@@ -98,6 +114,9 @@ public class PIDACtrl
     /// \returns the output value for the controller
     public double getOutput(double a, double v, double dtarget, double dactual, double dt) {
         double current_error ;
+
+        if (settings_ != null)
+            readSettings() ;
             
         if (angle_)
             current_error = XeroMath.normalizeAngleDegrees(dtarget - dactual) ;
@@ -114,6 +133,16 @@ public class PIDACtrl
         return output ;
     }
 
+    //
+    // Copy the constants from the settings handles
+    //
+    private void readSettings() {
+        kv_ = settings_[0].get() ;
+        ka_ = settings_[1].get() ;
+        kp_ = settings_[2].get() ;
+        kd_ = settings_[3].get() ;
+    }
+
     /// \brief returns the V portion of the output value
     /// \returns the V portion of the output value
     public double getVPart() {
@@ -39,6 +39,9 @@ public class PIDCtrl
     private double pout_ ;
     private double fout_ ;
 
+    // The settings for kp, ki, kd, kf, min, max, and imax, or null if the constants were given directly
+    private DoubleSetting[] settings_ ;
+
     /// \brief create a new PIDCtrl object with all parameters set to zero
     /// \param isangle if true this PIDCtrl object manages an angular quantity
     public PIDCtrl(boolean isangle) {
@@ -84,6 +87,24 @@ public class PIDCtrl
     /// \param isangle if true it is managing an angle between =180 and +180
     public PIDCtrl(ISettingsSupplier settings, String name, boolean isangle) throws MissingParameterException, BadParameterTypeException {
         init(settings, name) ;
+        is_angle_ = isangle ;
+    }
+
+    /// \brief create a new object that reads its constants from settings handles.  The constants are
+    /// read at the start of each call to getOutput(), so a change to the settings takes effect on the
+    /// next robot loop.
+    /// \param p the proportional constant
+    /// \param i the integral constant
+    /// \param d the derivative constant
+    /// \param f the feedforward constant
+    /// \param minout the minimum output
+    /// \param maxout the maximum output
+    /// \param maxint the maximum integral
+    /// \param isangle if true it is managing an angle between =180 and +180
+    public PIDCtrl(DoubleSetting p, DoubleSetting i, DoubleSetting d, DoubleSetting f, DoubleSetting minout, DoubleSetting maxout, DoubleSetting maxint, boolean isangle) {
+        settings_ = new DoubleSetting[] { p, i, d, f, minout, maxout, maxint } ;
+        readSettings() ;
+        is_angle_ = isangle ;
     }
 
     /// \brief create a new object by reading parameters from the settings parser.
@@ -93,13 +114,16 @@ public class PIDCtrl
     /// \param settings the settings parser
     /// \param name the basename to use to extract params from the settings parser
     public void init(ISettingsSupplier settings, String name)  throws MissingParameterException, BadParameterTypeException {
-        kp_ = settings.get(name + ":kp").getDouble() ;
-        ki_ = settings.get(name + ":ki").getDouble() ;
-        kd_ = settings.get(name + ":kd").getDouble() ;
-        kf_ = settings.get(name + ":kf").getDouble() ;
-        kmin_ = settings.get(name + ":min").getDouble() ;
-        kmax_ = settings.get(name + ":max").getDouble() ;
-        kimax_ = settings.get(name + ":imax").getDouble() ;                                        
+        settings_ = new DoubleSetting[] {
+            settings.getDoubleSetting(name + ":kp"),
+            settings.getDoubleSetting(name + ":ki"),
+            settings.getDoubleSetting(name + ":kd"),
+            settings.getDoubleSetting(name + ":kf"),
+            settings.getDoubleSetting(name + ":min"),
+            settings.getDoubleSetting(name + ":max"),
+            settings.getDoubleSetting(name + ":imax")
+        } ;
+        readSettings() ;
     }
 
     /// \brief return the P component of the PID calculation
@@ -132,6 +156,9 @@ public class PIDCtrl
     /// \param dt the difference in time (delta time) since the last robot loop (should be 20 milliseconds)
     /// \returns the output applied to motors/etc. after performing calculations
     public double getOutput(double target, double current, double dt) {
+        if (settings_ != null)
+            readSettings() ;
+
         double error = calcError(target, current) ;
         double derivative = 0;
 
@@ -184,6 +211,19 @@ public class PIDCtrl
         integral_ = 0.0 ;
     }
     
+    //
+    // Copy the constants from the settings handles
+    //
+    private void readSettings() {
+        kp_ = settings_[0].get() ;
+        ki_ = settings_[1].get() ;
+        kd_ = settings_[2].get() ;
+        kf_ = settings_[3].get() ;
+        kmin_ = settings_[4].get() ;
+        kmax_ = settings_[5].get() ;
+        kimax_ = settings_[6].get() ;
+    }
+
     /// \brief gets the error between current and target position
     /// \param target the target position
     /// \param current the current position
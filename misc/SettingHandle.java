@@ -0,0 +1,33 @@
+package org.xero1425.misc ;
+
+/// \file
+
+/// \brief This class is the base class for typed handles to a single setting.
+///
+/// A handle is looked up by name once, usually when a subsystem or controller is created, and after
+/// that reading its value is a field load with no string building, hashing, or checked exceptions.
+/// The settings supplier that created a handle can point it at a new value when the settings change.
+public abstract class SettingHandle
+{
+    //
+    // The fully qualified name of the setting
+    //
+    private final String name_ ;
+
+    /// \brief create a new handle
+    /// \param name the fully qualified name of the setting
+    protected SettingHandle(String name) {
+        name_ = name ;
+    }
+
+    /// \brief returns the fully qualified name of the setting
+    /// \returns the fully qualified name of the setting
+    public String getName() {
+        return name_ ;
+    }
+
+    /// \brief point the handle at a new value
+    /// \param v the new value for the setting
+    /// \exception throws BadParameterTypeException if the new value is the wrong type for the handle
+    abstract void update(SettingsValue v) throws BadParameterTypeException ;
+}
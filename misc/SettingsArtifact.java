@@ -0,0 +1,233 @@
+package org.xero1425.misc;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import org.json.simple.JSONObject;
+import org.json.simple.JSONValue;
+
+/// \file
+
+/// \brief This class reads and writes a precompiled binary form of a settings file.
+///
+/// Parsing the JSON settings file is one of the slower steps of starting the robot code.  The binary
+/// artifact holds a SettingsSnapshot as a flat table of names and typed values, so it can be loaded
+/// with a memory map and no parsing.  The artifact records a hash of the JSON text and the defines
+/// that were applied, and is only used when both match, so a changed settings file is always parsed.
+/// The artifact is written by JsonSettingsParser the first time the JSON file is parsed, or ahead of
+/// time from the command line.
+///
+/// The artifact is big endian and holds the magic number (int), the version (short), the hash (long),
+/// the defines (short count, then strings), the values (int count, then for each value the name, a type
+/// byte, and the value), and the objects (int count, then for each object the name and its children as a
+/// short count followed by strings).  Strings are an unsigned short length followed by UTF-8 bytes.
+///
+/// usage: SettingsArtifact jsonfile artifactfile [define ...]
+public class SettingsArtifact
+{
+    /// \brief the magic number at the start of the file
+    public static final int Magic = 0x58534554 ;
+
+    /// \brief the version of the file format
+    public static final int Version = 1 ;
+
+    //
+    // The type bytes for each value, the ordinal of the SettingsValue type
+    //
+    private static final SettingsValue.SettingsType[] Types = SettingsValue.SettingsType.values() ;
+
+    /// \brief compute the hash of the text of a JSON settings file
+    /// \param json the bytes of the JSON settings file
+    /// \returns the hash, which combines a CRC32 of the text and its length
+    public static long hash(byte[] json) {
+        CRC32 crc = new CRC32() ;
+        crc.update(json) ;
+        return ((long)json.length << 32) ^ crc.getValue() ;
+    }
+
+    /// \brief read an artifact if it matches the hash and defines given
+    /// \param filename the name of the artifact file
+    /// \param hash the hash of the JSON settings file
+    /// \param defines the defines applied to the settings
+    /// \returns the settings from the artifact, or null if the artifact is missing, does not match, or is corrupt
+    public static SettingsSnapshot read(String filename, long hash, List<String> defines) {
+        if (!new File(filename).exists())
+            return null ;
+
+        try (RandomAccessFile file = new RandomAccessFile(filename, "r") ;
+             FileChannel channel = file.getChannel()) {
+            ByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()) ;
+
+            if (buf.getInt() != Magic || buf.getShort() != Version || buf.getLong() != hash)
+                return null ;
+
+            int count = buf.getShort() ;
+            List<String> fdefines = new ArrayList<String>() ;
+            for(int i = 0 ; i < count ; i++)
+                fdefines.add(readString(buf)) ;
+
+            if (!fdefines.equals(defines))
+                return null ;
+
+            count = buf.getInt() ;
+            Map<String, SettingsValue> values = new HashMap<String, SettingsValue>(count * 2) ;
+            for(int i = 0 ; i < count ; i++) {
+                String name = readString(buf) ;
+                int type = buf.get() ;
+                if (type < 0 || type >= Types.length)
+                    return null ;
+
+                SettingsValue v = null ;
+                switch(Types[type]) {
+                    case Integer:
+                        v = new SettingsValue(buf.getInt()) ;
+                        break ;
+                    case Double:
+                        v = new SettingsValue(buf.getDouble()) ;
+                        break ;
+                    case Boolean:
+                        v = new SettingsValue(buf.get() != 0) ;
+                        break ;
+                    case String:
+                        v = new SettingsValue(readString(buf)) ;
+                        break ;
+                }
+                values.put(name, v) ;
+            }
+
+            count = buf.getInt() ;
+            Map<String, List<String>> children = new HashMap<String, List<String>>(count * 2) ;
+            for(int i = 0 ; i < count ; i++) {
+                String name = readString(buf) ;
+                String[] kids = new String[buf.getShort() & 0xffff] ;
+                for(int j = 0 ; j < kids.length ; j++)
+                    kids[j] = readString(buf) ;
+                children.put(name, Collections.unmodifiableList(Arrays.asList(kids))) ;
+            }
+
+            return new SettingsSnapshot(values, children) ;
+        }
+        catch(IOException | BufferUnderflowException | IllegalArgumentException ex) {
+            return null ;
+        }
+    }
+
+    /// \brief write an artifact
+    /// \param filename the name of the artifact file
+    /// \param hash the hash of the JSON settings file
+    /// \param defines the defines applied to the settings
+    /// \param settings the settings to write
+    public static void write(String filename, long hash, List<String> defines, SettingsSnapshot settings) throws IOException {
+        //
+        // Write to a temporary file and rename it, so a partially written artifact is never read
+        //
+        File tmp = new File(filename + ".tmp") ;
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 65536))) {
+            out.writeInt(Magic) ;
+            out.writeShort(Version) ;
+            out.writeLong(hash) ;
+
+            out.writeShort(defines.size()) ;
+            for(String define : defines)
+                writeString(out, define) ;
+
+            out.writeInt(settings.getNames().size()) ;
+            for(String name : settings.getNames()) {
+                SettingsValue v = settings.get(name) ;
+                writeString(out, name) ;
+                out.writeByte(v.getType().ordinal()) ;
+
+                try {
+                    switch(v.getType()) {
+                        case Integer:
+                            out.writeInt(v.getInteger()) ;
+                            break ;
+                        case Double:
+                            out.writeDouble(v.getDouble()) ;
+                            break ;
+                        case Boolean:
+                            out.writeByte(v.getBoolean() ? 1 : 0) ;
+                            break ;
+                        case String:
+                            writeString(out, v.getString()) ;
+                            break ;
+                    }
+                }
+                catch(BadParameterTypeException ex) {
+                    // Cannot happen, the type was checked above
+                }
+            }
+
+            out.writeInt(settings.getObjectNames().size()) ;
+            for(String name : settings.getObjectNames()) {
+                List<String> kids = settings.getChildren(name) ;
+                writeString(out, name) ;
+                out.writeShort(kids.size()) ;
+                for(String kid : kids)
+                    writeString(out, kid) ;
+            }
+        }
+
+        File dest = new File(filename) ;
+        if (!tmp.renameTo(dest)) {
+            dest.delete() ;
+            if (!tmp.renameTo(dest))
+                throw new IOException("cannot rename '" + tmp.getPath() + "' to '" + filename + "'") ;
+        }
+    }
+
+    /// \brief compile a JSON settings file into an artifact from the command line
+    /// \param args the command line arguments
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.err.println("usage: SettingsArtifact jsonfile artifactfile [define ...]") ;
+            System.exit(1) ;
+        }
+
+        try {
+            byte[] encoded = Files.readAllBytes(Paths.get(args[0])) ;
+            Object obj = JSONValue.parse(new String(encoded)) ;
+            if (!(obj instanceof JSONObject))
+                throw new IOException("file does not contain a JSON object") ;
+
+            List<String> defines = Arrays.asList(Arrays.copyOfRange(args, 2, args.length)) ;
+            write(args[1], hash(encoded), defines, SettingsSnapshot.fromJson((JSONObject)obj, defines)) ;
+        }
+        catch(Exception ex) {
+            System.err.println("cannot compile settings file '" + args[0] + "' - " + ex.getMessage()) ;
+            System.exit(1) ;
+        }
+    }
+
+    private static String readString(ByteBuffer buf) {
+        byte[] bytes = new byte[buf.getShort() & 0xffff] ;
+        buf.get(bytes) ;
+        return new String(bytes, StandardCharsets.UTF_8) ;
+    }
+
+    private static void writeString(DataOutputStream out, String str) throws IOException {
+        byte[] bytes = str.getBytes(StandardCharsets.UTF_8) ;
+        if (bytes.length > 0xffff)
+            throw new IOException("setting string is too long") ;
+
+        out.writeShort(bytes.length) ;
+        out.write(bytes) ;
+    }
+}
@@ -0,0 +1,145 @@
+package org.xero1425.misc;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.json.simple.JSONObject;
+
+/// \file
+
+/// \brief This class is an immutable index of every setting in a settings file.
+///
+/// The JSON tree is walked once, and every value is stored in a hash map under its fully qualified
+/// name (e.g. subsystems:tankdrive:width).  Conditional values that depend on a define, such as
+/// COMPETITION or PRACTICE, are resolved while the index is built, so looking up a setting is a single
+/// hash probe that returns the same SettingsValue object every time.  The names of the children of
+/// every JSON object are kept in a second map to answer getAllKeys() queries.
+public class SettingsSnapshot
+{
+    //
+    // The values, indexed by fully qualified name
+    //
+    private final Map<String, SettingsValue> values_ ;
+
+    //
+    // The names of the children of each JSON object, indexed by fully qualified name.  The
+    // top level object has the empty name.
+    //
+    private final Map<String, List<String>> children_ ;
+
+    /// \brief create a new snapshot from a set of values and children
+    /// \param values the values, indexed by fully qualified name
+    /// \param children the names of the children of each object, indexed by fully qualified name
+    public SettingsSnapshot(Map<String, SettingsValue> values, Map<String, List<String>> children) {
+        values_ = values ;
+        children_ = children ;
+    }
+
+    /// \brief create a new snapshot from a JSON settings object
+    /// \param contents the top level JSON object from the settings file
+    /// \param defines the defines used to resolve conditional values, in priority order
+    /// \returns the new snapshot
+    public static SettingsSnapshot fromJson(JSONObject contents, List<String> defines) {
+        Map<String, SettingsValue> values = new HashMap<String, SettingsValue>() ;
+        Map<String, List<String>> children = new HashMap<String, List<String>>() ;
+
+        addObject("", contents, defines, values, children) ;
+        return new SettingsSnapshot(values, children) ;
+    }
+
+    /// \brief return the value of a setting
+    /// \param name the fully qualified name of the setting
+    /// \returns the value of the setting, or null if it does not exist
+    public SettingsValue get(String name) {
+        return values_.get(name) ;
+    }
+
+    /// \brief return the names of the children of a JSON object in the settings
+    /// \param path the fully qualified name of the JSON object
+    /// \returns the names of the children, which is empty if the path is not an object, or null if
+    /// the parent of the path is not an object
+    public List<String> getChildren(String path) {
+        List<String> ret = children_.get(path) ;
+        if (ret != null)
+            return ret ;
+
+        int index = path.lastIndexOf(':') ;
+        String parent = (index == -1) ? "" : path.substring(0, index) ;
+        if (!children_.containsKey(parent))
+            return null ;
+
+        return Collections.emptyList() ;
+    }
+
+    /// \brief returns the fully qualified names of all of the values
+    /// \returns the fully qualified names of all of the values
+    public Set<String> getNames() {
+        return Collections.unmodifiableSet(values_.keySet()) ;
+    }
+
+    /// \brief returns the fully qualified names of all of the JSON objects
+    /// \returns the fully qualified names of all of the JSON objects
+    public Set<String> getObjectNames() {
+        return Collections.unmodifiableSet(children_.keySet()) ;
+    }
+
+    private static void addObject(String path, JSONObject obj, List<String> defines, Map<String, SettingsValue> values, Map<String, List<String>> children) {
+        List<String> names = new ArrayList<String>() ;
+
+        for(Object entry : obj.entrySet()) {
+            @SuppressWarnings("unchecked")
+            Map.Entry<Object, Object> e = (Map.Entry<Object, Object>)entry ;
+            String key = e.getKey().toString() ;
+            String name = path.isEmpty() ? key : path + ":" + key ;
+            Object value = e.getValue() ;
+
+            names.add(key) ;
+
+            if (value instanceof JSONObject) {
+                JSONObject child = (JSONObject)value ;
+                addObject(name, child, defines, values, children) ;
+
+                //
+                // This might be a conditional definiton based on a define
+                //
+                for(String define : defines) {
+                    if (child.containsKey(define)) {
+                        value = child.get(define) ;
+                        break ;
+                    }
+                }
+            }
+
+            SettingsValue v = toValue(value) ;
+            if (v != null)
+                values.put(name, v) ;
+        }
+
+        children.put(path, Collections.unmodifiableList(names)) ;
+    }
+
+    private static SettingsValue toValue(Object value) {
+        SettingsValue v = null ;
+
+        if (value instanceof Double) {
+            v = new SettingsValue((Double)value) ;
+        }
+        else if (value instanceof Integer) {
+            v = new SettingsValue((Integer)value) ;
+        }
+        else if (value instanceof Long) {
+            v = new SettingsValue((Long)value) ;
+        }
+        else if (value instanceof Boolean) {
+            v = new SettingsValue((Boolean)value) ;
+        }
+        else if (value instanceof String) {
+            v = new SettingsValue((String)value) ;
+        }
+
+        return v ;
+    }
+}
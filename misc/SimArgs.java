@@ -3,10 +3,51 @@ package org.xero1425.misc ;
 /// \file
 
 /// \brief simulation arguments that need to be sorted in a global scope
+///
+/// These are set from the command line by calling parse() from the main() of the robot program, before
+/// the robot is started with RobotBase.startRobot().  The arguments are
+///
+///     --simfile name      the stimulus file to run, without the .json extension
+///     --logfile name      the name of the log file
+///     --headless          run the simulation headless
+///
+/// SimulationRunner starts each simulation with a command such as
+/// <em>java -jar robot.jar --simfile {sim} --logfile {log} --headless</em>.
 public class SimArgs {
     /// \brief the name of the logfile
     public static String LogFileName = null ;
 
     /// \brief the name of the input stimulus file
     public static String InputFileName = null ;
+
+    /// \brief if true, the simulation runs headless, stepping the robot time in fixed steps as fast as possible
+    public static boolean Headless = false ;
+
+    /// \brief set the simulation arguments from the command line
+    /// \param args the command line arguments
+    /// \returns true if the arguments are valid, false if an error was printed
+    public static boolean parse(String[] args) {
+        for(int i = 0 ; i < args.length ; i++) {
+            if (args[i].equals("--headless")) {
+                Headless = true ;
+            }
+            else if (args[i].equals("--simfile") || args[i].equals("--logfile")) {
+                if (i + 1 == args.length) {
+                    System.err.println("SimArgs: option '" + args[i] + "' has no value") ;
+                    return false ;
+                }
+
+                if (args[i].equals("--simfile"))
+                    InputFileName = args[++i] ;
+                else
+                    LogFileName = args[++i] ;
+            }
+            else {
+                System.err.println("SimArgs: unknown option '" + args[i] + "'") ;
+                return false ;
+            }
+        }
+
+        return true ;
+    }
 } ;
@@ -0,0 +1,193 @@
+package org.xero1425.misc ;
+
+import java.util.Arrays ;
+
+/// \file
+
+/// \brief This class keeps a histogram of durations in nanoseconds in a fixed amount of memory.
+///
+/// The buckets are arranged the same way as an HdrHistogram.  Each power of two range of values is
+/// split into a fixed number of linear sub-buckets, so every value is recorded with the same relative
+/// precision (about 6%) no matter how large it is, and recording a value is a few bit operations and an
+/// array increment.  The exact minimum, maximum, and total are tracked alongside the buckets, so only
+/// percentiles are approximate.  Values larger than the largest bucket are counted in the largest bucket.
+public class TimingHistogram
+{
+    //
+    // The number of bits of precision for each power of two range
+    //
+    private static final int SubBucketBits = 4 ;
+
+    //
+    // The number of linear sub-buckets in each power of two range
+    //
+    private static final int SubBucketCount = 1 << SubBucketBits ;
+
+    //
+    // The largest power of two tracked, about 18 minutes in nanoseconds
+    //
+    private static final int MaxBits = 40 ;
+
+    //
+    // The total number of buckets
+    //
+    private static final int BucketCount = SubBucketCount * (MaxBits - SubBucketBits + 2) ;
+
+    //
+    // The name of the thing being timed
+    //
+    private String name_ ;
+
+    //
+    // The number of values in each bucket
+    //
+    private long[] counts_ ;
+
+    //
+    // The number of values recorded
+    //
+    private long count_ ;
+
+    //
+    // The sum of the values recorded
+    //
+    private long total_ ;
+
+    //
+    // The smallest value recorded
+    //
+    private long min_ ;
+
+    //
+    // The largest value recorded
+    //
+    private long max_ ;
+
+    //
+    // The most recent value recorded
+    //
+    private long last_ ;
+
+    /// \brief create a new empty histogram
+    /// \param name the name of the thing being timed
+    public TimingHistogram(String name) {
+        name_ = name ;
+        counts_ = new long[BucketCount] ;
+        reset() ;
+    }
+
+    /// \brief returns the name of the thing being timed
+    /// \returns the name of the thing being timed
+    public String getName() {
+        return name_ ;
+    }
+
+    /// \brief remove all values from the histogram
+    public void reset() {
+        Arrays.fill(counts_, 0) ;
+        count_ = 0 ;
+        total_ = 0 ;
+        min_ = Long.MAX_VALUE ;
+        max_ = 0 ;
+        last_ = 0 ;
+    }
+
+    /// \brief record a duration
+    /// \param nanos the duration in nanoseconds
+    public void record(long nanos) {
+        if (nanos < 0)
+            nanos = 0 ;
+
+        counts_[bucketIndex(nanos)]++ ;
+        count_++ ;
+        total_ += nanos ;
+        last_ = nanos ;
+
+        if (nanos < min_)
+            min_ = nanos ;
+
+        if (nanos > max_)
+            max_ = nanos ;
+    }
+
+    /// \brief returns the number of values recorded
+    /// \returns the number of values recorded
+    public long getCount() {
+        return count_ ;
+    }
+
+    /// \brief returns the most recent value recorded in nanoseconds
+    /// \returns the most recent value recorded in nanoseconds
+    public long getLast() {
+        return last_ ;
+    }
+
+    /// \brief returns the smallest value recorded in nanoseconds
+    /// \returns the smallest value recorded in nanoseconds, or zero if no values are recorded
+    public long getMin() {
+        return count_ == 0 ? 0 : min_ ;
+    }
+
+    /// \brief returns the largest value recorded in nanoseconds
+    /// \returns the largest value recorded in nanoseconds
+    public long getMax() {
+        return max_ ;
+    }
+
+    /// \brief returns the mean of the values recorded in nanoseconds
+    /// \returns the mean of the values recorded in nanoseconds, or zero if no values are recorded
+    public double getMean() {
+        return count_ == 0 ? 0.0 : (double)total_ / (double)count_ ;
+    }
+
+    /// \brief returns the value below which the given percentage of the values fall
+    /// \param percent the percentage, between 0 and 100
+    /// \returns the value in nanoseconds, accurate to the precision of the buckets
+    public long getPercentile(double percent) {
+        if (count_ == 0)
+            return 0 ;
+
+        long target = (long)Math.ceil(count_ * percent / 100.0) ;
+        if (target < 1)
+            target = 1 ;
+
+        long seen = 0 ;
+        for(int i = 0 ; i < BucketCount ; i++) {
+            seen += counts_[i] ;
+            if (seen >= target) {
+                if (i == BucketCount - 1)
+                    return max_ ;
+
+                //
+                // Report the top of the bucket, but never more than the largest value seen
+                //
+                return Math.max(min_, Math.min(max_, bucketLowValue(i + 1) - 1)) ;
+            }
+        }
+
+        return max_ ;
+    }
+
+    private static int bucketIndex(long value) {
+        if (value < SubBucketCount)
+            return (int)value ;
+
+        final int msb = 63 - Long.numberOfLeadingZeros(value) ;
+        if (msb >= MaxBits)
+            return BucketCount - 1 ;
+
+        final int exp = msb - SubBucketBits + 1 ;
+        final int mantissa = (int)(value >> (msb - SubBucketBits)) - SubBucketCount ;
+        return exp * SubBucketCount + mantissa ;
+    }
+
+    private static long bucketLowValue(int index) {
+        final int exp = index / SubBucketCount ;
+        final int mantissa = index % SubBucketCount ;
+
+        if (exp == 0)
+            return mantissa ;
+
+        return (long)(SubBucketCount + mantissa) << (exp - 1) ;
+    }
+}
@@ -19,6 +19,12 @@ public class TrapezoidalProfile {
     //
     private double maxv_ ;
 
+    //
+    // The settings for the maximum acceleration, deceleration, and velocity, or null if the values were
+    // given directly
+    //
+    private DoubleSetting[] settings_ ;
+
     //
     // The time spend accelerating
     //
@@ -81,9 +87,20 @@ public class TrapezoidalProfile {
     /// \param settings the settings file parser
     /// \param name the basename used to look up parameters.
     public TrapezoidalProfile(ISettingsSupplier settings, String name) throws BadParameterTypeException, MissingParameterException {
-        maxa_ = settings.get(name + ":maxa").getDouble() ;
-        maxd_ = settings.get(name + ":maxd").getDouble() ;
-        maxv_ = settings.get(name + ":maxv").getDouble() ;
+        this(settings.getDoubleSetting(name + ":maxa"), settings.getDoubleSetting(name + ":maxd"), settings.getDoubleSetting(name + ":maxv")) ;
+    }
+
+    /// \brief create the object reading the performance characteristics from settings handles.  The
+    /// values are read each time update() computes a new profile, so a profile in progress is not changed
+    /// by a change to the settings.
+    /// \param accel the maximum acceleration
+    /// \param decel the maximum deceleration
+    /// \param maxv the maximum velocity
+    public TrapezoidalProfile(DoubleSetting accel, DoubleSetting decel, DoubleSetting maxv) {
+        settings_ = new DoubleSetting[] { accel, decel, maxv } ;
+        maxa_ = accel.get() ;
+        maxd_ = decel.get() ;
+        maxv_ = maxv.get() ;
     }
 
     /// \brief create a speed profile that covers the distance given, with the start and end velocities as conditions
@@ -92,6 +109,12 @@ public class TrapezoidalProfile {
     /// \param start_velocity the start velocity of the object
     /// \param end_velocity the end velocity of the object
     public void update(double dist, double start_velocity, double end_velocity) {
+        if (settings_ != null) {
+            maxa_ = settings_[0].get() ;
+            maxd_ = settings_[1].get() ;
+            maxv_ = settings_[2].get() ;
+        }
+
         start_velocity_ = Math.abs(start_velocity) ;
         end_velocity_ = Math.abs(end_velocity) ;
 
@@ -1,14 +1,57 @@
 package org.xero1425.misc ;
 
-import java.util.ArrayList ;
+import java.util.Arrays ;
 
 /// \file
 
 /// \brief This class represents a single path to be followed by the robot drive base
 /// The XeroPath object has a name and a set of X and Y data points for both the left and right sides
 /// of the drivebase
+///
+/// The data for each wheel is stored one column at a time, with one array of doubles for each of the time,
+/// x, y, position, velocity, acceleration, jerk, and heading columns.  The accessors such as getX() read a
+/// single value without allocating memory, and a XeroPathCursor gives a segment style view of the path that
+/// can be moved from point to point.  getSegment() and getSegments() create new objects on each call and
+/// should not be used in code run every robot loop.
+///
+/// sampleAt() returns the values of a path at any time by interpolating between the points before and after
+/// that time, so a follower can track the elapsed time rather than assuming each robot loop is one point.
+/// pointAtDistance() does the same for a distance along the path, using a table of the distance traveled
+/// along the x and y positions to each point.
 public class XeroPath
 {
+    /// \brief the column holding the time for each point
+    public static final int Time = 0 ;
+
+    /// \brief the column holding the x position for each point
+    public static final int X = 1 ;
+
+    /// \brief the column holding the y position for each point
+    public static final int Y = 2 ;
+
+    /// \brief the column holding the distance along the path for each point
+    public static final int Position = 3 ;
+
+    /// \brief the column holding the velocity for each point
+    public static final int Velocity = 4 ;
+
+    /// \brief the column holding the acceleration for each point
+    public static final int Accel = 5 ;
+
+    /// \brief the column holding the jerk for each point
+    public static final int Jerk = 6 ;
+
+    /// \brief the column holding the heading for each point
+    public static final int Heading = 7 ;
+
+    /// \brief the number of columns for each point
+    public static final int Columns = 8 ;
+
+    //
+    // The number of points allocated for a wheel when the first point is added
+    //
+    private static final int InitialCapacity = 64 ;
+
     //
     // The name of the path
     //
@@ -20,9 +63,37 @@ public class XeroPath
     private int data_count_ ;
 
     //
-    // The set of segment for the left side of the robot
+    // The data for each wheel, indexed by wheel, then column, then point
+    //
+    private double[][][] data_ ;
+
+    //
+    // The number of points stored for each wheel
+    //
+    private int[] sizes_ ;
+
+    //
+    // The time between points for each wheel, zero if the points are not evenly spaced, or NaN if this
+    // has not been computed since the last point was added
     //
-    private ArrayList<ArrayList<XeroPathSegment>> data_ ;
+    private double[] steps_ ;
+
+    //
+    // The distance along the x and y positions from the first point to each point, for each wheel, or
+    // null if the table has not been built since the last point was added
+    //
+    private double[][] arcs_ ;
+
+    //
+    // The spatial index for each wheel, or null if it has not been built since the last point was added
+    //
+    private XeroPathSpatialIndex[] indexes_ ;
+
+    //
+    // The largest difference from the average time between points that still counts as evenly spaced,
+    // as a fraction of the average time between points
+    //
+    private static final double StepTolerance = 1.0e-3 ;
 
     /// \brief create a new path with the name given
     /// \param name the name of the path
@@ -30,12 +101,31 @@ public class XeroPath
     public XeroPath(String name, int data_count) throws Exception {
         name_ = name ;
         data_count_ = data_count ;
-        data_ = new ArrayList<ArrayList<XeroPathSegment>>() ;
+        data_ = new double[data_count][Columns][0] ;
+        sizes_ = new int[data_count] ;
+        steps_ = new double[data_count] ;
+        Arrays.fill(steps_, Double.NaN) ;
+        indexes_ = new XeroPathSpatialIndex[data_count] ;
+        arcs_ = new double[data_count][] ;
+    }
 
-        for(int i = 0 ; i < data_count ; i++)
-        {
-            data_.add(new ArrayList<XeroPathSegment>()) ;
-        }
+    /// \brief create a new path from column data that has already been read.  The arrays are kept
+    /// by the path and must not be changed after this call.
+    /// \param name the name of the path
+    /// \param data the data for each wheel, indexed by wheel, then column, then point.  All arrays must be
+    /// the same length.
+    public XeroPath(String name, double[][][] data) {
+        name_ = name ;
+        data_count_ = data.length ;
+        data_ = data ;
+        sizes_ = new int[data.length] ;
+        steps_ = new double[data.length] ;
+        Arrays.fill(steps_, Double.NaN) ;
+        indexes_ = new XeroPathSpatialIndex[data.length] ;
+        arcs_ = new double[data.length][] ;
+
+        for(int i = 0 ; i < data.length ; i++)
+            sizes_[i] = data[i][0].length ;
     }
 
     /// \brief return the path type
@@ -53,22 +143,215 @@ public class XeroPath
     /// \brief returns the number of data points in the path
     /// \returns the numer of data points in the path
     public int getSize() {
-        return data_.get(0).size() ;
+        return sizes_[0] ;
     }
 
     /// \brief returns the duration of the path in seconds
     /// \returns the duration of the path in seconds
     public double getDuration() {
-        ArrayList<XeroPathSegment> seg = data_.get(0) ;
-        return seg.get(seg.size() - 1).getTime() ;
+        return data_[0][Time][sizes_[0] - 1] ;
+    }
+
+    /// \brief returns a single value from the path
+    /// \param which which wheel to return data for
+    /// \param column the column to return, such as XeroPath.Velocity
+    /// \param index the index of the point
+    /// \returns the value of the column at the point given
+    public double get(int which, int column, int index) {
+        return data_[which][column][index] ;
+    }
+
+    /// \brief returns the time for a point in the path
+    /// \param which which wheel to return data for
+    /// \param index the index of the point
+    /// \returns the time for the point
+    public double getTime(int which, int index) {
+        return data_[which][Time][index] ;
+    }
+
+    /// \brief returns the x position for a point in the path
+    /// \param which which wheel to return data for
+    /// \param index the index of the point
+    /// \returns the x position for the point
+    public double getX(int which, int index) {
+        return data_[which][X][index] ;
+    }
+
+    /// \brief returns the y position for a point in the path
+    /// \param which which wheel to return data for
+    /// \param index the index of the point
+    /// \returns the y position for the point
+    public double getY(int which, int index) {
+        return data_[which][Y][index] ;
+    }
+
+    /// \brief returns the distance along the path for a point in the path
+    /// \param which which wheel to return data for
+    /// \param index the index of the point
+    /// \returns the distance along the path for the point
+    public double getPosition(int which, int index) {
+        return data_[which][Position][index] ;
+    }
+
+    /// \brief returns the velocity for a point in the path
+    /// \param which which wheel to return data for
+    /// \param index the index of the point
+    /// \returns the velocity for the point
+    public double getVelocity(int which, int index) {
+        return data_[which][Velocity][index] ;
+    }
+
+    /// \brief returns the acceleration for a point in the path
+    /// \param which which wheel to return data for
+    /// \param index the index of the point
+    /// \returns the acceleration for the point
+    public double getAccel(int which, int index) {
+        return data_[which][Accel][index] ;
+    }
+
+    /// \brief returns the jerk for a point in the path
+    /// \param which which wheel to return data for
+    /// \param index the index of the point
+    /// \returns the jerk for the point
+    public double getJerk(int which, int index) {
+        return data_[which][Jerk][index] ;
+    }
+
+    /// \brief returns the heading for a point in the path
+    /// \param which which wheel to return data for
+    /// \param index the index of the point
+    /// \returns the heading for the point
+    public double getHeading(int which, int index) {
+        return data_[which][Heading][index] ;
+    }
+
+    /// \brief sample the first wheel of the path at a time, see sampleAt(int, double, double[])
+    /// \param t the time since the start of the path in seconds
+    /// \param out the array that receives the values, indexed by column, must hold at least Columns values
+    /// \returns the index of the last point at or before the time
+    public int sampleAt(double t, double[] out) {
+        return sampleAt(0, t, out) ;
+    }
+
+    /// \brief sample one wheel of the path at a time.  Each column is interpolated between the points before
+    /// and after the time, and the heading is interpolated the short way around the circle.  Times before the
+    /// start or after the end of the path return the first or last point.  The point before the time is found
+    /// directly when the points are evenly spaced in time, and with a binary search otherwise.
+    /// \param which which wheel to sample
+    /// \param t the time since the start of the path in seconds
+    /// \param out the array that receives the values, indexed by column, must hold at least Columns values
+    /// \returns the index of the last point at or before the time
+    public int sampleAt(int which, double t, double[] out) {
+        double[][] cols = data_[which] ;
+        double[] times = cols[Time] ;
+        int last = sizes_[which] - 1 ;
+
+        if (last <= 0 || t <= times[0]) {
+            copyPoint(cols, 0, out) ;
+            return 0 ;
+        }
+
+        if (t >= times[last]) {
+            copyPoint(cols, last, out) ;
+            return last ;
+        }
+
+        int index = findIndex(which, t) ;
+        double span = times[index + 1] - times[index] ;
+        double f = (span > 0.0) ? (t - times[index]) / span : 0.0 ;
+
+        interpolate(cols, index, f, out) ;
+        out[Time] = t ;
+
+        return index ;
     }
 
-    /// \brief returns a single segment of the path for the requested side of the robot
+    /// \brief returns the distance along the x and y positions of one wheel of the path from the first point
+    /// to a point.  The table of distances is built the first time it is needed.
+    /// \param which which wheel of the path
+    /// \param index the index of the point
+    /// \returns the distance from the first point to the point given
+    public double getArcLength(int which, int index) {
+        return getArcs(which)[index] ;
+    }
+
+    /// \brief returns the distance along the x and y positions of one wheel of the path from the first point
+    /// to the last point
+    /// \param which which wheel of the path
+    /// \returns the length of the path
+    public double getLength(int which) {
+        double[] arcs = getArcs(which) ;
+        return arcs[arcs.length - 1] ;
+    }
+
+    /// \brief find the point a distance along one wheel of the path.  Each column is interpolated between
+    /// the points before and after the distance, as in sampleAt().  Distances before the start or after the end
+    /// of the path return the first or last point.  The point is found with a binary search of the table of
+    /// distances, so the cost does not depend on the distance.
+    /// \param which which wheel of the path
+    /// \param s the distance from the first point along the x and y positions
+    /// \param out the array that receives the values, indexed by column, must hold at least Columns values
+    /// \returns the index of the last point at or before the distance
+    public int pointAtDistance(int which, double s, double[] out) {
+        double[][] cols = data_[which] ;
+        double[] arcs = getArcs(which) ;
+        int last = sizes_[which] - 1 ;
+
+        if (last <= 0 || s <= 0.0) {
+            copyPoint(cols, 0, out) ;
+            return 0 ;
+        }
+
+        if (s >= arcs[last]) {
+            copyPoint(cols, last, out) ;
+            return last ;
+        }
+
+        int lo = 0 ;
+        int hi = last ;
+        while (hi - lo > 1) {
+            int mid = (lo + hi) >>> 1 ;
+            if (arcs[mid] <= s)
+                lo = mid ;
+            else
+                hi = mid ;
+        }
+
+        double span = arcs[lo + 1] - arcs[lo] ;
+        double f = (span > 0.0) ? (s - arcs[lo]) / span : 0.0 ;
+        interpolate(cols, lo, f, out) ;
+
+        return lo ;
+    }
+
+    /// \brief returns the index used to find the segment of one wheel of the path closest to a point.  The
+    /// index is built the first time it is requested, so this should be called when an action is created
+    /// rather than in the robot loop.
+    /// \param which which wheel of the path to return the index for
+    /// \returns the index for the wheel
+    public XeroPathSpatialIndex getSpatialIndex(int which) {
+        if (indexes_[which] == null)
+            indexes_[which] = new XeroPathSpatialIndex(this, which) ;
+
+        return indexes_[which] ;
+    }
+
+    /// \brief returns a cursor that views the points of one wheel of the path as segments
+    /// \param which which wheel the cursor views
+    /// \returns a cursor at the first point of the path
+    public XeroPathCursor getCursor(int which) {
+        return new XeroPathCursor(this, which) ;
+    }
+
+    /// \brief returns a single segment of the path for the requested side of the robot.  The
+    /// segment is a new object, so use the accessors or a cursor in code run every robot loop.
     /// \param which which wheel to return data for
     /// \param index the index of the segment to return
     /// \returns a single segment of the path for the requested side of the robot
     public XeroPathSegment getSegment(int which, int index) {
-        return data_.get(which).get(index) ;
+        double[][] cols = data_[which] ;
+        return new XeroPathSegment(cols[Time][index], cols[X][index], cols[Y][index], cols[Position][index],
+                                   cols[Velocity][index], cols[Accel][index], cols[Jerk][index], cols[Heading][index]) ;
     }
 
     /// \brief return the segment associated with each wheel
@@ -76,7 +359,7 @@ public class XeroPath
     /// \returns the set of segments for all wheels for the given index
     public XeroPathSegment[] getSegments(int index)
     {
-        XeroPathSegment[] ret = new XeroPathSegment[data_.size()] ;
+        XeroPathSegment[] ret = new XeroPathSegment[data_.length] ;
         for(int i = 0 ; i < ret.length ; i++)
         {
             ret[i] = getSegment(i, index) ;
@@ -90,23 +373,189 @@ public class XeroPath
     /// \param seg the segment value to add to the path
     public void addPathSegment(int which, XeroPathSegment seg) throws Exception
     {
-        if (which >= data_.size())
+        addPathSegment(which, seg.getTime(), seg.getX(), seg.getY(), seg.getPosition(), seg.getVelocity(),
+                       seg.getAccel(), seg.getJerk(), seg.getHeading()) ;
+    }
+
+    /// \brief adds a new point to one wheel of the path without creating a segment
+    /// \param which which wheel of the path to add to
+    /// \param time the time since the start of this path for this point
+    /// \param x the x coordinate relative to the start point of the path
+    /// \param y the y coordinate relative to the start point of the path
+    /// \param dist the distance along the path sicne the start of the path
+    /// \param vel the velocity at this point of the path
+    /// \param accel the acceleration at this point of the path
+    /// \param jerk the jerk at this point of the path
+    /// \param heading the heading of the robot at this point of the path
+    public void addPathSegment(int which, double time, double x, double y, double dist, double vel, double accel, double jerk, double heading) throws Exception
+    {
+        if (which >= data_.length)
             throw new Exception("invalid wheel index in path") ;
 
-        data_.get(which).add(seg) ;
+        double[][] cols = data_[which] ;
+        int index = sizes_[which] ;
+        if (index == cols[0].length)
+            reserve(which, Math.max(InitialCapacity, index * 2)) ;
+
+        cols[Time][index] = time ;
+        cols[X][index] = x ;
+        cols[Y][index] = y ;
+        cols[Position][index] = dist ;
+        cols[Velocity][index] = vel ;
+        cols[Accel][index] = accel ;
+        cols[Jerk][index] = jerk ;
+        cols[Heading][index] = heading ;
+        sizes_[which]++ ;
+        steps_[which] = Double.NaN ;
+        indexes_[which] = null ;
+        arcs_[which] = null ;
+    }
+
+    /// \brief make room for a number of points in every wheel of the path, so adding them does not
+    /// need to grow the arrays
+    /// \param count the number of points
+    public void reserve(int count) {
+        for(int i = 0 ; i < data_.length ; i++)
+        {
+            if (data_[i][0].length < count)
+                reserve(i, count) ;
+        }
+    }
+
+    /// \brief release any space allocated for points that were not added.  This is called once all
+    /// of the points are added to the path.
+    public void trimToSize() {
+        for(int i = 0 ; i < data_.length ; i++)
+        {
+            if (data_[i][0].length != sizes_[i])
+                reserve(i, sizes_[i]) ;
+        }
     }
 
     /// \brief returns true if the path is valid
     /// \returns true if the path is valid
     public boolean isValid() {
-        int size = data_.get(0).size() ;
+        int size = sizes_[0] ;
 
-        for(int i = 1 ; i < data_.size() ; i++)
+        for(int i = 1 ; i < sizes_.length ; i++)
         {
-            if (data_.get(i).size() != size)
+            if (sizes_[i] != size)
                 return false ;
         }
 
         return true ;
     }
+
+    //
+    // Return the array holding a column, which may be longer than the number of points
+    //
+    double[] getColumnData(int which, int column) {
+        return data_[which][column] ;
+    }
+
+    //
+    // Find the index of the last point before the time given, which must be inside the path
+    //
+    private int findIndex(int which, double t) {
+        double[] times = data_[which][Time] ;
+        int last = sizes_[which] - 1 ;
+        double step = getStep(which) ;
+
+        if (step > 0.0) {
+            int index = (int)((t - times[0]) / step) ;
+            index = Math.max(0, Math.min(index, last - 1)) ;
+
+            //
+            // Correct for rounding in the times read from the path files
+            //
+            while (index < last - 1 && times[index + 1] <= t)
+                index++ ;
+            while (index > 0 && times[index] > t)
+                index-- ;
+
+            return index ;
+        }
+
+        int lo = 0 ;
+        int hi = last ;
+        while (hi - lo > 1) {
+            int mid = (lo + hi) >>> 1 ;
+            if (times[mid] <= t)
+                lo = mid ;
+            else
+                hi = mid ;
+        }
+
+        return lo ;
+    }
+
+    //
+    // Return the time between points if they are evenly spaced, otherwise zero
+    //
+    private double getStep(int which) {
+        double step = steps_[which] ;
+        if (!Double.isNaN(step))
+            return step ;
+
+        double[] times = data_[which][Time] ;
+        int last = sizes_[which] - 1 ;
+        step = 0.0 ;
+
+        if (last > 0) {
+            step = (times[last] - times[0]) / last ;
+            for(int i = 1 ; i < last && step > 0.0 ; i++) {
+                if (Math.abs(times[i] - times[0] - i * step) > step * StepTolerance)
+                    step = 0.0 ;
+            }
+        }
+
+        steps_[which] = step ;
+        return step ;
+    }
+
+    //
+    // Return the table of distances to each point, building it if needed
+    //
+    private double[] getArcs(int which) {
+        double[] arcs = arcs_[which] ;
+        if (arcs != null)
+            return arcs ;
+
+        double[] xs = data_[which][X] ;
+        double[] ys = data_[which][Y] ;
+        int size = sizes_[which] ;
+
+        arcs = new double[Math.max(size, 1)] ;
+        for(int i = 1 ; i < size ; i++)
+            arcs[i] = arcs[i - 1] + Math.hypot(xs[i] - xs[i - 1], ys[i] - ys[i - 1]) ;
+
+        arcs_[which] = arcs ;
+        return arcs ;
+    }
+
+    //
+    // Interpolate every column a fraction of the way from one point to the next
+    //
+    private void interpolate(double[][] cols, int index, double f, double[] out) {
+        for(int col = 0 ; col < Columns ; col++) {
+            double v0 = cols[col][index] ;
+            double v1 = cols[col][index + 1] ;
+
+            if (col == Heading)
+                out[col] = XeroMath.normalizeAngleDegrees(v0 + XeroMath.normalizeAngleDegrees(v1 - v0) * f) ;
+            else
+                out[col] = v0 + (v1 - v0) * f ;
+        }
+    }
+
+    private void copyPoint(double[][] cols, int index, double[] out) {
+        for(int col = 0 ; col < Columns ; col++)
+            out[col] = cols[col][index] ;
+    }
+
+    private void reserve(int which, int count) {
+        double[][] cols = data_[which] ;
+        for(int col = 0 ; col < Columns ; col++)
+            cols[col] = Arrays.copyOf(cols[col], count) ;
+    }
 }
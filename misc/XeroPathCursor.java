@@ -0,0 +1,91 @@
+package org.xero1425.misc ;
+
+/// \file
+
+/// \brief This class is a movable view of the points for one wheel of a path.
+/// The cursor has the same accessors as a XeroPathSegment, but reads them from the path at the current
+/// index, so one cursor can be created when an action starts and moved to a new point each robot loop
+/// without creating a segment object for each point.
+public class XeroPathCursor
+{
+    private XeroPath path_ ;
+    private int which_ ;
+    private int index_ ;
+
+    /// \brief create a new cursor at the first point of the path
+    /// \param path the path to view
+    /// \param which which wheel of the path to view
+    public XeroPathCursor(XeroPath path, int which) {
+        path_ = path ;
+        which_ = which ;
+        index_ = 0 ;
+    }
+
+    /// \brief move the cursor to a point in the path
+    /// \param index the index of the point
+    /// \returns the cursor
+    public XeroPathCursor moveTo(int index) {
+        index_ = index ;
+        return this ;
+    }
+
+    /// \brief returns the index of the point the cursor is at
+    /// \returns the index of the point the cursor is at
+    public int getIndex() {
+        return index_ ;
+    }
+
+    /// \brief returns the path the cursor views
+    /// \returns the path the cursor views
+    public XeroPath getPath() {
+        return path_ ;
+    }
+
+    /// \brief returns the time for the point
+    /// \returns the time for the point
+    public double getTime() {
+        return path_.getTime(which_, index_) ;
+    }
+
+    /// \brief returns the x postion for the point
+    /// \returns the x position for the point
+    public double getX() {
+        return path_.getX(which_, index_) ;
+    }
+
+    /// \brief returns the y position for the point
+    /// \returns the y position for the point
+    public double getY() {
+        return path_.getY(which_, index_) ;
+    }
+
+    /// \brief returns the position along the path for the point
+    /// \returns the position along the path for the point
+    public double getPosition() {
+        return path_.getPosition(which_, index_) ;
+    }
+
+    /// \brief returns the velocity for the point
+    /// \returns the velocity for the point
+    public double getVelocity() {
+        return path_.getVelocity(which_, index_) ;
+    }
+
+    /// \brief returns the acceleration for the point
+    /// \returns the acceleration for the point
+    public double getAccel() {
+        return path_.getAccel(which_, index_) ;
+    }
+
+    /// \brief returns the jerk for the point
+    /// \returns the jerk for the point
+    public double getJerk() {
+        return path_.getJerk(which_, index_) ;
+    }
+
+    /// \brief returns the heading for the point
+    /// \returns the heading for the point
+    public double getHeading() {
+        return path_.getHeading(which_, index_) ;
+    }
+}
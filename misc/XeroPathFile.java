@@ -0,0 +1,197 @@
+package org.xero1425.misc;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/// \file
+
+/// \brief This class reads and writes the binary cache files for paths.
+///
+/// Reading the CSV files for a path parses every value as text.  The cache file holds the same values as
+/// little endian doubles, one column after another, in the order they are stored in a XeroPath, so a path
+/// is read by memory mapping the cache file and copying each column into its array.  The cache file records
+/// a hash of the CSV files it was made from, and is only used when the hash matches, so changed CSV files
+/// are always parsed again.  The cache files are written by XeroPathManager the first time the CSV files are
+/// parsed, or for a whole paths directory from the command line at deploy time.
+///
+/// The file is little endian and holds the magic number (int), the version (short), the number of wheels
+/// (short), the number of columns (short), the number of points (int), the hash (long), and then the values
+/// for each column of each wheel.
+///
+/// usage: XeroPathFile pathsdir pathtype, where pathtype is a XeroPathType such as TankPathFollowing
+public class XeroPathFile
+{
+    /// \brief the magic number at the start of the file
+    public static final int Magic = 0x58505448 ;
+
+    /// \brief the version of the file format
+    public static final int Version = 1 ;
+
+    /// \brief the extension for cache files
+    public static final String Extension = ".xpath" ;
+
+    //
+    // The size of the header in bytes
+    //
+    private static final int HeaderSize = 4 + 2 + 2 + 2 + 4 + 8 ;
+
+    /// \brief compute the hash of the CSV files for a path
+    /// \param files the names of the CSV files, in the order of the wheels
+    /// \returns the hash, which combines a CRC32 of the file contents and their total length
+    public static long hash(String[] files) throws IOException {
+        CRC32 crc = new CRC32() ;
+        long length = 0 ;
+
+        for(String file : files) {
+            byte[] bytes = Files.readAllBytes(Paths.get(file)) ;
+            crc.update(bytes) ;
+            length += bytes.length ;
+        }
+
+        return (length << 32) ^ crc.getValue() ;
+    }
+
+    /// \brief read a path from a cache file if it matches the hash given
+    /// \param filename the name of the cache file
+    /// \param name the name of the path
+    /// \param hash the hash of the CSV files for the path
+    /// \param wheels the number of wheels expected in the path
+    /// \returns the path, or null if the cache file is missing, does not match, or is corrupt
+    public static XeroPath read(String filename, String name, long hash, int wheels) {
+        if (!new File(filename).exists())
+            return null ;
+
+        try (RandomAccessFile file = new RandomAccessFile(filename, "r") ;
+             FileChannel channel = file.getChannel()) {
+            ByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()) ;
+            buf.order(ByteOrder.LITTLE_ENDIAN) ;
+
+            if (buf.getInt() != Magic || buf.getShort() != Version)
+                return null ;
+
+            int fwheels = buf.getShort() ;
+            int columns = buf.getShort() ;
+            int points = buf.getInt() ;
+            if (fwheels != wheels || columns != XeroPath.Columns || points <= 0 || buf.getLong() != hash)
+                return null ;
+
+            if (buf.remaining() != (long)wheels * columns * points * Double.BYTES)
+                return null ;
+
+            double[][][] data = new double[wheels][columns][points] ;
+            for(int i = 0 ; i < wheels ; i++) {
+                for(int col = 0 ; col < columns ; col++) {
+                    buf.asDoubleBuffer().get(data[i][col]) ;
+                    buf.position(buf.position() + points * Double.BYTES) ;
+                }
+            }
+
+            return new XeroPath(name, data) ;
+        }
+        catch(IOException | BufferUnderflowException ex) {
+            return null ;
+        }
+    }
+
+    /// \brief write a path to a cache file
+    /// \param filename the name of the cache file
+    /// \param hash the hash of the CSV files for the path
+    /// \param path the path to write
+    public static void write(String filename, long hash, XeroPath path) throws IOException {
+        int wheels = path.getDataCounts() ;
+        int points = path.getSize() ;
+
+        ByteBuffer buf = ByteBuffer.allocate(HeaderSize + wheels * XeroPath.Columns * points * Double.BYTES) ;
+        buf.order(ByteOrder.LITTLE_ENDIAN) ;
+        buf.putInt(Magic) ;
+        buf.putShort((short)Version) ;
+        buf.putShort((short)wheels) ;
+        buf.putShort((short)XeroPath.Columns) ;
+        buf.putInt(points) ;
+        buf.putLong(hash) ;
+
+        for(int i = 0 ; i < wheels ; i++) {
+            for(int col = 0 ; col < XeroPath.Columns ; col++) {
+                buf.asDoubleBuffer().put(path.getColumnData(i, col), 0, points) ;
+                buf.position(buf.position() + points * Double.BYTES) ;
+            }
+        }
+        buf.flip() ;
+
+        //
+        // Write to a temporary file and rename it, so a partially written cache file is never read
+        //
+        File tmp = new File(filename + ".tmp") ;
+        try (RandomAccessFile file = new RandomAccessFile(tmp, "rw") ;
+             FileChannel channel = file.getChannel()) {
+            channel.truncate(0) ;
+            while (buf.hasRemaining())
+                channel.write(buf) ;
+        }
+
+        File dest = new File(filename) ;
+        if (!tmp.renameTo(dest)) {
+            dest.delete() ;
+            if (!tmp.renameTo(dest))
+                throw new IOException("cannot rename '" + tmp.getPath() + "' to '" + filename + "'") ;
+        }
+    }
+
+    /// \brief write the cache files for every path in a paths directory
+    /// \param args the command line arguments
+    public static void main(String[] args) {
+        if (args.length != 2) {
+            System.err.println("usage: XeroPathFile pathsdir pathtype") ;
+            System.exit(1) ;
+        }
+
+        XeroPathType type ;
+        try {
+            type = XeroPathType.valueOf(args[1]) ;
+        }
+        catch(IllegalArgumentException ex) {
+            System.err.println("XeroPathFile: unknown path type '" + args[1] + "'") ;
+            System.exit(1) ;
+            return ;
+        }
+
+        MessageLogger logger = new MessageLogger() ;
+        logger.addDestination((mtype, subsystem, msg) -> System.err.println(msg)) ;
+
+        XeroPathManager mgr = new XeroPathManager(logger, args[0], type) ;
+        mgr.setCacheDirectory(args[0]) ;
+
+        String ext = mgr.getExtensions()[0] ;
+        int failed = 0, count = 0 ;
+
+        try (Stream<Path> walk = Files.list(Paths.get(args[0]))) {
+            List<String> files = walk.map(x -> x.getFileName().toString()).filter(f -> f.endsWith(ext)).sorted().collect(Collectors.toList()) ;
+            for(String file : files) {
+                String name = file.substring(0, file.length() - ext.length()) ;
+                if (mgr.loadPath(name))
+                    count++ ;
+                else
+                    failed++ ;
+            }
+        }
+        catch(Exception ex) {
+            System.err.println("XeroPathFile: cannot convert paths in '" + args[0] + "' - " + ex.getMessage()) ;
+            System.exit(1) ;
+        }
+
+        System.out.println("converted " + count + " paths, " + failed + " failed") ;
+        System.exit(failed == 0 ? 0 : 1) ;
+    }
+}
@@ -1,11 +1,15 @@
 package org.xero1425.misc;
 
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.FutureTask;
+import java.io.IOException;
 import java.io.Reader;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.Iterator;
 
 import org.apache.commons.csv.CSVFormat;
@@ -19,6 +23,16 @@ import org.apache.commons.csv.CSVRecord ;
 /// files that have the given name as the base name.  These files are loaded and
 /// the path can be retreived using the name provided at any future time.
 ///
+/// Paths can also be added by name with addPath() without reading the files.  A path that is added this way
+/// is read the first time it is requested with getPath(), or by a background thread if prefetch() is called.
+/// When getPath() asks for a path that is being read by the background thread, it waits for that path only.
+/// hasPath() only checks the names added, so it does not read any files.  isLoaded() reads the path, or waits
+/// for the background thread to finish reading it, and reports if the files were read successfully.
+///
+/// If a cache directory is set with setCacheDirectory(), each path is also saved in the binary form written
+/// by XeroPathFile the first time its CSV files are parsed.  Later loads of the same CSV files read the cache
+/// file instead of parsing the CSV files.
+///
 public class XeroPathManager
 {
     //
@@ -37,9 +51,10 @@ public class XeroPathManager
     private int logger_id_ ;
 
     //
-    // The set of paths loaded into the path manager
+    // The set of paths known to the path manager.  Each task reads the path files the first time
+    // it is run, and returns null if the files could not be read.
     //
-    private Map<String, XeroPath> paths_ ;
+    private Map<String, FutureTask<XeroPath>> paths_ ;
 
     //
     // The base directory for finding path files
@@ -51,6 +66,11 @@ public class XeroPathManager
     //
     private String[] exts_ ;
 
+    //
+    // The directory for the binary path cache files, or null if the cache is not used
+    //
+    private String cache_dir_ ;
+
     //
     // The name of the messages for the logger
     //
@@ -63,7 +83,7 @@ public class XeroPathManager
     public XeroPathManager(MessageLogger logger, String basedir, XeroPathType type) {
         path_type_ = type ;
         basedir_ = basedir ;
-        paths_ = new HashMap<String, XeroPath>() ;
+        paths_ = new ConcurrentHashMap<String, FutureTask<XeroPath>>() ;
         logger_id_ = logger.registerSubsystem(LoggerName) ;
         logger_ = logger ;
 
@@ -126,6 +146,18 @@ public class XeroPathManager
         return true ;
     }
 
+    /// \brief return the extensions for the path data files
+    /// \returns the extensions for the path data files
+    public String[] getExtensions() {
+        return exts_ ;
+    }
+
+    /// \brief set the directory for the binary path cache files.  This must be called before any paths are read.
+    /// \param dir the directory for the cache files, or null to always parse the CSV files
+    public void setCacheDirectory(String dir) {
+        cache_dir_ = dir ;
+    }
+
     /// \brief return the base directory for the path manager
     /// \returns the base directory for the path manager
     public String getBaseDir() {
@@ -138,7 +170,65 @@ public class XeroPathManager
     /// name given in thie call, and left_ext and right_ext are the extensions set in the setExtensions()
     /// call.
     /// \param name the name of the path to load
+    /// \returns true if the path was loaded sucessfully
     public boolean loadPath(String name) throws Exception {
+        addPath(name) ;
+        if (waitForPath(name) == null) {
+            paths_.remove(name) ;
+            return false ;
+        }
+
+        return true ;
+    }
+
+    /// \brief add a path by name without reading the path data files.  The files are read when the path
+    /// is first requested with getPath(), or by the background thread started by prefetch().
+    /// \param name the name of the path to add
+    public void addPath(String name) {
+        paths_.computeIfAbsent(name, (n) -> new FutureTask<XeroPath>(() -> readPath(n))) ;
+    }
+
+    /// \brief start reading all paths added with addPath() that have not been read yet on background threads
+    public void prefetch() {
+        for(FutureTask<XeroPath> task : paths_.values()) {
+            if (!task.isDone())
+                ForkJoinPool.commonPool().execute(task) ;
+        }
+    }
+
+    //
+    // Read the path data files for a path, returning null if they cannot be read
+    //
+    private XeroPath readPath(String name) throws Exception {
+        long hash = 0 ;
+        String cachefile = null ;
+
+        if (cache_dir_ != null) {
+            String[] files = new String[exts_.length] ;
+            for(int i = 0 ; i < exts_.length ; i++)
+                files[i] = basedir_ + "/" + name + exts_[i] ;
+
+            try {
+                hash = XeroPathFile.hash(files) ;
+                cachefile = cache_dir_ + "/" + name + XeroPathFile.Extension ;
+            }
+            catch(IOException ex) {
+                //
+                // A CSV file is missing, the error is reported while reading the CSV files below
+                //
+            }
+
+            if (cachefile != null) {
+                XeroPath path = XeroPathFile.read(cachefile, name, hash, exts_.length) ;
+                if (path != null) {
+                    logger_.startMessage(MessageType.Debug, logger_id_) ;
+                    logger_.add("loaded path '").add(name).add("' from cache") ;
+                    logger_.endMessage();
+                    return path ;
+                }
+            }
+        }
+
         String filename = null ;
         Reader [] rdrs = null ;
         CSVParser [] parsers = null ;
@@ -156,7 +246,7 @@ public class XeroPathManager
                 logger_.startMessage(MessageType.Error) ;
                 logger_.add("cannot load path file (left) '").add(filename).add("' - ").add(ex.getMessage()) ;
                 logger_.endMessage();
-                return false ;
+                return null ;
             }
             try {
                 parsers[i] = new CSVParser(rdrs[i], CSVFormat.DEFAULT) ;
@@ -224,7 +314,7 @@ public class XeroPathManager
                     logger_.add("' - ").add(exts_[i]).add(" file contains invalid number of columns, line") ;
                     logger_.add(recs[i].getRecordNumber()) ;
                     logger_.endMessage();   
-                    return false ;
+                    return null ;
                 }
                 XeroPathSegment seg ;
                 try {
@@ -236,7 +326,7 @@ public class XeroPathManager
                     logger_.add("' - ").add(exts_[i]).add(" file contains invalid floating point number, line") ;
                     logger_.add(recs[i].getRecordNumber()) ;
                     logger_.endMessage();   
-                    return false ;
+                    return null ;
                 }
 
                 try {
@@ -263,15 +353,40 @@ public class XeroPathManager
             logger_.add("cannot load path '").add(name) ;
             logger_.add("' - files contains differing number of segments") ;
             logger_.endMessage();   
-            return false ;
+            return null ;
+        }
+
+        if (path.getSize() == 0)
+        {
+            //
+            // A path with no points has no duration and cannot be sampled, so it is rejected here the
+            // same way XeroPathFile rejects an empty cache file
+            //
+            logger_.startMessage(MessageType.Error) ;
+            logger_.add("cannot load path '").add(name) ;
+            logger_.add("' - files contain no path points") ;
+            logger_.endMessage();
+            return null ;
+        }
+
+        path.trimToSize() ;
+
+        if (cachefile != null) {
+            try {
+                XeroPathFile.write(cachefile, hash, path) ;
+            }
+            catch(IOException ex) {
+                logger_.startMessage(MessageType.Warning) ;
+                logger_.add("cannot write path cache file '").add(cachefile).add("' - ").add(ex.getMessage()) ;
+                logger_.endMessage();
+            }
         }
 
         logger_.startMessage(MessageType.Debug, logger_id_) ;
         logger_.add("loaded path '").add(name) ;
         logger_.endMessage();    
 
-        paths_.put(name, path) ;
-        return true ;
+        return path ;
     }
 
     /// \brief returns a path given the path name
@@ -279,19 +394,57 @@ public class XeroPathManager
     /// \param name the name of the path to return
     /// \returns a path given its name
     public XeroPath getPath(String name) throws MissingPathException {
-        XeroPath p = paths_.get(name) ;
+        XeroPath p = waitForPath(name) ;
         if (p == null)
             throw new MissingPathException(name) ;
 
         return p ;
     }
 
-    /// \brief returns true if the path manager has loaded a path with the name given
-    /// \returns true if the path manager has loaded a path with the name given
+    /// \brief returns true if the path manager has a path with the name given.  The path files are not
+    /// read, so a path that has not been read yet may still fail to load.
+    /// \returns true if the path manager has a path with the name given
     public boolean hasPath(String name) {
         return paths_.containsKey(name) ;
     }
 
+    /// \brief returns true if the path with the name given was read successfully.  If the path has not been
+    /// read yet it is read on this thread, and if it is being read by the background thread this waits for it.
+    /// \param name the name of the path
+    /// \returns true if the path files were read successfully
+    public boolean isLoaded(String name) {
+        return waitForPath(name) != null ;
+    }
+
+    //
+    // Return a path, reading it on this thread if it has not been read yet, or waiting for the background
+    // thread if it is being read there.  Returns null if the path is unknown or could not be read.
+    //
+    private XeroPath waitForPath(String name) {
+        FutureTask<XeroPath> task = paths_.get(name) ;
+        if (task == null)
+            return null ;
+
+        //
+        // This does nothing if the task has already run or is running on another thread
+        //
+        task.run() ;
+
+        try {
+            return task.get() ;
+        }
+        catch(InterruptedException ex) {
+            Thread.currentThread().interrupt() ;
+            return null ;
+        }
+        catch(ExecutionException ex) {
+            logger_.startMessage(MessageType.Error) ;
+            logger_.add("cannot load path '").add(name).add("' - ").add(ex.getCause().getMessage()) ;
+            logger_.endMessage() ;
+            return null ;
+        }
+    }
+
     private XeroPathSegment parseCSVRecord(CSVRecord r) throws NumberFormatException {
         double time, x, y, pos, vel, accel, jerk, heading ;
 
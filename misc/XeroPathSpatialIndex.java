@@ -0,0 +1,256 @@
+package org.xero1425.misc ;
+
+/// \file
+
+/// \brief This class finds the segment of a path closest to a point without searching every segment.
+///
+/// The segments between the points of one wheel of a path are placed in a uniform grid that covers the
+/// path.  Each cell of the grid lists the segments whose bounding box overlaps the cell.  A query searches
+/// rings of cells around the cell holding the point, and stops once no unsearched cell can hold a segment
+/// closer than the closest one found.  A query can also skip the segments before a starting index, so a
+/// follower that only moves forward along the path does not match an earlier part of a path that crosses
+/// itself.  The index is built once, and queries do not allocate memory.
+public class XeroPathSpatialIndex
+{
+    /// \brief the index in the query output of the x position of the closest point
+    public static final int ClosestX = 0 ;
+
+    /// \brief the index in the query output of the y position of the closest point
+    public static final int ClosestY = 1 ;
+
+    /// \brief the index in the query output of the fraction of the way along the segment to the closest point
+    public static final int Fraction = 2 ;
+
+    /// \brief the index in the query output of the distance to the closest point
+    public static final int Distance = 3 ;
+
+    /// \brief the number of values in the query output
+    public static final int OutputSize = 4 ;
+
+    //
+    // The grid size is chosen so each cell holds about this many segments
+    //
+    private static final double SegmentsPerCell = 2.0 ;
+
+    // The x and y positions of the points in the path
+    private double[] xs_ ;
+    private double[] ys_ ;
+
+    // The number of segments, one less than the number of points
+    private int count_ ;
+
+    // The lower left corner of the grid
+    private double minx_ ;
+    private double miny_ ;
+
+    // The size of each cell in the grid
+    private double cell_ ;
+
+    // The number of cells across and down the grid
+    private int cols_ ;
+    private int rows_ ;
+
+    // The index in items_ of the first segment in each cell, with an extra entry for the end of the last cell
+    private int[] starts_ ;
+
+    // The segments in each cell, one cell after another
+    private int[] items_ ;
+
+    /// \brief build the index for one wheel of a path
+    /// \param path the path
+    /// \param which which wheel of the path to index
+    public XeroPathSpatialIndex(XeroPath path, int which) {
+        int size = path.getSize() ;
+        xs_ = new double[size] ;
+        ys_ = new double[size] ;
+        for(int i = 0 ; i < size ; i++) {
+            xs_[i] = path.getX(which, i) ;
+            ys_[i] = path.getY(which, i) ;
+        }
+        count_ = Math.max(size - 1, 0) ;
+
+        build() ;
+    }
+
+    /// \brief returns the number of segments in the index
+    /// \returns the number of segments in the index
+    public int getSegmentCount() {
+        return count_ ;
+    }
+
+    /// \brief find the segment closest to a point
+    /// \param x the x position of the point
+    /// \param y the y position of the point
+    /// \param start the first segment to consider, segments before this one are ignored
+    /// \param out the array that receives the closest point, see ClosestX, ClosestY, Fraction, and Distance.
+    /// It must hold at least OutputSize values.
+    /// \returns the index of the closest segment, the segment from point i to point i + 1, or -1 if there
+    /// are no segments at or after the start
+    public int closest(double x, double y, int start, double[] out) {
+        start = Math.max(start, 0) ;
+        if (start >= count_)
+            return -1 ;
+
+        int cx = clamp((int)Math.floor((x - minx_) / cell_), cols_) ;
+        int cy = clamp((int)Math.floor((y - miny_) / cell_), rows_) ;
+
+        int best = -1 ;
+        double bestdist = Double.MAX_VALUE ;
+
+        for(int r = 0 ; ; r++) {
+            //
+            // Search the cells on the ring r cells away from the center cell
+            //
+            for(int row = Math.max(cy - r, 0) ; row <= Math.min(cy + r, rows_ - 1) ; row++) {
+                boolean edge = (row == cy - r || row == cy + r) ;
+                int step = edge ? 1 : 2 * r ;
+
+                for(int col = cx - r ; col <= cx + r ; col += Math.max(step, 1)) {
+                    if (col < 0 || col >= cols_)
+                        continue ;
+
+                    int cell = row * cols_ + col ;
+                    for(int k = starts_[cell] ; k < starts_[cell + 1] ; k++) {
+                        int seg = items_[k] ;
+                        if (seg < start)
+                            continue ;
+
+                        double d = distanceSquared(seg, x, y) ;
+                        if (d < bestdist || (d == bestdist && seg < best)) {
+                            bestdist = d ;
+                            best = seg ;
+                        }
+                    }
+                }
+            }
+
+            //
+            // Find how close an unsearched cell can be.  Sides of the searched area at the edge of
+            // the grid have no cells beyond them.
+            //
+            double bound = Double.MAX_VALUE ;
+            if (cx - r > 0)
+                bound = Math.min(bound, x - (minx_ + (cx - r) * cell_)) ;
+            if (cx + r < cols_ - 1)
+                bound = Math.min(bound, minx_ + (cx + r + 1) * cell_ - x) ;
+            if (cy - r > 0)
+                bound = Math.min(bound, y - (miny_ + (cy - r) * cell_)) ;
+            if (cy + r < rows_ - 1)
+                bound = Math.min(bound, miny_ + (cy + r + 1) * cell_ - y) ;
+
+            if (bound == Double.MAX_VALUE)
+                break ;
+
+            bound = Math.max(bound, 0.0) ;
+            if (best != -1 && bestdist <= bound * bound)
+                break ;
+        }
+
+        project(best, x, y, out) ;
+        return best ;
+    }
+
+    private void build() {
+        if (count_ == 0) {
+            cols_ = 1 ;
+            rows_ = 1 ;
+            cell_ = 1.0 ;
+            starts_ = new int[2] ;
+            items_ = new int[0] ;
+            return ;
+        }
+
+        double minx = Double.MAX_VALUE, miny = Double.MAX_VALUE ;
+        double maxx = -Double.MAX_VALUE, maxy = -Double.MAX_VALUE ;
+        for(int i = 0 ; i < xs_.length ; i++) {
+            minx = Math.min(minx, xs_[i]) ;
+            miny = Math.min(miny, ys_[i]) ;
+            maxx = Math.max(maxx, xs_[i]) ;
+            maxy = Math.max(maxy, ys_[i]) ;
+        }
+
+        //
+        // Size the cells so the grid has about one cell for every few segments
+        //
+        double width = Math.max(maxx - minx, 1.0e-6) ;
+        double height = Math.max(maxy - miny, 1.0e-6) ;
+        double cells = Math.max(count_ / SegmentsPerCell, 1.0) ;
+        cell_ = Math.max(Math.sqrt(width * height / cells), Math.max(width, height) / cells) ;
+
+        minx_ = minx ;
+        miny_ = miny ;
+        cols_ = (int)Math.floor(width / cell_) + 1 ;
+        rows_ = (int)Math.floor(height / cell_) + 1 ;
+
+        //
+        // Count the segments in each cell, then fill in the segments.  The count for each cell is stored
+        // in the entry after the cell, so after the sum starts_[cell] is the start of the cell.
+        //
+        starts_ = new int[cols_ * rows_ + 1] ;
+        for(int seg = 0 ; seg < count_ ; seg++)
+            addSegment(seg, null) ;
+
+        for(int i = 1 ; i < starts_.length ; i++)
+            starts_[i] += starts_[i - 1] ;
+
+        items_ = new int[starts_[starts_.length - 1]] ;
+        int[] next = new int[cols_ * rows_] ;
+        System.arraycopy(starts_, 0, next, 0, next.length) ;
+
+        for(int seg = 0 ; seg < count_ ; seg++)
+            addSegment(seg, next) ;
+    }
+
+    //
+    // Count a segment in each cell its bounding box overlaps, or store it in those cells if next is given
+    //
+    private void addSegment(int seg, int[] next) {
+        int c0 = clamp((int)Math.floor((Math.min(xs_[seg], xs_[seg + 1]) - minx_) / cell_), cols_) ;
+        int c1 = clamp((int)Math.floor((Math.max(xs_[seg], xs_[seg + 1]) - minx_) / cell_), cols_) ;
+        int r0 = clamp((int)Math.floor((Math.min(ys_[seg], ys_[seg + 1]) - miny_) / cell_), rows_) ;
+        int r1 = clamp((int)Math.floor((Math.max(ys_[seg], ys_[seg + 1]) - miny_) / cell_), rows_) ;
+
+        for(int row = r0 ; row <= r1 ; row++) {
+            for(int col = c0 ; col <= c1 ; col++) {
+                int cell = row * cols_ + col ;
+                if (next == null)
+                    starts_[cell + 1]++ ;
+                else
+                    items_[next[cell]++] = seg ;
+            }
+        }
+    }
+
+    private double distanceSquared(int seg, double x, double y) {
+        double x0 = xs_[seg], y0 = ys_[seg] ;
+        double dx = xs_[seg + 1] - x0, dy = ys_[seg + 1] - y0 ;
+        double t = fraction(x0, y0, dx, dy, x, y) ;
+        double px = x0 + t * dx - x ;
+        double py = y0 + t * dy - y ;
+        return px * px + py * py ;
+    }
+
+    private void project(int seg, double x, double y, double[] out) {
+        double x0 = xs_[seg], y0 = ys_[seg] ;
+        double dx = xs_[seg + 1] - x0, dy = ys_[seg + 1] - y0 ;
+        double t = fraction(x0, y0, dx, dy, x, y) ;
+
+        out[ClosestX] = x0 + t * dx ;
+        out[ClosestY] = y0 + t * dy ;
+        out[Fraction] = t ;
+        out[Distance] = Math.hypot(out[ClosestX] - x, out[ClosestY] - y) ;
+    }
+
+    private static double fraction(double x0, double y0, double dx, double dy, double x, double y) {
+        double lensq = dx * dx + dy * dy ;
+        if (lensq == 0.0)
+            return 0.0 ;
+
+        double t = ((x - x0) * dx + (y - y0) * dy) / lensq ;
+        return Math.max(0.0, Math.min(t, 1.0)) ;
+    }
+
+    private static int clamp(int v, int count) {
+        return Math.max(0, Math.min(v, count - 1)) ;
+    }
+}
@@ -17,6 +17,13 @@ public class SimulationEngine {
     public static final String NetworkTableName = "XeroSim" ;
 
 
+    //
+    // The start of the line printed to standard output with the result of the simulation, so a program
+    // running simulations in other processes can collect the results
+    //
+    public static final String ResultTag = "simresult:" ;
+
+    // The engine for the robot in this process, kept for robot code written before each robot owned its engine
     private static SimulationEngine the_one_ = null ;
     
     private DriverStationDataJNI dssim_ = null ;
@@ -29,11 +36,18 @@ public class SimulationEngine {
 
     private double delta_t_ ;
 
+    // If true, the robot time only moves when the headless driver steps it, so it is never paused or resumed
+    private boolean headless_ ;
+
     private List<SimulationModel> active_models_ ;
     private int failed_count_ ;
     private int passed_count_ ;    
 
-    private SimulationEngine(XeroRobot robot, MessageLogger logger) {
+    // Set when the simulation is complete, with the exit code for the simulation
+    private boolean done_ ;
+    private int exit_code_ ;
+
+    public SimulationEngine(XeroRobot robot, MessageLogger logger) {
         logger_ = logger ;
         robot_ = robot ;
         logger_id_ = logger_.registerSubsystem(LoggerName);
@@ -45,17 +59,26 @@ public class SimulationEngine {
 
         failed_count_ = 0 ;
         passed_count_ = 0 ;
+        headless_ = false ;
+        done_ = false ;
+        exit_code_ = 0 ;
         delta_t_ = robot.getPeriod() / 10 ;
     }
 
+    //
+    // Use XeroRobot.getSimulationEngine() instead.  This is the engine created most recently by
+    // initializeSimulator().
+    //
+    @Deprecated
     static public SimulationEngine getInstance() {
         return the_one_;
     }
 
-    static public void initializeSimulator(XeroRobot robot, MessageLogger logger) {
+    static public SimulationEngine initializeSimulator(XeroRobot robot, MessageLogger logger) {
         String evname = DriverStation.getEventName() ;
         the_one_ = new SimulationEngine(robot, logger);
         logger.startMessage(MessageType.Info).add("Simulated Event: ").add(evname).endMessage();
+        return the_one_ ;
     }
 
     public void addAssertError() {
@@ -66,9 +89,16 @@ public class SimulationEngine {
         passed_count_++ ;
     }
 
+    //
+    // End the simulation.  The result is logged and printed, and the exit code is kept for the owner of
+    // the engine, which decides whether to end the process.
+    //
     public void exitSimulator() {
         int code = 0 ;
 
+        if (done_)
+            return ;
+
         if (failed_count_ == 0)
         {
             if (events_.size() > 0) {
@@ -102,7 +132,47 @@ public class SimulationEngine {
         if (logger_.getErrorMessageCount() > 0)
             code = 1 ;
 
-        java.lang.System.exit(code) ;
+        System.out.println(ResultTag + " passed=" + passed_count_ + " failed=" + failed_count_ + " events=" + events_.size() +
+                           " errors=" + logger_.getErrorMessageCount() + " code=" + code) ;
+
+        exit_code_ = code ;
+        done_ = true ;
+    }
+
+    public boolean isDone() {
+        return done_ ;
+    }
+
+    public int getExitCode() {
+        return exit_code_ ;
+    }
+
+    public int getPassedCount() {
+        return passed_count_ ;
+    }
+
+    public int getFailedCount() {
+        return failed_count_ ;
+    }
+
+    //
+    // Stop the robot time from following the wall clock.  From here on the robot time only moves
+    // when stepTime() is called, so the simulation runs as fast as the robot code and models allow.
+    //
+    public void startHeadless() {
+        headless_ = true ;
+        SimulatorJNI.pauseTiming();
+    }
+
+    public boolean isHeadless() {
+        return headless_ ;
+    }
+
+    //
+    // Move the robot time forward by a fixed step, in seconds, without waiting
+    //
+    public void stepTime(double t) {
+        SimulatorJNI.stepTiming((long)(t * 1.0e6));
     }
 
     public ModelFactory getModelFactory() {
@@ -146,7 +216,8 @@ public class SimulationEngine {
     //
     public void run(double t) {
         double sofar = 0 ;
-        SimulatorJNI.pauseTiming();
+        if (!headless_)
+            SimulatorJNI.pauseTiming();
         for(SimulationModel model : active_models_)
             model.startCycle();
 
@@ -162,7 +233,8 @@ public class SimulationEngine {
         for(SimulationModel model : active_models_)
             model.endCycle();        
 
-        SimulatorJNI.resumeTiming();
+        if (!headless_)
+            SimulatorJNI.resumeTiming();
     }
 
     public MessageLogger getMessageLogger() {
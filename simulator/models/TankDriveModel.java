@@ -126,38 +126,6 @@ public class TankDriveModel extends SimulationModel {
     private double left_motor_mult_ ;
     private double right_motor_mult_ ;
     
-    //
-    // The current speed of the motors in revolutions per second
-    //
-    private double current_left_rps_ ;
-    private double current_right_rps_ ;
-
-    //
-    // The current position of the left and right sides of the robot
-    //
-    private double left_pos_ ;
-    private double right_pos_ ;
-
-    //
-    // The current angle.  This will always be between -180 and 180
-    //
-    private double angle_ ;
-
-    //
-    // The angle the last simulator loop.  This will always be between -180 and 180
-    //
-    private double last_angle_ ;
-
-    //
-    // The total angle traveled.  This will continue to beyond +/- 180
-    //
-    private double total_angle_ ;
-
-    //
-    // The speed of the robot, this is relative to the center of the robot.
-    //
-    private double speed_ ;
-
     //
     // The encoder values
     //
@@ -173,29 +141,16 @@ public class TankDriveModel extends SimulationModel {
     private int right_encoder_mult_ ;
 
     //
-    // The revolutions traveled per power per second.
-    //
-    private double left_rps_per_power_per_time_ ;
-    private double right_rps_per_power_per_time_ ;
-
-    //
-    // The maximum allowed RPS speed change.  Provided to prevent the model
-    // from having infinite acceleration.
+    // The physics of the drivebase, created when the model is created
     //
-    private double max_change_ ;
+    private TankDrivePhysics physics_ ;
 
     //
-    // The current position of the center of the robot
+    // The position of the center of the robot given by events before the model is created
     //
     private double xpos_ ;
     private double ypos_ ;
 
-    //
-    // The position of the center of the robot last simulator loop
-    //
-    private double last_xpos_ ;
-    private double last_ypos_ ;
-
     //
     // The external encoder indexes, if -1, then encoders are in the motor
     //
@@ -212,9 +167,9 @@ public class TankDriveModel extends SimulationModel {
         navx_ = null;
         text_provider_ = null ;
 
+        physics_ = null ;
         xpos_ = 0.0 ;
         ypos_ = 0.0 ;
-        angle_ = 0.0 ;
 
         left_encoder_index_ = -1 ;
         right_encoder_index_ = -1 ;
@@ -229,18 +184,18 @@ public class TankDriveModel extends SimulationModel {
         MessageLogger logger = getEngine().getMessageLogger() ;
         logger.startMessage(MessageType.Debug, getLoggerID()) ;
         logger.add("tankdrive") ;
-        logger.add(" ").add(xpos_) ;
-        logger.add(" ").add(ypos_) ;
-        logger.add(" ").add(angle_) ;
+        logger.add(" ").add(getXPos()) ;
+        logger.add(" ").add(getYPos()) ;
+        logger.add(" ").add(getAngleRadians()) ;
         logger.endMessage() ;
 
         //
         // Write information to the network tables about the position on the robot
         //
         NetworkTable table_ = NetworkTableInstance.getDefault().getTable(SimulationEngine.NetworkTableName).getSubTable(SubTableName) ;
-        table_.getEntry(TankDriveXPos).setNumber(xpos_) ;
-        table_.getEntry(TankDriveYPos).setNumber(ypos_) ;
-        table_.getEntry(TankDriveAngle).setNumber(XeroMath.rad2deg(angle_)) ;
+        table_.getEntry(TankDriveXPos).setNumber(getXPos()) ;
+        table_.getEntry(TankDriveYPos).setNumber(getYPos()) ;
+        table_.getEntry(TankDriveAngle).setNumber(getAngle()) ;
         if (text_provider_ != null)
             table_.getEntry(TankDriveText).setString(text_provider_.statusString()) ;
     }
@@ -451,29 +406,18 @@ public class TankDriveModel extends SimulationModel {
         }
 
         //
-        // Compute the RPS values based on the characteristics of the robot
+        // Create the physics based on the characteristics of the robot, starting at the position given
+        // by any events processed before the model was created
         //
-        double circum = diameter_ * Math.PI ;
-        left_rps_per_power_per_time_ = max_velocity_ / circum ;
-        right_rps_per_power_per_time_ = max_velocity_ / circum ;
-
-        //
-        // Compute the max change based on acceleration
-        //
-        max_change_ = max_accel_ / circum ;
+        physics_ = new TankDrivePhysics(diameter_, width_, scrub_, max_velocity_, max_accel_) ;
+        physics_.setXPos(xpos_) ;
+        physics_.setYPos(ypos_) ;
 
         //
         // Initialize the robot position
         //
         left_motor_mult_ = 1.0 ;
         right_motor_mult_ = 1.0 ;
-        current_left_rps_ = 0.0 ;
-        current_right_rps_ = 0.0 ;
-        left_pos_ = 0.0 ;
-        right_pos_ = 0.0 ;
-        angle_ = 0.0 ;
-        last_angle_ = 0.0 ;
-        total_angle_ = 0.0 ;
 
         left_encoder_mult_ = 1 ;
         right_encoder_mult_ = 1 ;
@@ -486,31 +430,31 @@ public class TankDriveModel extends SimulationModel {
     /// \brief return the robot pose
     /// \returns the robot pose
     public Pose2d getPose() {
-        return new Pose2d(xpos_, ypos_, new Rotation2d(angle_)) ;
+        return new Pose2d(getXPos(), getYPos(), new Rotation2d(getAngleRadians())) ;
     }
 
     /// \brief return the robot x position
     /// \returns the robot x position
     public double getXPos() {
-        return xpos_ ;
+        return (physics_ != null) ? physics_.getXPos() : xpos_ ;
     }
 
     /// \brief return the robot y position
     /// \returns the robot y position    
     public double getYPos() {
-        return ypos_ ;
+        return (physics_ != null) ? physics_.getYPos() : ypos_ ;
     }
 
     /// \brief return the robot angle
     /// \returns the robot angle        
     public double getAngle() {
-        return XeroMath.rad2deg(angle_) ;
+        return XeroMath.rad2deg(getAngleRadians()) ;
     }
 
     /// \brief return the speed of the robot
     /// \return the speed of the robot
     public double getSpeed() {
-        return speed_ ;
+        return (physics_ != null) ? physics_.getSpeed() : 0.0 ;
     }
 
     /// \brief return the width of the robot
@@ -525,6 +469,14 @@ public class TankDriveModel extends SimulationModel {
         return length_ ;
     }    
 
+    //
+    // The robot angle in radians.  Until the model is created there are no physics, and the robot is at
+    // the position given by any events processed so far.
+    //
+    private double getAngleRadians() {
+        return (physics_ != null) ? physics_.getAngleRadians() : 0.0 ;
+    }
+
     /// \brief run on simlator loop
     /// \param dt the amount of time that has passed since the last simulator loop
     public void run(double dt) {
@@ -536,48 +488,11 @@ public class TankDriveModel extends SimulationModel {
         double rightpower = right_.getPower() ;
 
         //
-        // Calculated the desired left and right revolutions per second based on the motor power
+        // Move the robot based on the motor power
         //
-        double desired_left_rps = left_rps_per_power_per_time_ * leftpower * left_motor_mult_ ;
-        double desired_right_rps = right_rps_per_power_per_time_ * rightpower * right_motor_mult_ ;
-
-        //
-        // Calculate the actual left and right revolutions per second based on the maximum allows acceleration
-        // of the robot.
-        //
-        current_left_rps_ = capVelocity(current_left_rps_, desired_left_rps) ;
-        current_right_rps_ = capVelocity(current_right_rps_, desired_right_rps) ;
-
-        //
-        // Calculate the left and right distance traveled this robot loop
-        //
-        double dleft = current_left_rps_ * dt * diameter_ * Math.PI ;
-        double dright = current_right_rps_ * dt * diameter_ * Math.PI ;
-
-        //
-        // Update the left and right position of the robot
-        //
-        left_pos_ += dleft ;
-        right_pos_ += dright ;
-
-        //
-        // Update the angle of the robot based on the travel of the robot
-        //
-        double lrevs = left_pos_ / (Math.PI * diameter_) ;
-        double rrevs = right_pos_ / (Math.PI * diameter_) ;
-        double dv = (dright - dleft) / 2 * scrub_ ;
-        angle_ = XeroMath.normalizeAngleRadians(angle_ + (dv * 2.0) / width_) ;
-        updatePosition(dleft, dright, angle_) ;
-
-        //
-        // Calculate the speed of the robot
-        //
-        double distsq = (xpos_ - last_xpos_) * (xpos_ - last_xpos_) + (ypos_ - last_ypos_) * (ypos_ - last_ypos_) ;
-        double dist = Math.sqrt(distsq) ;
-        speed_ = dist / dt ;
-
-        last_xpos_ = xpos_ ;
-        last_ypos_ = ypos_ ;
+        physics_.run(leftpower * left_motor_mult_, rightpower * right_motor_mult_, dt) ;
+        double lrevs = physics_.getLeftRevolutions() ;
+        double rrevs = physics_.getRightRevolutions() ;
 
         //
         // Compute the encoder ticks based on the position of the left and right
@@ -604,22 +519,20 @@ public class TankDriveModel extends SimulationModel {
         //
         // Set the navx angle based on the robot angle.
         //
-        double deg = XeroMath.normalizeAngleDegrees(-XeroMath.rad2deg(angle_)) ;
+        double deg = XeroMath.normalizeAngleDegrees(-XeroMath.rad2deg(physics_.getAngleRadians())) ;
         if (navx_ != null) {
             navx_.setYaw(deg);
-            navx_.setTotalAngle(XeroMath.rad2deg(total_angle_));
+            navx_.setTotalAngle(XeroMath.rad2deg(physics_.getTotalAngleRadians()));
         }
 
         MessageLogger logger = getEngine().getRobot().getMessageLogger() ;
         logger.startMessage(MessageType.Debug, getLoggerID()) ;
         logger.add("lp", leftpower) ;
         logger.add("rp", rightpower) ;
-        logger.add("lrps", current_left_rps_) ;
-        logger.add("rrps", current_right_rps_) ;
-        logger.add("dl", dleft) ;
-        logger.add("dr", dright) ;
-        logger.add("lpos", left_pos_) ;
-        logger.add("rpos", right_pos_) ;
+        logger.add("lrps", physics_.getLeftRPS()) ;
+        logger.add("rrps", physics_.getRightRPS()) ;
+        logger.add("lpos", physics_.getLeftPosition()) ;
+        logger.add("rpos", physics_.getRightPosition()) ;
         logger.add("lrevs", lrevs) ;
         logger.add("rrevs", rrevs) ;
         logger.add("lenc" , left_enc_value_) ;
@@ -648,7 +561,10 @@ public class TankDriveModel extends SimulationModel {
             }
 
             try {
-                xpos_ = value.getDouble();
+                if (physics_ != null)
+                    physics_.setXPos(value.getDouble()) ;
+                else
+                    xpos_ = value.getDouble();
             } catch (BadParameterTypeException e) {
             }
         }
@@ -664,7 +580,10 @@ public class TankDriveModel extends SimulationModel {
             }
 
             try {
-                ypos_ = value.getDouble();
+                if (physics_ != null)
+                    physics_.setYPos(value.getDouble()) ;
+                else
+                    ypos_ = value.getDouble();
             } catch (BadParameterTypeException e) {
             }
         }  
@@ -680,52 +599,11 @@ public class TankDriveModel extends SimulationModel {
             }
 
             try {
-                angle_ = XeroMath.deg2rad(value.getDouble()) ;
+                if (physics_ != null)
+                    physics_.setAngleRadians(XeroMath.deg2rad(value.getDouble())) ;
             } catch (BadParameterTypeException e) {
             }
         }               
         return true ;
     }
-
-    //
-    // Update the angle of the robot given the left and right positions of the
-    // robot.
-    //
-    private void updatePosition(double dleft, double dright, double angle) {
-        if (Math.abs(dleft - dright) < 1e-6) {
-            xpos_ += dleft * Math.cos(angle) ;
-            ypos_ += dright * Math.sin(angle) ;
-        }
-        else {
-            double r = width_ * (dleft + dright) / (2 * (dright - dleft)) ;
-            double wd = (dright - dleft) / width_ ;
-            xpos_ = xpos_ + r * Math.sin(wd + angle) - r * Math.sin(angle) ;
-            ypos_ = ypos_ - r * Math.cos(wd + angle) + r * Math.cos(angle) ;
-        }
-
-        double dangle = XeroMath.normalizeAngleRadians(angle_ - last_angle_) ;
-        total_angle_ += dangle ;
-    }
-
-    //
-    // Cap the velocity so that it does not exceed the maximum allowed change in a 
-    // single simlator loop
-    //
-    private double capVelocity(double prev, double target) {
-        double ret = 0.0 ;
-
-        if (target > prev) {
-            if (target > prev + max_change_)
-                ret = prev +  max_change_ ;
-            else
-                ret = target ;
-        } else {
-            if (target < prev - max_change_)
-                ret = prev - max_change_ ;
-            else
-                ret = target ;
-        }
-
-        return ret ;
-    }
-}
\ No newline at end of file
+}
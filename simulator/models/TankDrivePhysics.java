@@ -0,0 +1,291 @@
+package org.xero1425.simulator.models;
+
+import org.xero1425.misc.XeroMath;
+
+//
+// The physics of a tank drive base.  This is the motion of the drivebase given the power applied to the
+// left and right motors, without any connection to the simulated hardware, so the same physics are used by the
+// TankDriveModel in a robot simulation and by tools that run the path following controllers directly.
+//
+public class TankDrivePhysics {
+    //
+    // The diameter of the wheels
+    //
+    private double diameter_ ;
+
+    //
+    // The width of the robot
+    //
+    private double width_ ;
+
+    //
+    // The scrub factor for robot turns
+    //
+    private double scrub_ ;
+
+    //
+    // The revolutions traveled per power per second.
+    //
+    private double left_rps_per_power_per_time_ ;
+    private double right_rps_per_power_per_time_ ;
+
+    //
+    // The maximum allowed RPS speed change.  Provided to prevent the model
+    // from having infinite acceleration.
+    //
+    private double max_change_ ;
+
+    //
+    // The current speed of the motors in revolutions per second
+    //
+    private double current_left_rps_ ;
+    private double current_right_rps_ ;
+
+    //
+    // The current position of the left and right sides of the robot
+    //
+    private double left_pos_ ;
+    private double right_pos_ ;
+
+    //
+    // The current angle in radians.  This will always be between -PI and PI
+    //
+    private double angle_ ;
+
+    //
+    // The angle the last simulator loop.
+    //
+    private double last_angle_ ;
+
+    //
+    // The total angle traveled.  This will continue to beyond +/- PI
+    //
+    private double total_angle_ ;
+
+    //
+    // The speed of the robot, this is relative to the center of the robot.
+    //
+    private double speed_ ;
+
+    //
+    // The current position of the center of the robot
+    //
+    private double xpos_ ;
+    private double ypos_ ;
+
+    //
+    // The position of the center of the robot last simulator loop
+    //
+    private double last_xpos_ ;
+    private double last_ypos_ ;
+
+    /// \brief create the physics for a tank drive
+    /// \param diameter the diameter of the wheels
+    /// \param width the width of the robot
+    /// \param scrub the scrub factor for robot turns
+    /// \param maxvel the maximum velocity of the robot
+    /// \param maxaccel the maximum acceleration of the robot
+    public TankDrivePhysics(double diameter, double width, double scrub, double maxvel, double maxaccel) {
+        diameter_ = diameter ;
+        width_ = width ;
+        scrub_ = scrub ;
+
+        //
+        // Compute the RPS values based on the characteristics of the robot
+        //
+        double circum = diameter_ * Math.PI ;
+        left_rps_per_power_per_time_ = maxvel / circum ;
+        right_rps_per_power_per_time_ = maxvel / circum ;
+
+        //
+        // Compute the max change based on acceleration
+        //
+        max_change_ = maxaccel / circum ;
+    }
+
+    /// \brief run the physics for one simulator loop
+    /// \param leftpower the power applied to the left motors
+    /// \param rightpower the power applied to the right motors
+    /// \param dt the amount of time that has passed since the last simulator loop
+    public void run(double leftpower, double rightpower, double dt) {
+        //
+        // Calculated the desired left and right revolutions per second based on the motor power
+        //
+        double desired_left_rps = left_rps_per_power_per_time_ * leftpower ;
+        double desired_right_rps = right_rps_per_power_per_time_ * rightpower ;
+
+        //
+        // Calculate the actual left and right revolutions per second based on the maximum allows acceleration
+        // of the robot.
+        //
+        current_left_rps_ = capVelocity(current_left_rps_, desired_left_rps) ;
+        current_right_rps_ = capVelocity(current_right_rps_, desired_right_rps) ;
+
+        //
+        // Calculate the left and right distance traveled this robot loop
+        //
+        double dleft = current_left_rps_ * dt * diameter_ * Math.PI ;
+        double dright = current_right_rps_ * dt * diameter_ * Math.PI ;
+
+        //
+        // Update the left and right position of the robot
+        //
+        left_pos_ += dleft ;
+        right_pos_ += dright ;
+
+        //
+        // Update the angle of the robot based on the travel of the robot
+        //
+        double dv = (dright - dleft) / 2 * scrub_ ;
+        angle_ = XeroMath.normalizeAngleRadians(angle_ + (dv * 2.0) / width_) ;
+        updatePosition(dleft, dright, angle_) ;
+
+        //
+        // Calculate the speed of the robot
+        //
+        double distsq = (xpos_ - last_xpos_) * (xpos_ - last_xpos_) + (ypos_ - last_ypos_) * (ypos_ - last_ypos_) ;
+        double dist = Math.sqrt(distsq) ;
+        speed_ = dist / dt ;
+
+        last_xpos_ = xpos_ ;
+        last_ypos_ = ypos_ ;
+    }
+
+    /// \brief return the left motor speed in revolutions per second
+    /// \returns the left motor speed in revolutions per second
+    public double getLeftRPS() {
+        return current_left_rps_ ;
+    }
+
+    /// \brief return the right motor speed in revolutions per second
+    /// \returns the right motor speed in revolutions per second
+    public double getRightRPS() {
+        return current_right_rps_ ;
+    }
+
+    /// \brief return the distance traveled by the left side of the robot
+    /// \returns the distance traveled by the left side of the robot
+    public double getLeftPosition() {
+        return left_pos_ ;
+    }
+
+    /// \brief return the distance traveled by the right side of the robot
+    /// \returns the distance traveled by the right side of the robot
+    public double getRightPosition() {
+        return right_pos_ ;
+    }
+
+    /// \brief return the number of revolutions of the left wheels
+    /// \returns the number of revolutions of the left wheels
+    public double getLeftRevolutions() {
+        return left_pos_ / (Math.PI * diameter_) ;
+    }
+
+    /// \brief return the number of revolutions of the right wheels
+    /// \returns the number of revolutions of the right wheels
+    public double getRightRevolutions() {
+        return right_pos_ / (Math.PI * diameter_) ;
+    }
+
+    /// \brief return the robot x position
+    /// \returns the robot x position
+    public double getXPos() {
+        return xpos_ ;
+    }
+
+    /// \brief return the robot y position
+    /// \returns the robot y position
+    public double getYPos() {
+        return ypos_ ;
+    }
+
+    /// \brief return the robot angle in radians
+    /// \returns the robot angle in radians
+    public double getAngleRadians() {
+        return angle_ ;
+    }
+
+    /// \brief return the total angle traveled in radians
+    /// \returns the total angle traveled in radians
+    public double getTotalAngleRadians() {
+        return total_angle_ ;
+    }
+
+    /// \brief return the speed of the robot
+    /// \return the speed of the robot
+    public double getSpeed() {
+        return speed_ ;
+    }
+
+    /// \brief return the width of the robot
+    /// \return the width of the robot
+    public double getWidth() {
+        return width_ ;
+    }
+
+    /// \brief return the scrub factor of the robot
+    /// \return the scrub factor of the robot
+    public double getScrub() {
+        return scrub_ ;
+    }
+
+    /// \brief set the robot x position
+    /// \param x the robot x position
+    public void setXPos(double x) {
+        xpos_ = x ;
+    }
+
+    /// \brief set the robot y position
+    /// \param y the robot y position
+    public void setYPos(double y) {
+        ypos_ = y ;
+    }
+
+    /// \brief set the robot angle
+    /// \param angle the robot angle in radians
+    public void setAngleRadians(double angle) {
+        angle_ = angle ;
+    }
+
+    //
+    // Update the angle of the robot given the left and right positions of the
+    // robot.
+    //
+    private void updatePosition(double dleft, double dright, double angle) {
+        if (Math.abs(dleft - dright) < 1e-6) {
+            xpos_ += dleft * Math.cos(angle) ;
+            ypos_ += dright * Math.sin(angle) ;
+        }
+        else {
+            double r = width_ * (dleft + dright) / (2 * (dright - dleft)) ;
+            double wd = (dright - dleft) / width_ ;
+            xpos_ = xpos_ + r * Math.sin(wd + angle) - r * Math.sin(angle) ;
+            ypos_ = ypos_ - r * Math.cos(wd + angle) + r * Math.cos(angle) ;
+        }
+
+        double dangle = XeroMath.normalizeAngleRadians(angle_ - last_angle_) ;
+        total_angle_ += dangle ;
+    }
+
+    //
+    // Cap the velocity so that it does not exceed the maximum allowed change in a
+    // single simlator loop
+    //
+    private double capVelocity(double prev, double target) {
+        double ret = 0.0 ;
+
+        if (target > prev) {
+            if (target > prev + max_change_)
+                ret = prev +  max_change_ ;
+            else
+                ret = target ;
+        } else {
+            if (target < prev - max_change_)
+                ret = prev - max_change_ ;
+            else
+                ret = target ;
+        }
+
+        return ret ;
+    }
+}
@@ -0,0 +1,148 @@
+package org.xero1425.simulator.patheval;
+
+import org.xero1425.base.PositionTracker;
+import org.xero1425.base.tankdrive.ITankDriveState;
+import org.xero1425.misc.Speedometer;
+import org.xero1425.misc.XeroMath;
+import org.xero1425.simulator.models.TankDrivePhysics;
+
+import edu.wpi.first.math.geometry.Pose2d;
+
+//
+// A tank drive for evaluating path following controllers without robot hardware.  The motion comes from the
+// same physics as the TankDriveModel, and the measured state is computed from the physics the same way the
+// TankDriveSubsystem computes it from the encoders and gyro, so the controllers see the same quantized distances
+// and filtered velocities they see in a robot simulation.
+//
+public class PathEvalDrive implements ITankDriveState {
+    //
+    // The number of physics steps for each robot loop, matching the simulation engine
+    //
+    private static final int StepsPerLoop = 10 ;
+
+    private TankDrivePhysics physics_ ;
+    private PositionTracker tracker_ ;
+    private double inches_per_tick_ ;
+
+    private Speedometer angular_ ;
+    private Speedometer left_linear_ ;
+    private Speedometer right_linear_ ;
+
+    private double dist_l_ ;
+    private double dist_r_ ;
+    private double last_dist_l_ ;
+    private double last_dist_r_ ;
+
+    private double left_power_ ;
+    private double right_power_ ;
+
+    /// \brief create the drive
+    /// \param physics the physics for the drivebase
+    /// \param inches_per_tick the distance for each encoder tick
+    /// \param samples the number of samples used to compute the velocities
+    public PathEvalDrive(TankDrivePhysics physics, double inches_per_tick, int samples) {
+        physics_ = physics ;
+        inches_per_tick_ = inches_per_tick ;
+        tracker_ = new PositionTracker(physics.getWidth(), physics.getScrub()) ;
+
+        angular_ = new Speedometer("angles", samples, true) ;
+        left_linear_ = new Speedometer("left", samples, false) ;
+        right_linear_ = new Speedometer("right", samples, false) ;
+    }
+
+    /// \brief place the robot at a pose, as the stimulus file does at the start of a simulation
+    /// \param pose the pose of the robot
+    public void place(Pose2d pose) {
+        physics_.setXPos(pose.getX()) ;
+        physics_.setYPos(pose.getY()) ;
+        physics_.setAngleRadians(pose.getRotation().getRadians()) ;
+    }
+
+    /// \brief returns the physics for the drivebase
+    /// \returns the physics for the drivebase
+    public TankDrivePhysics getPhysics() {
+        return physics_ ;
+    }
+
+    /// \brief set the pose of the position tracker
+    /// \param pose the pose for the robot
+    public void setPose(Pose2d pose) {
+        tracker_.setPose(pose) ;
+    }
+
+    /// \brief set the power for the left and right sides of the drivebase
+    /// \param left the power for the left side
+    /// \param right the power for the right side
+    public void setPower(double left, double right) {
+        left_power_ = left ;
+        right_power_ = right ;
+    }
+
+    /// \brief run the physics for one robot loop with the power last set
+    /// \param period the length of the robot loop in seconds
+    public void runPhysics(double period) {
+        double dt = period / StepsPerLoop ;
+        for(int i = 0 ; i < StepsPerLoop ; i++)
+            physics_.run(left_power_, right_power_, dt) ;
+    }
+
+    /// \brief compute the measured state from the physics, as the TankDriveSubsystem does each robot loop
+    /// \param dt the time since the last robot loop
+    public void computeState(double dt) {
+        int ticks_left = (int)(physics_.getLeftPosition() / inches_per_tick_) ;
+        int ticks_right = (int)(physics_.getRightPosition() / inches_per_tick_) ;
+
+        dist_l_ = ticks_left * inches_per_tick_ ;
+        dist_r_ = ticks_right * inches_per_tick_ ;
+
+        double angle = XeroMath.normalizeAngleDegrees(XeroMath.rad2deg(physics_.getAngleRadians())) ;
+        angular_.update(dt, angle) ;
+
+        tracker_.updatePosition(dist_l_ - last_dist_l_, dist_r_ - last_dist_r_, angle) ;
+        left_linear_.update(dt, dist_l_) ;
+        right_linear_.update(dt, dist_r_) ;
+
+        last_dist_l_ = dist_l_ ;
+        last_dist_r_ = dist_r_ ;
+    }
+
+    @Override
+    public double getLeftDistance() {
+        return dist_l_ ;
+    }
+
+    @Override
+    public double getRightDistance() {
+        return dist_r_ ;
+    }
+
+    @Override
+    public double getLeftVelocity() {
+        return left_linear_.getVelocity() ;
+    }
+
+    @Override
+    public double getRightVelocity() {
+        return right_linear_.getVelocity() ;
+    }
+
+    @Override
+    public double getAngle() {
+        return angular_.getDistance() ;
+    }
+
+    @Override
+    public Pose2d getPose() {
+        return tracker_.getPose() ;
+    }
+
+    @Override
+    public double getWidth() {
+        return tracker_.getWidth() ;
+    }
+
+    @Override
+    public double getScrub() {
+        return tracker_.getScrub() ;
+    }
+}
@@ -0,0 +1,140 @@
+package org.xero1425.simulator.patheval;
+
+//
+// The result of following one path with one path following controller
+//
+public class PathEvalResult {
+    // The path and the controller evaluated
+    private String path_ ;
+    private String follower_ ;
+
+    // True if the controller reported the path complete before the time limit
+    private boolean complete_ ;
+
+    // The number of robot loops run
+    private int loops_ ;
+
+    // The largest and root mean square distance from the robot to the path
+    private double max_xtrack_ ;
+    private double rms_xtrack_ ;
+
+    // The distance and heading difference from the robot to the end of the path when following stopped
+    private double final_dist_ ;
+    private double final_angle_ ;
+
+    // The mean and largest time spent in the controller each robot loop, in microseconds
+    private double mean_us_ ;
+    private double max_us_ ;
+
+    // The mean memory allocated by the controller each robot loop after the first, in bytes, or NaN if not measured
+    private double alloc_bytes_ ;
+
+    // The error if the evaluation could not be run, otherwise null
+    private String error_ ;
+
+    /// \brief create the result for an evaluation that could not be run
+    /// \param path the name of the path
+    /// \param follower the name of the path following controller
+    /// \param error the reason the evaluation could not be run
+    public PathEvalResult(String path, String follower, String error) {
+        path_ = path ;
+        follower_ = follower ;
+        error_ = error ;
+    }
+
+    /// \brief create the result for an evaluation
+    /// \param path the name of the path
+    /// \param follower the name of the path following controller
+    /// \param complete true if the controller reported the path complete
+    /// \param loops the number of robot loops run
+    /// \param max_xtrack the largest distance from the robot to the path
+    /// \param rms_xtrack the root mean square distance from the robot to the path
+    /// \param final_dist the distance from the robot to the end of the path
+    /// \param final_angle the heading difference in degrees from the robot to the end of the path
+    /// \param mean_us the mean time in microseconds spent in the controller each robot loop
+    /// \param max_us the largest time in microseconds spent in the controller in a robot loop
+    /// \param alloc_bytes the mean bytes allocated by the controller each robot loop after the first
+    public PathEvalResult(String path, String follower, boolean complete, int loops, double max_xtrack, double rms_xtrack,
+                          double final_dist, double final_angle, double mean_us, double max_us, double alloc_bytes) {
+        path_ = path ;
+        follower_ = follower ;
+        complete_ = complete ;
+        loops_ = loops ;
+        max_xtrack_ = max_xtrack ;
+        rms_xtrack_ = rms_xtrack ;
+        final_dist_ = final_dist ;
+        final_angle_ = final_angle ;
+        mean_us_ = mean_us ;
+        max_us_ = max_us ;
+        alloc_bytes_ = alloc_bytes ;
+        error_ = null ;
+    }
+
+    public String getPath() {
+        return path_ ;
+    }
+
+    public String getFollower() {
+        return follower_ ;
+    }
+
+    public boolean isComplete() {
+        return complete_ ;
+    }
+
+    public int getLoops() {
+        return loops_ ;
+    }
+
+    public double getMaxCrossTrack() {
+        return max_xtrack_ ;
+    }
+
+    public double getRMSCrossTrack() {
+        return rms_xtrack_ ;
+    }
+
+    public double getFinalDistance() {
+        return final_dist_ ;
+    }
+
+    public double getFinalAngle() {
+        return final_angle_ ;
+    }
+
+    public double getMeanMicroseconds() {
+        return mean_us_ ;
+    }
+
+    public double getMaxMicroseconds() {
+        return max_us_ ;
+    }
+
+    public double getAllocatedBytes() {
+        return alloc_bytes_ ;
+    }
+
+    public String getError() {
+        return error_ ;
+    }
+
+    /// \brief returns the header line for the report
+    /// \returns the header line for the report
+    public static String header() {
+        return String.format("%-24s %-12s %-8s %6s %9s %9s %9s %9s %9s %9s %9s",
+                "path", "follower", "status", "loops", "xtrk-max", "xtrk-rms", "end-dist", "end-ang", "us-mean", "us-max",
+                "bytes") ;
+    }
+
+    /// \brief returns the line for this result in the report
+    /// \returns the line for this result in the report
+    @Override
+    public String toString() {
+        if (error_ != null)
+            return String.format("%-24s %-12s %-8s %s", path_, follower_, "error", error_) ;
+
+        return String.format("%-24s %-12s %-8s %6d %9.3f %9.3f %9.3f %9.3f %9.2f %9.2f %9.1f",
+                path_, follower_, complete_ ? "done" : "timeout", loops_, max_xtrack_, rms_xtrack_,
+                final_dist_, final_angle_, mean_us_, max_us_, alloc_bytes_) ;
+    }
+}
@@ -0,0 +1,453 @@
+package org.xero1425.simulator.patheval;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.JSONValue;
+import org.xero1425.base.tankdrive.ITankDrivePathController;
+import org.xero1425.base.tankdrive.TankDrivePathFollowerCtrl;
+import org.xero1425.base.tankdrive.TankDrivePurePursuitCtrl;
+import org.xero1425.base.tankdrive.TankDriveRamseteCtrl;
+import org.xero1425.misc.ISettingsSupplier;
+import org.xero1425.misc.JsonSettingsParser;
+import org.xero1425.misc.MessageLogger;
+import org.xero1425.misc.MessageType;
+import org.xero1425.misc.XeroMath;
+import org.xero1425.misc.XeroPath;
+import org.xero1425.misc.XeroPathManager;
+import org.xero1425.misc.XeroPathSpatialIndex;
+import org.xero1425.misc.XeroPathType;
+import org.xero1425.simulator.models.TankDrivePhysics;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+
+//
+// Follows every path in a paths directory with each tank drive path following controller against the
+// TankDriveModel physics, without robot hardware or a robot simulation, and reports how well each path was
+// followed.  The controllers are the same ones used by the path following actions, and read their parameters
+// from the robot settings file.  The drivebase physics are read from the tankdrive model in the simulation
+// models file.  Each path and controller is evaluated on its own thread, using all of the processors.
+//
+// For each path and controller the report gives the largest and root mean square distance from the robot to the
+// path, the distance and heading difference from the robot to the end of the path when following stopped, and
+// the time spent in the controller each robot loop, and the memory the controller allocates each robot loop once
+// it is following the path.  The controllers are meant to allocate nothing in the robot loop.
+//
+// usage: PathEvaluator settingsfile modelfile pathsdir [-subsystem name] [-define name] [-period seconds]
+//                      [-threads count] [-followers follower,purepursuit,ramsete]
+//
+public class PathEvaluator {
+    //
+    // The names of the path following controllers
+    //
+    public static final String Follower = "follower" ;
+    public static final String PurePursuit = "purepursuit" ;
+    public static final String Ramsete = "ramsete" ;
+
+    //
+    // The time allowed past the end of the path before the evaluation is stopped
+    //
+    private static final double ExtraTime = 5.0 ;
+
+    private MessageLogger logger_ ;
+    private ISettingsSupplier settings_ ;
+    private String subsystem_ ;
+    private double period_ ;
+
+    // The physical characteristics of the drivebase from the tankdrive model
+    private double diameter_ ;
+    private double width_ ;
+    private double scrub_ ;
+    private double max_velocity_ ;
+    private double max_accel_ ;
+    private double inches_per_tick_ ;
+
+    /// \brief create the evaluator
+    /// \param logger the message logger
+    /// \param settings the robot settings
+    /// \param subsystem the name of the tankdrive subsystem in the settings
+    /// \param period the length of a robot loop in seconds
+    public PathEvaluator(MessageLogger logger, ISettingsSupplier settings, String subsystem, double period) {
+        logger_ = logger ;
+        settings_ = settings ;
+        subsystem_ = subsystem ;
+        period_ = period ;
+    }
+
+    /// \brief read the physical characteristics of the drivebase from the tankdrive model in a models file
+    /// \param file the simulation models file
+    /// \returns true if the tankdrive model was found with all of its properties
+    public boolean readModelFile(String file) {
+        JSONObject props = null ;
+
+        try {
+            Object obj = JSONValue.parse(new String(Files.readAllBytes(Paths.get(file)))) ;
+            if (obj instanceof JSONObject && ((JSONObject)obj).get("models") instanceof JSONArray) {
+                for(Object model : (JSONArray)((JSONObject)obj).get("models")) {
+                    if (model instanceof JSONObject && "tankdrive".equals(((JSONObject)model).get("model"))) {
+                        Object p = ((JSONObject)model).get("props") ;
+                        if (p instanceof JSONObject)
+                            props = (JSONObject)p ;
+                        break ;
+                    }
+                }
+            }
+        }
+        catch(IOException ex) {
+            logger_.startMessage(MessageType.Error) ;
+            logger_.add("cannot read models file ").addQuoted(file).add(" - ").add(ex.getMessage()).endMessage();
+            return false ;
+        }
+
+        if (props == null) {
+            logger_.startMessage(MessageType.Error) ;
+            logger_.add("models file ").addQuoted(file).add(" does not contain a tankdrive model with properties").endMessage();
+            return false ;
+        }
+
+        try {
+            diameter_ = getProperty(props, "diameter") ;
+            width_ = getProperty(props, "width") ;
+            scrub_ = getProperty(props, "scrub") ;
+            inches_per_tick_ = getProperty(props, "inches_per_tick") ;
+            max_velocity_ = getProperty(props, "maxvelocity") ;
+            max_accel_ = getProperty(props, "maxacceleration") ;
+        }
+        catch(IllegalArgumentException ex) {
+            logger_.startMessage(MessageType.Error) ;
+            logger_.add("models file ").addQuoted(file).add(" - ").add(ex.getMessage()).endMessage();
+            return false ;
+        }
+
+        return true ;
+    }
+
+    /// \brief returns the type of path each path following controller follows
+    /// \param follower the name of the path following controller
+    /// \returns the type of path the controller follows
+    public static XeroPathType getPathType(String follower) {
+        if (follower.equals(Follower))
+            return XeroPathType.TankPathFollowing ;
+        else if (follower.equals(PurePursuit))
+            return XeroPathType.TankPurePursuit ;
+        else if (follower.equals(Ramsete))
+            return XeroPathType.TankRamsete ;
+
+        throw new IllegalArgumentException("unknown follower '" + follower + "'") ;
+    }
+
+    /// \brief evaluate every path in a directory with each of the path following controllers given
+    /// \param pathsdir the directory containing the paths
+    /// \param followers the names of the path following controllers
+    /// \param threads the number of threads to use
+    /// \returns the results, ordered by controller and then path
+    public List<PathEvalResult> evaluate(String pathsdir, List<String> followers, int threads) throws Exception {
+        List<PathEvalTask> tasks = new ArrayList<PathEvalTask>() ;
+
+        for(String follower : followers) {
+            XeroPathManager mgr = new XeroPathManager(logger_, pathsdir, getPathType(follower)) ;
+            String ext = mgr.getExtensions()[0] ;
+
+            List<String> names ;
+            try (Stream<Path> walk = Files.list(Paths.get(pathsdir))) {
+                names = walk.map(x -> x.getFileName().toString()).filter(f -> f.endsWith(ext)).sorted()
+                            .map(f -> f.substring(0, f.length() - ext.length())).collect(Collectors.toList()) ;
+            }
+
+            for(String name : names) {
+                if (!mgr.loadPath(name)) {
+                    tasks.add(new PathEvalTask(name, follower, null, null)) ;
+                    continue ;
+                }
+
+                //
+                // Build the tables a path computes when first used here, so the time to build them is not
+                // counted as time spent in the controller.  Sampling inside the path builds the time step table.
+                //
+                XeroPath path = mgr.getPath(name) ;
+                XeroPath center = centerPath(path) ;
+                double[] sample = new double[XeroPath.Columns] ;
+                for(int i = 0 ; i < path.getDataCounts() ; i++) {
+                    path.sampleAt(i, path.getDuration() / 2.0, sample) ;
+                    path.getSpatialIndex(i) ;
+                    path.getLength(i) ;
+                }
+                center.getSpatialIndex(0) ;
+
+                tasks.add(new PathEvalTask(name, follower, path, center)) ;
+            }
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads) ;
+        List<PathEvalResult> results = new ArrayList<PathEvalResult>() ;
+        try {
+            List<Future<PathEvalResult>> futures = new ArrayList<Future<PathEvalResult>>() ;
+            for(PathEvalTask task : tasks)
+                futures.add(pool.submit(() -> run(task))) ;
+
+            for(Future<PathEvalResult> f : futures)
+                results.add(f.get()) ;
+        }
+        finally {
+            pool.shutdown() ;
+        }
+
+        return results ;
+    }
+
+    //
+    // Follow one path with one controller
+    //
+    private PathEvalResult run(PathEvalTask task) {
+        if (task.path_ == null)
+            return new PathEvalResult(task.name_, task.follower_, "cannot load path") ;
+
+        ITankDrivePathController ctrl ;
+        try {
+            ctrl = createController(task.follower_) ;
+        }
+        catch(Exception ex) {
+            return new PathEvalResult(task.name_, task.follower_, "cannot create controller - " + ex.getMessage()) ;
+        }
+
+        XeroPath path = task.path_ ;
+        XeroPath center = task.center_ ;
+        XeroPathSpatialIndex index = center.getSpatialIndex(0) ;
+        double[] closest = new double[XeroPathSpatialIndex.OutputSize] ;
+        int last = center.getSize() - 1 ;
+
+        //
+        // Place the robot at the start of the path, then start the controller and set the position tracker
+        // to the start of the path, as the path following actions do
+        //
+        TankDrivePhysics physics = new TankDrivePhysics(diameter_, width_, scrub_, max_velocity_, max_accel_) ;
+        PathEvalDrive drive = new PathEvalDrive(physics, inches_per_tick_, 2) ;
+        drive.place(new Pose2d(center.getX(0, 0), center.getY(0, 0), Rotation2d.fromDegrees(center.getHeading(0, 0)))) ;
+        drive.computeState(period_) ;
+
+        ctrl.start(path, 0.0, drive) ;
+        drive.setPose(ctrl.getStartPose()) ;
+
+        //
+        // The memory allocated by this thread is measured around each call to the controller.  The first call
+        // is not counted, as it may build the tables a path computes when first used.
+        //
+        com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean() ;
+        boolean measure = mx.isThreadAllocatedMemorySupported() && mx.isThreadAllocatedMemoryEnabled() ;
+        long tid = Thread.currentThread().getId() ;
+        long allocated = 0 ;
+
+        int maxloops = (int)Math.ceil((path.getDuration() + ExtraTime) / period_) ;
+        int loops = 0 ;
+        boolean complete = false ;
+        int samples = 0 ;
+        double maxxtrack = 0.0, sumsq = 0.0 ;
+        long totalns = 0, maxns = 0 ;
+
+        while (loops < maxloops) {
+            drive.computeState(period_) ;
+
+            long bytes = measure ? mx.getThreadAllocatedBytes(tid) : 0 ;
+            long start = System.nanoTime() ;
+            boolean done = ctrl.run(loops * period_, period_, drive) ;
+            long elapsed = System.nanoTime() - start ;
+            if (measure && loops > 0)
+                allocated += mx.getThreadAllocatedBytes(tid) - bytes ;
+
+            totalns += elapsed ;
+            maxns = Math.max(maxns, elapsed) ;
+            loops++ ;
+
+            if (done) {
+                complete = true ;
+                break ;
+            }
+
+            drive.setPower(ctrl.getLeftPower(), ctrl.getRightPower()) ;
+            drive.runPhysics(period_) ;
+
+            index.closest(physics.getXPos(), physics.getYPos(), 0, closest) ;
+            double xtrack = closest[XeroPathSpatialIndex.Distance] ;
+            maxxtrack = Math.max(maxxtrack, xtrack) ;
+            sumsq += xtrack * xtrack ;
+            samples++ ;
+        }
+
+        double enddist = Math.hypot(physics.getXPos() - center.getX(0, last), physics.getYPos() - center.getY(0, last)) ;
+        double endangle = XeroMath.normalizeAngleDegrees(XeroMath.rad2deg(physics.getAngleRadians()) - center.getHeading(0, last)) ;
+
+        return new PathEvalResult(task.name_, task.follower_, complete, loops, maxxtrack,
+                                  (samples > 0) ? Math.sqrt(sumsq / samples) : 0.0,
+                                  enddist, endangle, totalns / 1000.0 / loops, maxns / 1000.0,
+                                  (measure && loops > 1) ? (double)allocated / (loops - 1) : Double.NaN) ;
+    }
+
+    //
+    // Create a path following controller from the settings.  Each evaluation has its own controller.
+    //
+    private ITankDrivePathController createController(String follower) throws Exception {
+        String prefix = "subsystems:" + subsystem_ + ":" ;
+
+        if (follower.equals(Follower)) {
+            boolean timed = TankDrivePathFollowerCtrl.isTimedDefault(settings_, subsystem_) ;
+            return new TankDrivePathFollowerCtrl(settings_, subsystem_, false, timed, period_) ;
+        }
+        else if (follower.equals(PurePursuit)) {
+            return new TankDrivePurePursuitCtrl(settings_, subsystem_) ;
+        }
+        else if (follower.equals(Ramsete)) {
+            double b = settings_.get(prefix + "ramsete:b").getDouble() ;
+            double zeta = settings_.get(prefix + "ramsete:zeta").getDouble() ;
+            return new TankDriveRamseteCtrl(settings_, subsystem_, b, zeta, period_) ;
+        }
+
+        throw new IllegalArgumentException("unknown follower '" + follower + "'") ;
+    }
+
+    //
+    // Return the path followed by the center of the robot.  A path with left and right wheels is averaged.
+    //
+    private static XeroPath centerPath(XeroPath path) throws Exception {
+        if (path.getDataCounts() == 1)
+            return path ;
+
+        XeroPath center = new XeroPath(path.getName(), 1) ;
+        center.reserve(path.getSize()) ;
+        for(int i = 0 ; i < path.getSize() ; i++) {
+            double x = (path.getX(0, i) + path.getX(1, i)) / 2.0 ;
+            double y = (path.getY(0, i) + path.getY(1, i)) / 2.0 ;
+            double pos = (path.getPosition(0, i) + path.getPosition(1, i)) / 2.0 ;
+            double vel = (path.getVelocity(0, i) + path.getVelocity(1, i)) / 2.0 ;
+            double accel = (path.getAccel(0, i) + path.getAccel(1, i)) / 2.0 ;
+            double jerk = (path.getJerk(0, i) + path.getJerk(1, i)) / 2.0 ;
+            center.addPathSegment(0, path.getTime(0, i), x, y, pos, vel, accel, jerk, path.getHeading(0, i)) ;
+        }
+
+        return center ;
+    }
+
+    private static double getProperty(JSONObject props, String name) {
+        Object v = props.get(name) ;
+        if (!(v instanceof Number))
+            throw new IllegalArgumentException("tankdrive model property '" + name + "' is missing or is not a number") ;
+
+        return ((Number)v).doubleValue() ;
+    }
+
+    //
+    // One path and controller to evaluate
+    //
+    private static class PathEvalTask {
+        public final String name_ ;
+        public final String follower_ ;
+        public final XeroPath path_ ;
+        public final XeroPath center_ ;
+
+        public PathEvalTask(String name, String follower, XeroPath path, XeroPath center) {
+            name_ = name ;
+            follower_ = follower ;
+            path_ = path ;
+            center_ = center ;
+        }
+    }
+
+    /// \brief evaluate the paths in a directory from the command line
+    /// \param args the command line arguments
+    public static void main(String[] args) {
+        String usage = "usage: PathEvaluator settingsfile modelfile pathsdir [-subsystem name] [-define name] " +
+                       "[-period seconds] [-threads count] [-followers follower,purepursuit,ramsete]" ;
+        if (args.length < 3) {
+            System.err.println(usage) ;
+            System.exit(1) ;
+        }
+
+        String subsystem = "tankdrive" ;
+        double period = 0.02 ;
+        int threads = Runtime.getRuntime().availableProcessors() ;
+        List<String> defines = new ArrayList<String>() ;
+        List<String> followers = List.of(Follower, PurePursuit, Ramsete) ;
+
+        try {
+            for(int i = 3 ; i < args.length ; i++) {
+                if (i + 1 == args.length)
+                    throw new IllegalArgumentException("option '" + args[i] + "' has no value") ;
+
+                String value = args[++i] ;
+                switch(args[i - 1]) {
+                case "-subsystem":
+                    subsystem = value ;
+                    break ;
+                case "-define":
+                    defines.add(value) ;
+                    break ;
+                case "-period":
+                    period = Double.parseDouble(value) ;
+                    break ;
+                case "-threads":
+                    threads = Integer.parseInt(value) ;
+                    break ;
+                case "-followers":
+                    followers = List.of(value.split(",")) ;
+                    for(String f : followers)
+                        getPathType(f) ;
+                    break ;
+                default:
+                    throw new IllegalArgumentException("unknown option '" + args[i - 1] + "'") ;
+                }
+            }
+        }
+        catch(IllegalArgumentException ex) {
+            System.err.println("PathEvaluator: " + ex.getMessage()) ;
+            System.err.println(usage) ;
+            System.exit(1) ;
+        }
+
+        MessageLogger logger = new MessageLogger() ;
+        logger.addDestination((mtype, sub, msg) -> System.err.println(msg)) ;
+
+        JsonSettingsParser settings = new JsonSettingsParser(logger) ;
+        for(String define : defines)
+            settings.addDefine(define) ;
+
+        if (!settings.readFile(args[0]))
+            System.exit(1) ;
+
+        PathEvaluator eval = new PathEvaluator(logger, settings, subsystem, period) ;
+        if (!eval.readModelFile(args[1]))
+            System.exit(1) ;
+
+        int errors = 0 ;
+        try {
+            long start = System.nanoTime() ;
+            List<PathEvalResult> results = eval.evaluate(args[2], followers, Math.max(threads, 1)) ;
+            double secs = (System.nanoTime() - start) / 1.0e9 ;
+
+            System.out.println(PathEvalResult.header()) ;
+            for(PathEvalResult result : results) {
+                System.out.println(result) ;
+                if (result.getError() != null)
+                    errors++ ;
+            }
+            System.out.println(String.format("evaluated %d paths in %.2f seconds, %d errors", results.size(), secs, errors)) ;
+        }
+        catch(Exception ex) {
+            System.err.println("PathEvaluator: cannot evaluate paths in '" + args[2] + "' - " + ex.getMessage()) ;
+            System.exit(1) ;
+        }
+
+        System.exit(errors == 0 ? 0 : 1) ;
+    }
+}
@@ -0,0 +1,99 @@
+package org.xero1425.simulator.runner;
+
+//
+// The result of running the robot code against one stimulus file
+//
+public class SimulationRunResult {
+    //
+    // How the simulation ended
+    //
+    public enum Status {
+        Passed,             // The simulation reported success
+        Failed,             // The simulation reported failure
+        Timeout,            // The simulation did not finish in the time allowed and was stopped
+        Crashed             // The simulation process ended without reporting a result
+    } ;
+
+    private String sim_ ;
+    private Status status_ ;
+
+    // The exit code of the simulation process
+    private int exit_code_ ;
+
+    // The counts reported by the simulation engine
+    private int passed_ ;
+    private int failed_ ;
+    private int events_left_ ;
+    private int errors_ ;
+
+    // The wall clock time to run the simulation, in seconds
+    private double seconds_ ;
+
+    /// \brief create the result for a simulation
+    /// \param sim the name of the stimulus file
+    /// \param status how the simulation ended
+    /// \param exit_code the exit code of the simulation process
+    /// \param passed the number of asserts that passed
+    /// \param failed the number of asserts that failed
+    /// \param events_left the number of events left unprocessed
+    /// \param errors the number of error messages logged by the robot code
+    /// \param seconds the wall clock time to run the simulation
+    public SimulationRunResult(String sim, Status status, int exit_code, int passed, int failed, int events_left,
+                               int errors, double seconds) {
+        sim_ = sim ;
+        status_ = status ;
+        exit_code_ = exit_code ;
+        passed_ = passed ;
+        failed_ = failed ;
+        events_left_ = events_left ;
+        errors_ = errors ;
+        seconds_ = seconds ;
+    }
+
+    public String getSim() {
+        return sim_ ;
+    }
+
+    public Status getStatus() {
+        return status_ ;
+    }
+
+    public int getExitCode() {
+        return exit_code_ ;
+    }
+
+    public int getPassedCount() {
+        return passed_ ;
+    }
+
+    public int getFailedCount() {
+        return failed_ ;
+    }
+
+    public int getEventsLeft() {
+        return events_left_ ;
+    }
+
+    public int getErrorCount() {
+        return errors_ ;
+    }
+
+    public double getSeconds() {
+        return seconds_ ;
+    }
+
+    /// \brief returns the header line for the report
+    /// \returns the header line for the report
+    public static String header() {
+        return String.format("%-32s %-8s %5s %7s %7s %7s %7s %8s",
+                "simulation", "status", "code", "passed", "failed", "events", "errors", "seconds") ;
+    }
+
+    /// \brief returns the line for this result in the report
+    /// \returns the line for this result in the report
+    @Override
+    public String toString() {
+        return String.format("%-32s %-8s %5d %7d %7d %7d %7d %8.2f",
+                sim_, status_.toString().toLowerCase(), exit_code_, passed_, failed_, events_left_, errors_, seconds_) ;
+    }
+}
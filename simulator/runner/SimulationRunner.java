@@ -0,0 +1,256 @@
+package org.xero1425.simulator.runner;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.xero1425.simulator.engine.SimulationEngine;
+
+//
+// Runs the robot code against many stimulus files at once and reports the combined result.  The simulated
+// hardware (HAL) and the TimedRobot are global to a process, so each stimulus file is run in its own process
+// with its own simulation engine.  The command to start the robot code is given on the command line, with
+// {sim} replaced by the name of the stimulus file and {log} replaced by the name of a log file for that
+// simulation.  The robot code should run the simulation headless so each one runs as fast as possible.  The
+// main() of the robot program passes its arguments to SimArgs.parse(), so a command such as
+//
+//     java -jar robot.jar --simfile {sim} --logfile {log} --headless
+//
+// runs one stimulus file headless.  Headless simulations do not run the NetworkTables server, so they do not
+// contend for its port.  Up to one simulation per processor runs at a time.
+//
+// The output of each simulation process is written to a file in the log directory.  The simulation engine
+// prints its result on a line starting with SimulationEngine.ResultTag, which is read from that file.
+//
+// usage: SimulationRunner [-simsdir dir] [-logdir dir] [-sims name,name] [-threads count] [-timeout seconds]
+//                         -- command args
+//
+public class SimulationRunner {
+    private String sims_dir_ ;
+    private String log_dir_ ;
+    private List<String> command_ ;
+    private double timeout_ ;
+
+    /// \brief create the runner
+    /// \param simsdir the directory containing the stimulus files
+    /// \param logdir the directory for the output and log file of each simulation
+    /// \param command the command to start the robot code, with {sim} and {log} to be replaced
+    /// \param timeout the longest time in seconds a simulation may run before it is stopped
+    public SimulationRunner(String simsdir, String logdir, List<String> command, double timeout) {
+        sims_dir_ = simsdir ;
+        log_dir_ = logdir ;
+        command_ = command ;
+        timeout_ = timeout ;
+    }
+
+    /// \brief returns the names of all of the stimulus files in the simulations directory
+    /// \returns the names of the stimulus files, without the .json extension, in sorted order
+    public List<String> findSimulations() throws IOException {
+        try (Stream<Path> walk = Files.list(Paths.get(sims_dir_))) {
+            return walk.map(x -> x.getFileName().toString()).filter(f -> f.endsWith(".json")).sorted()
+                       .map(f -> f.substring(0, f.length() - 5)).collect(Collectors.toList()) ;
+        }
+    }
+
+    /// \brief run each of the stimulus files given
+    /// \param sims the names of the stimulus files
+    /// \param threads the largest number of simulations to run at a time
+    /// \returns the results, in the same order as the stimulus files
+    public List<SimulationRunResult> run(List<String> sims, int threads) throws Exception {
+        Files.createDirectories(Paths.get(log_dir_)) ;
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads) ;
+        List<SimulationRunResult> results = new ArrayList<SimulationRunResult>() ;
+        try {
+            List<Future<SimulationRunResult>> futures = new ArrayList<Future<SimulationRunResult>>() ;
+            for(String sim : sims)
+                futures.add(pool.submit(() -> run(sim))) ;
+
+            for(Future<SimulationRunResult> f : futures)
+                results.add(f.get()) ;
+        }
+        finally {
+            pool.shutdown() ;
+        }
+
+        return results ;
+    }
+
+    //
+    // Run the robot code against one stimulus file in its own process
+    //
+    private SimulationRunResult run(String sim) throws IOException, InterruptedException {
+        String logfile = Paths.get(log_dir_, sim + ".log").toString() ;
+        File outfile = Paths.get(log_dir_, sim + ".out").toFile() ;
+
+        List<String> cmd = new ArrayList<String>() ;
+        for(String arg : command_)
+            cmd.add(arg.replace("{sim}", sim).replace("{log}", logfile)) ;
+
+        ProcessBuilder pb = new ProcessBuilder(cmd) ;
+        pb.redirectErrorStream(true) ;
+        pb.redirectOutput(outfile) ;
+
+        long start = System.nanoTime() ;
+        Process proc = pb.start() ;
+        boolean finished = proc.waitFor((long)(timeout_ * 1000), TimeUnit.MILLISECONDS) ;
+        if (!finished) {
+            //
+            // The command may be a launcher that started the robot code as a child, so stop the whole tree
+            //
+            proc.descendants().forEach(ProcessHandle::destroyForcibly) ;
+            proc.destroyForcibly() ;
+            proc.waitFor() ;
+        }
+        double secs = (System.nanoTime() - start) / 1.0e9 ;
+        int code = proc.exitValue() ;
+
+        //
+        // Find the result printed by the simulation engine.  If there is none, the simulation did not finish.
+        //
+        String result = null ;
+        for(String line : Files.readAllLines(outfile.toPath())) {
+            if (line.startsWith(SimulationEngine.ResultTag))
+                result = line.substring(SimulationEngine.ResultTag.length()) ;
+        }
+
+        if (!finished)
+            return new SimulationRunResult(sim, SimulationRunResult.Status.Timeout, code, 0, 0, 0, 0, secs) ;
+
+        if (result == null)
+            return new SimulationRunResult(sim, SimulationRunResult.Status.Crashed, code, 0, 0, 0, 0, secs) ;
+
+        int passed = 0, failed = 0, events = 0, errors = 0 ;
+        for(String field : result.trim().split("\\s+")) {
+            String[] kv = field.split("=") ;
+            if (kv.length != 2)
+                continue ;
+
+            int value ;
+            try {
+                value = Integer.parseInt(kv[1]) ;
+            }
+            catch(NumberFormatException ex) {
+                //
+                // The result line is damaged, so the result of the simulation is not known
+                //
+                return new SimulationRunResult(sim, SimulationRunResult.Status.Crashed, code, 0, 0, 0, 0, secs) ;
+            }
+
+            switch(kv[0]) {
+            case "passed":
+                passed = value ;
+                break ;
+            case "failed":
+                failed = value ;
+                break ;
+            case "events":
+                events = value ;
+                break ;
+            case "errors":
+                errors = value ;
+                break ;
+            }
+        }
+
+        SimulationRunResult.Status status = (code == 0) ? SimulationRunResult.Status.Passed : SimulationRunResult.Status.Failed ;
+        return new SimulationRunResult(sim, status, code, passed, failed, events, errors, secs) ;
+    }
+
+    /// \brief run the stimulus files from the command line
+    /// \param args the command line arguments
+    public static void main(String[] args) {
+        String usage = "usage: SimulationRunner [-simsdir dir] [-logdir dir] [-sims name,name] [-threads count] " +
+                       "[-timeout seconds] -- command args" ;
+
+        String simsdir = "src/sim/sims" ;
+        String logdir = "simlogs" ;
+        List<String> names = null ;
+        int threads = Runtime.getRuntime().availableProcessors() ;
+        double timeout = 600.0 ;
+        List<String> command = new ArrayList<String>() ;
+
+        try {
+            int i = 0 ;
+            while (i < args.length && !args[i].equals("--")) {
+                if (i + 1 == args.length)
+                    throw new IllegalArgumentException("option '" + args[i] + "' has no value") ;
+
+                String value = args[i + 1] ;
+                switch(args[i]) {
+                case "-simsdir":
+                    simsdir = value ;
+                    break ;
+                case "-logdir":
+                    logdir = value ;
+                    break ;
+                case "-sims":
+                    names = List.of(value.split(",")) ;
+                    break ;
+                case "-threads":
+                    threads = Integer.parseInt(value) ;
+                    break ;
+                case "-timeout":
+                    timeout = Double.parseDouble(value) ;
+                    break ;
+                default:
+                    throw new IllegalArgumentException("unknown option '" + args[i] + "'") ;
+                }
+                i += 2 ;
+            }
+
+            for(i++ ; i < args.length ; i++)
+                command.add(args[i]) ;
+
+            if (command.size() == 0)
+                throw new IllegalArgumentException("no command given to run the robot code") ;
+        }
+        catch(IllegalArgumentException ex) {
+            System.err.println("SimulationRunner: " + ex.getMessage()) ;
+            System.err.println(usage) ;
+            System.exit(1) ;
+        }
+
+        SimulationRunner runner = new SimulationRunner(simsdir, logdir, command, timeout) ;
+
+        int failures = 0 ;
+        try {
+            if (names == null)
+                names = runner.findSimulations() ;
+
+            long start = System.nanoTime() ;
+            List<SimulationRunResult> results = runner.run(names, Math.max(threads, 1)) ;
+            double secs = (System.nanoTime() - start) / 1.0e9 ;
+
+            int passed = 0, failed = 0 ;
+            System.out.println(SimulationRunResult.header()) ;
+            for(SimulationRunResult r : results) {
+                System.out.println(r) ;
+                if (r.getStatus() != SimulationRunResult.Status.Passed)
+                    failures++ ;
+                passed += r.getPassedCount() ;
+                failed += r.getFailedCount() ;
+            }
+
+            System.out.println() ;
+            System.out.println(String.format("%d simulations, %d passed, %d failed, %d asserts passed, %d asserts failed, %.2f seconds",
+                               results.size(), results.size() - failures, failures, passed, failed, secs)) ;
+        }
+        catch(Exception ex) {
+            System.err.println("SimulationRunner: " + ex.getMessage()) ;
+            System.exit(1) ;
+        }
+
+        System.exit(failures == 0 ? 0 : 1) ;
+    }
+}